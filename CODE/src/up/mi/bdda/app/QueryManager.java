@@ -27,7 +27,9 @@ public class QueryManager {
    * and enters a loop to accept and process user queries.
    * 
    * @param args Command line arguments. The first argument is expected to be the
-   *             path to a file containing queries.
+   *             path to a file containing queries, the second one tells whether
+   *             the records are displayed, and the third one is the memory
+   *             budget of the buffer pool, such as 64MB or 25%.
    * @throws Exception If an error occurs while processing queries or interacting
    *                   with the database.
    */
@@ -124,6 +126,11 @@ public class QueryManager {
       DBParams.displayRecordsValues = args[1].equals("false") ? false : true;
     }
 
+    if (args.length > 2) {
+      DBParams.bufferPoolSize = args[2];
+      System.out.println(String.format(":: (Info) Buffer pool size set to %s", args[2]));
+    }
+
     DBManager dbManager = DBManager.getInstance();
     dbManager.startInitialization();
     for (String query : storedQueries) {
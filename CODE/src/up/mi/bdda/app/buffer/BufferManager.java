@@ -1,154 +1,2026 @@
 package up.mi.bdda.app.buffer;
 
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+import up.mi.bdda.app.disk.DiskManager;
 import up.mi.bdda.app.page.PageId;
 import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.IOMode;
+import up.mi.bdda.app.settings.MemoryBudget;
+import up.mi.bdda.app.settings.PageReplacement;
+import up.mi.bdda.app.utils.FileHandler;
+import up.mi.bdda.app.utils.ManagementHandler;
 
 /**
  * BufferManager is a class that manages the buffer memory of the application.
- * It uses a LinkedHashMap to store MemoryFrame objects, which represent pages
- * in memory.
+ * It holds a fixed array of MemoryFrame objects, which represent pages in
+ * memory, and a page table mapping each page in memory to the index of its
+ * frame, so that finding a page costs a single hash lookup.
+ * When every frame is used, the page to evict is chosen by the
+ * ReplacementPolicy selected with DBParams.pageReplacement.
+ * Sequential scans may read their pages through a BufferRing, a few frames
+ * they recycle, so that they do not evict the pages of the rest of the pool.
+ * The metadata pages, such as the header pages of the tables, are requested
+ * with getMetadataPageBuffer and kept in a pool of their own, the first
+ * DBParams.metadataFrameCount frames, with its own replacement policy, so that
+ * the data pages never evict them.
  * The class uses the Singleton design pattern to ensure only one instance of
  * BufferManager exists.
+ * <p>
+ * The buffer pool may be used by several threads at the same time. The page
+ * table is split into DBParams.bufferPoolShardCount shards, each with its own
+ * lock, which guards the pages of the shard and their pins: a hit only takes
+ * the lock of the shard of the page. The free frames, the replacement policy
+ * and the rings are guarded by the lock of the pool, taken after the lock of a
+ * shard; a thread holding the lock of the pool only tries to take the lock of
+ * a shard, and looks for another victim when the shard is busy. A page is read
+ * from disk out of any lock, while the frame it is read into is latched in
+ * exclusive mode, so the threads requesting the page in the meantime wait for
+ * the read to be done.
+ * Besides its pin, a page may be latched by the thread using it: in shared
+ * mode to read it, or in exclusive mode to modify it.
+ * A page in memory may also be read with readPage without any pin, latch or
+ * lock: the shards and the frames carry a version, changed whenever they are
+ * modified, and the read is run again if the version changed while it ran.
+ * A page read this way must only be modified while latched in exclusive mode.
+ * <p>
+ * A modified page stays in memory until it is evicted, flushed, or written
+ * back by the background PageWriter, which writes the modified pages that
+ * are not pinned in a single batch, ordered by file and page.
+ * The pages in memory at shutdown are listed, and loaded again in the
+ * background by the PoolWarmer on the next startup.
+ * <p>
+ * The metrics of the buffer pool are kept in striped counters, cheap enough to
+ * be always on, and exposed through JMX as a BufferPoolMXBean once the
+ * BufferManager is initialized.
  */
-public final class BufferManager {
+public final class BufferManager implements BufferPoolMXBean {
   /**
-   * A LinkedHashMap that maps PageId objects to MemoryFrame objects.
-   * The LinkedHashMap is used because it maintains the insertion order,
-   * which is useful for implementing the LRU (Least Recently Used) page
-   * replacement policy.
+   * Index standing for no frame.
    */
-  private final LinkedHashMap<PageId, MemoryFrame> memoryCache;
+  private static final int NO_FRAME = FrameList.NO_FRAME;
+
+  /**
+   * Index standing for no frame available yet because the lock of the shard
+   * of every possible victim was busy.
+   */
+  private static final int BUSY_FRAME = -2;
+
+  /**
+   * The number of times a thread looks for a frame again while the possible
+   * victims are busy or pinned, before giving up.
+   */
+  private static final int MAX_FRAME_ATTEMPTS = 1000;
+
+  /**
+   * The number of times a page is read without any lock before it is read
+   * pinned and latched.
+   */
+  private static final int MAX_OPTIMISTIC_ATTEMPTS = 3;
+
+  /**
+   * The frames of the buffer pool.
+   * The array is replaced when the buffer pool is resized, and read without
+   * lock by the optimistic reads.
+   */
+  private volatile MemoryFrame[] frames;
+
+  /**
+   * The key of the page held by each frame, or -1 if the frame is free.
+   * It is modified under the lock of the pool.
+   */
+  private volatile long[] frameKeys;
+
+  /**
+   * The version of the arrays of the frames, odd while a resize replaces them,
+   * so that an optimistic read checks that the frame and the key it read belong
+   * together.
+   */
+  private volatile long resizeVersion;
+
+  /**
+   * The shards of the page table.
+   */
+  private Shard[] shards;
+
+  /**
+   * The lock guarding the free frames, the replacement policy and the rings.
+   */
+  private final ReentrantLock poolLock = new ReentrantLock();
+
+  /**
+   * The policy choosing the page to evict.
+   */
+  private volatile ReplacementPolicy replacementPolicy;
+
+  /**
+   * The number of frames of the metadata pool, which are the first frames of
+   * the buffer pool.
+   */
+  private int metadataFrameCount;
+
+  /**
+   * The policy choosing the metadata page to evict, among the frames of the
+   * metadata pool.
+   */
+  private ReplacementPolicy metadataPolicy;
+
+  /**
+   * The kind of the replacement policy.
+   */
+  private PageReplacement replacement;
+
+  /**
+   * The number of page requests served from memory.
+   */
+  private final LongAdder hitCount = new LongAdder();
+
+  /**
+   * The number of page requests that had to read the page from disk.
+   */
+  private final LongAdder missCount = new LongAdder();
+
+  /**
+   * The number of metadata page requests served from memory.
+   */
+  private final LongAdder metadataHitCount = new LongAdder();
+
+  /**
+   * The number of metadata page requests that had to read the page from disk.
+   */
+  private final LongAdder metadataMissCount = new LongAdder();
+
+  /**
+   * The number of pages loaded ahead of their use.
+   */
+  private final LongAdder prefetchedPageCount = new LongAdder();
+
+  /**
+   * The number of pages loaded ahead of their use and evicted before being
+   * requested.
+   */
+  private final LongAdder wastedPrefetchCount = new LongAdder();
+
+  /**
+   * The number of pages evicted from their frame.
+   */
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * The number of times the replacement policy looked for a page to evict.
+   */
+  private final LongAdder victimSearchCount = new LongAdder();
+
+  /**
+   * The number of frames the replacement policy looked at while looking for
+   * pages to evict.
+   */
+  private final LongAdder scannedFrameCount = new LongAdder();
+
+  /**
+   * The number of modified pages written back to disk.
+   */
+  private final LongAdder writtenBackPageCount = new LongAdder();
+
+  /**
+   * Whether each frame holds a page loaded ahead of its use and not requested
+   * yet. It is modified under the lock of the shard of the page.
+   */
+  private boolean[] prefetchedFrames;
+
+  /**
+   * The number of frames holding a modified page.
+   * It is modified under the lock of the shard of the page.
+   */
+  private final AtomicInteger dirtyFrameCount = new AtomicInteger();
+
+  /**
+   * The background writer of the modified pages.
+   */
+  private final PageWriter pageWriter = new PageWriter(this);
+
+  /**
+   * The background loader of the pages in memory at the last shutdown.
+   */
+  private final PoolWarmer poolWarmer = new PoolWarmer(this);
+
+  /**
+   * The lock serializing the rounds of the page writer, the flushes and the
+   * clearings of the buffer pool. It is taken before the locks of the shards.
+   */
+  private final ReentrantLock writeBackLock = new ReentrantLock();
+
+  /**
+   * The ring owning each frame, or null if the frame belongs to the pool.
+   */
+  private volatile BufferRing[] frameRings;
+
+  /**
+   * The rings that own frames.
+   */
+  private final List<BufferRing> openRings = new ArrayList<>();
+
+  /**
+   * The indexes of the free frames, as a stack.
+   */
+  private int[] freeFrames;
+
+  /**
+   * The number of free frames.
+   */
+  private int freeFrameCount;
+
+  /**
+   * The indexes of the free frames of the metadata pool, as a stack.
+   */
+  private int[] freeMetadataFrames;
+
+  /**
+   * The number of free frames of the metadata pool.
+   */
+  private int freeMetadataFrameCount;
 
   /**
    * Private constructor to prevent instantiation of the class.
-   * Initializes the memoryCache with a maximum size specified by
-   * DBParams.maxFrameCount.
+   * Allocates DBParams.maxFrameCount frames.
+   */
+  private BufferManager() {
+    allocateFrames();
+  }
+
+  /**
+   * Allocates the empty frames of the configured size of the buffer pool, the
+   * structures indexing them and the replacement policy.
+   * The data buffers of the frames are slices of off-heap slabs allocated here
+   * once, so loading a page allocates nothing and the pool lives outside of the
+   * Java heap.
+   */
+  private void allocateFrames() {
+    metadataFrameCount = Math.max(0, DBParams.metadataFrameCount);
+    int frameCount = metadataFrameCount + configuredFrameCount();
+    frames = new MemoryFrame[frameCount];
+    ByteBuffer[] dataBuffers = MemoryFrame.allocateSlabBuffers(frameCount);
+    for (int i = 0; i < frameCount; i++) {
+      frames[i] = new MemoryFrame(dataBuffers[i]);
+    }
+    frameKeys = new long[frameCount];
+    int shardCount = Integer.highestOneBit(Math.max(1, DBParams.bufferPoolShardCount) * 2 - 1);
+    shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(frameCount / shardCount);
+    }
+    replacement = DBParams.pageReplacement;
+    replacementPolicy = ReplacementPolicy.of(replacement, frameCount);
+    metadataPolicy = ReplacementPolicy.of(replacement, metadataFrameCount);
+    freeFrames = new int[frameCount];
+    freeMetadataFrames = new int[metadataFrameCount];
+    frameRings = new BufferRing[frameCount];
+    prefetchedFrames = new boolean[frameCount];
+    resetFrames();
+  }
+
+  /**
+   * Returns the number of frames of the buffer pool set by the settings, out of
+   * the metadata pool: as many as pages fit in DBParams.bufferPoolSize if it is
+   * set, or DBParams.maxFrameCount otherwise.
+   * 
+   * @return the number of frames, at least 1.
+   */
+  private static int configuredFrameCount() {
+    if (DBParams.bufferPoolSize != null) {
+      long frameCount = MemoryBudget.toBytes(DBParams.bufferPoolSize) / DBParams.pageSize;
+      return (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, frameCount));
+    }
+    return Math.max(1, DBParams.maxFrameCount);
+  }
+
+  /**
+   * Marks every frame as free.
+   * The caller holds every lock.
+   */
+  private void resetFrames() {
+    for (Shard shard : shards) {
+      shard.pageTable.clear();
+    }
+    replacementPolicy.clear();
+    metadataPolicy.clear();
+    Arrays.fill(frameRings, null);
+    Arrays.fill(prefetchedFrames, false);
+    for (BufferRing ring : openRings) {
+      ring.clear();
+    }
+    openRings.clear();
+    freeFrameCount = 0;
+    freeMetadataFrameCount = 0;
+    for (int i = frames.length - 1; i >= 0; i--) {
+      frameKeys[i] = -1;
+      frames[i].invalidate();
+      if (i < metadataFrameCount) {
+        freeMetadataFrames[freeMetadataFrameCount++] = i;
+      } else {
+        freeFrames[freeFrameCount++] = i;
+      }
+    }
+  }
+
+  /**
+   * Returns the replacement policy of the pool of a frame.
+   * 
+   * @param frameIndex the index of the frame.
+   * @return the policy of the metadata pool if the frame belongs to it, the
+   *         policy of the buffer pool otherwise.
+   */
+  private ReplacementPolicy policyOf(int frameIndex) {
+    return frameIndex < metadataFrameCount ? metadataPolicy : replacementPolicy;
+  }
+
+  /**
+   * Takes the lock of every shard, in order, then the lock of the pool.
+   * 
+   * @return the shards whose lock was taken.
+   */
+  private Shard[] lockAll() {
+    Shard[] lockedShards = shards;
+    for (Shard shard : lockedShards) {
+      shard.lock.lock();
+    }
+    poolLock.lock();
+    return lockedShards;
+  }
+
+  /**
+   * Releases the locks taken by lockAll.
+   * 
+   * @param lockedShards the shards whose lock was taken.
+   */
+  private void unlockAll(Shard[] lockedShards) {
+    poolLock.unlock();
+    for (int i = lockedShards.length - 1; i >= 0; i--) {
+      lockedShards[i].lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the shard of the page table holding a page.
+   * 
+   * @param key the key of the page.
+   * @return the shard of the page.
+   */
+  private Shard shardOf(long key) {
+    // another multiplier than the one of PageTable, so the pages of a shard
+    // still spread over the slots of its table
+    return shards[(int) ((key * 0xC2B2AE3D27D4EB4FL) >>> 40) & (shards.length - 1)];
+  }
+
+  /**
+   * Initializes the BufferManager by clearing the memoryCache, starting the
+   * background page writer, exposing the metrics of the buffer pool and
+   * starting to load the pages in memory at the last shutdown in the
+   * background.
+   */
+  public void initialize() {
+    clearMemory();
+    pageWriter.start();
+    ManagementHandler.registerMBean(this, "BufferPool");
+    poolWarmer.start();
+  }
+
+  /**
+   * Completes the operations of the BufferManager by stopping the background
+   * threads, listing the pages in memory for the next startup and flushing all
+   * pages.
+   * 
+   * @throws IOException if an I/O error occurs.
+   */
+  public void complete() throws IOException {
+    poolWarmer.stop();
+    pageWriter.stop();
+    try {
+      poolWarmer.save();
+    } catch (IOException e) {
+      System.out.println(String.format(":: (Warning) The pages in memory could not be listed: %s", e.getMessage()));
+    }
+    flushAllPages();
+  }
+
+  /**
+   * Clears the buffer pool, without writing the modified pages.
+   * The frames are allocated again if DBParams.maxFrameCount,
+   * DBParams.bufferPoolSize, DBParams.metadataFrameCount, DBParams.pageReplacement,
+   * DBParams.bufferPoolShardCount, DBParams.pageSize or DBParams.ioMode changed.
+   * No other thread may use the buffer pool meanwhile.
+   */
+  public void clearMemory() {
+    poolWarmer.stop();
+    writeBackLock.lock();
+    Shard[] lockedShards = lockAll();
+    try {
+      hitCount.reset();
+      missCount.reset();
+      metadataHitCount.reset();
+      metadataMissCount.reset();
+      prefetchedPageCount.reset();
+      wastedPrefetchCount.reset();
+      evictionCount.reset();
+      victimSearchCount.reset();
+      scannedFrameCount.reset();
+      writtenBackPageCount.reset();
+      for (MemoryFrame memoryFrame : frames) {
+        memoryFrame.resetPinStatistics();
+      }
+      dirtyFrameCount.set(0);
+      if (metadataFrameCount != Math.max(0, DBParams.metadataFrameCount)
+          || frames.length != metadataFrameCount + configuredFrameCount() || replacement != DBParams.pageReplacement
+          || shards.length != Integer.highestOneBit(Math.max(1, DBParams.bufferPoolShardCount) * 2 - 1)
+          || frames[0].getDataBuffer().capacity() != DBParams.pageSize
+          || (DBParams.ioMode == IOMode.DIRECT && !FileHandler.isAlignedBuffer(frames[0].getDataBuffer()))) {
+        allocateFrames();
+        return;
+      }
+      for (int i = 0; i < frames.length; i++) {
+        if (frameKeys[i] != -1) {
+          frames[i].resetDataBlock();
+        }
+      }
+      resetFrames();
+    } finally {
+      unlockAll(lockedShards);
+      writeBackLock.unlock();
+    }
+  }
+
+  /**
+   * Drops every page of the buffer pool without writing the modified ones,
+   * before the files of the database are deleted. The background page writer
+   * is stopped first, waiting for its round in progress, so that no page of
+   * the dropped database is written into the files of the next one; it is
+   * started again by resumeWriteBack.
+   * No other thread may use the buffer pool meanwhile.
+   */
+  public void discardAllPages() {
+    pageWriter.stop();
+    clearMemory();
+  }
+
+  /**
+   * Starts the background page writer again after discardAllPages.
+   */
+  public void resumeWriteBack() {
+    pageWriter.start();
+  }
+
+  /**
+   * Resizes the buffer pool to hold as many frames as pages fit in a memory
+   * budget, and keeps the budget in DBParams.bufferPoolSize.
+   * 
+   * @param budget the memory budget, as DBParams.bufferPoolSize.
+   * @return the number of frames of the buffer pool.
+   * @throws IOException              if an I/O error occurs.
+   * @throws IllegalArgumentException if the budget is not valid.
+   * @see #resize(int)
+   */
+  @Override
+  public int resize(String budget) throws IOException {
+    long frameCount = MemoryBudget.toBytes(budget) / DBParams.pageSize;
+    int maxFrameCount = Integer.MAX_VALUE - 8 - metadataFrameCount;
+    int resizedFrameCount = resizeFrames((int) Math.max(1, Math.min(maxFrameCount, frameCount)));
+    DBParams.bufferPoolSize = budget;
+    return resizedFrameCount;
+  }
+
+  /**
+   * Resizes the buffer pool to a number of frames, while it is used, and keeps
+   * the number in DBParams.maxFrameCount. The metadata pool keeps its size.
+   * Growing the pool allocates a new slab for the new frames, which are free.
+   * Shrinking it drops the last frames, evicting their pages after writing
+   * back the modified ones in a single batch. A frame whose page is pinned, or
+   * that is being loaded, cannot be dropped: the pool is then only shrunk down
+   * to it, and may be shrunk further later.
+   * The replacement policy starts over with the pages in memory, since its
+   * history is sized for the previous number of frames.
+   * 
+   * @param frameCount the number of frames, at least 1.
+   * @return the number of frames of the buffer pool, which is larger than the
+   *         requested number when the pool could not be shrunk down to it.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int resize(int frameCount) throws IOException {
+    int resizedFrameCount = resizeFrames(Math.max(1, frameCount));
+    DBParams.maxFrameCount = Math.max(1, frameCount);
+    DBParams.bufferPoolSize = null;
+    return resizedFrameCount;
+  }
+
+  /**
+   * Resizes the buffer pool to a number of frames, out of the metadata pool, as
+   * far as possible.
+   * The resize waits for the round of the page writer in progress, if any, and
+   * holds every lock meanwhile.
+   * 
+   * @param frameCount the number of frames, at least 1.
+   * @return the number of frames of the buffer pool.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int resizeFrames(int frameCount) throws IOException {
+    writeBackLock.lock();
+    Shard[] lockedShards = lockAll();
+    resizeVersion++;
+    VarHandle.storeStoreFence();
+    try {
+      int totalFrameCount = metadataFrameCount + frameCount;
+      if (totalFrameCount > frames.length) {
+        growFrames(totalFrameCount);
+      } else if (totalFrameCount < frames.length) {
+        shrinkFrames(totalFrameCount);
+      }
+      return frames.length - metadataFrameCount;
+    } finally {
+      resizeVersion++;
+      unlockAll(lockedShards);
+      writeBackLock.unlock();
+    }
+  }
+
+  /**
+   * Adds free frames to the buffer pool.
+   * The new policy is published before the new arrays, so that an optimistic
+   * read calling the policy without lock never gives it a frame it does not
+   * know. The caller holds every lock.
+   * 
+   * @param frameCount the new number of frames, with the metadata pool.
+   */
+  private void growFrames(int frameCount) {
+    int oldFrameCount = frames.length;
+    ByteBuffer[] dataBuffers = MemoryFrame.allocateSlabBuffers(frameCount - oldFrameCount);
+    MemoryFrame[] newFrames = Arrays.copyOf(frames, frameCount);
+    long[] newFrameKeys = Arrays.copyOf(frameKeys, frameCount);
+    for (int i = oldFrameCount; i < frameCount; i++) {
+      newFrames[i] = new MemoryFrame(dataBuffers[i - oldFrameCount]);
+      newFrameKeys[i] = -1;
+    }
+
+    replacementPolicy = reloadedPolicy(frameCount, oldFrameCount);
+    frameRings = Arrays.copyOf(frameRings, frameCount);
+    prefetchedFrames = Arrays.copyOf(prefetchedFrames, frameCount);
+    freeFrames = Arrays.copyOf(freeFrames, frameCount);
+    for (int i = frameCount - 1; i >= oldFrameCount; i--) {
+      freeFrames[freeFrameCount++] = i;
+    }
+    frameKeys = newFrameKeys;
+    frames = newFrames;
+  }
+
+  /**
+   * Drops the last frames of the buffer pool, down to the first one that
+   * cannot be dropped. The frames of the metadata pool, which come first, are
+   * never dropped.
+   * The new arrays are published before the new policy, so that an optimistic
+   * read calling the policy without lock never gives it a frame it does not
+   * know. The caller holds every lock.
+   * 
+   * @param frameCount the requested number of frames, with the metadata pool.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void shrinkFrames(int frameCount) throws IOException {
+    BitSet droppableFrames = new BitSet(frames.length);
+    for (int i = 0; i < freeFrameCount; i++) {
+      droppableFrames.set(freeFrames[i]);
+    }
+    for (int frameIndex = metadataFrameCount; frameIndex < frames.length; frameIndex++) {
+      if (frameKeys[frameIndex] != -1 && frames[frameIndex].getUsageCount() == 0) {
+        droppableFrames.set(frameIndex);
+      }
+    }
+    int newFrameCount = frames.length;
+    while (newFrameCount > frameCount && droppableFrames.get(newFrameCount - 1)) {
+      newFrameCount--;
+    }
+    if (newFrameCount == frames.length) {
+      return;
+    }
+
+    List<PageId> modifiedPageIds = new ArrayList<>();
+    List<ByteBuffer> modifiedBuffers = new ArrayList<>();
+    for (int frameIndex = newFrameCount; frameIndex < frames.length; frameIndex++) {
+      if (frameKeys[frameIndex] != -1 && frames[frameIndex].isModified()) {
+        modifiedPageIds.add(frames[frameIndex].getDataPageId());
+        modifiedBuffers.add(frames[frameIndex].getDataBuffer());
+      }
+    }
+    DiskManager.getInstance().savePages(modifiedPageIds, modifiedBuffers.toArray(ByteBuffer[]::new));
+    writtenBackPageCount.add(modifiedPageIds.size());
+    for (int frameIndex = newFrameCount; frameIndex < frames.length; frameIndex++) {
+      if (frameKeys[frameIndex] == -1) {
+        continue;
+      }
+      if (frames[frameIndex].isModified()) {
+        frames[frameIndex].markAsSaved();
+        dirtyFrameCount.decrementAndGet();
+      }
+      if (frameRings[frameIndex] != null) {
+        frameRings[frameIndex].remove(frameIndex);
+        frameRings[frameIndex] = null;
+      }
+      evictPage(frameIndex);
+    }
+
+    int keptFreeFrameCount = 0;
+    for (int i = 0; i < freeFrameCount; i++) {
+      if (freeFrames[i] < newFrameCount) {
+        freeFrames[keptFreeFrameCount++] = freeFrames[i];
+      }
+    }
+    freeFrameCount = keptFreeFrameCount;
+    freeFrames = Arrays.copyOf(freeFrames, newFrameCount);
+    prefetchedFrames = Arrays.copyOf(prefetchedFrames, newFrameCount);
+    frameRings = Arrays.copyOf(frameRings, newFrameCount);
+    frameKeys = Arrays.copyOf(frameKeys, newFrameCount);
+    frames = Arrays.copyOf(frames, newFrameCount);
+    replacementPolicy = reloadedPolicy(newFrameCount, newFrameCount);
+  }
+
+  /**
+   * Creates a replacement policy for a number of frames, holding the pages of
+   * the pool among the first frames, out of the metadata pool.
+   * The caller holds every lock.
+   * 
+   * @param frameCount       the number of frames of the policy.
+   * @param loadedFrameCount the number of first frames whose pages are added.
+   * @return the new replacement policy.
+   */
+  private ReplacementPolicy reloadedPolicy(int frameCount, int loadedFrameCount) {
+    ReplacementPolicy policy = ReplacementPolicy.of(replacement, frameCount);
+    for (int frameIndex = metadataFrameCount; frameIndex < loadedFrameCount; frameIndex++) {
+      if (frameKeys[frameIndex] != -1 && frameRings[frameIndex] == null) {
+        policy.pageLoaded(frameIndex, frameKeys[frameIndex]);
+      }
+    }
+    return policy;
+  }
+
+  /**
+   * Loads the page with the given PageId into memory and pins it.
+   * If every frame is used, the replacement policy chooses the page to replace,
+   * unless the page is read through a ring.
+   * On return, the frame is latched in exclusive mode if the page was read from
+   * disk by the calling thread, and not latched otherwise.
+   * 
+   * @param pageId     the PageId of the page to load.
+   * @param ring       the ring to read the page through, or null to read it
+   *                   through the pool.
+   * @param isPrefetch whether the page is loaded ahead of its use, in which case
+   *                   the request is neither counted nor told to the replacement
+   *                   policy.
+   * @param isMetadata whether the page is a metadata page, read into the
+   *                   metadata pool and counted apart.
+   * @return the index of the frame of the page, as a negative number -1 - index
+   *         if the page was read from disk by the calling thread.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int loadPage(PageId pageId, BufferRing ring, boolean isPrefetch, boolean isMetadata)
+      throws IOException {
+    long key = PageTable.keyOf(pageId);
+    Shard shard = shardOf(key);
+    int newFrameIndex = NO_FRAME;
+    while (true) {
+      int frameIndex;
+      shard.lock.lock();
+      try {
+        frameIndex = shard.pageTable.get(key);
+        if (frameIndex != NO_FRAME) {
+          frames[frameIndex].increaseUsageCount();
+          if (!isPrefetch) {
+            prefetchedFrames[frameIndex] = false;
+          }
+        } else if (newFrameIndex != NO_FRAME) {
+          // the frame is pinned and latched before the page becomes visible,
+          // so the threads requesting it wait for the read below
+          MemoryFrame memoryFrame = frames[newFrameIndex];
+          memoryFrame.increaseUsageCount();
+          memoryFrame.lockExclusive();
+          shard.pageTable.put(key, newFrameIndex);
+          registerPage(newFrameIndex, key, ring);
+          prefetchedFrames[newFrameIndex] = isPrefetch;
+        }
+      } finally {
+        shard.lock.unlock();
+      }
+
+      if (frameIndex != NO_FRAME) {
+        if (newFrameIndex != NO_FRAME) {
+          // another thread read the page while a frame was taken for it
+          freeFrame(newFrameIndex);
+        }
+        if (awaitPage(frameIndex, key)) {
+          if (!isPrefetch) {
+            (isMetadata ? metadataHitCount : hitCount).increment();
+            pageAccessed(frameIndex, ring);
+          }
+          return frameIndex;
+        }
+        newFrameIndex = NO_FRAME;
+      } else if (newFrameIndex != NO_FRAME) {
+        if (isPrefetch) {
+          prefetchedPageCount.increment();
+        } else {
+          (isMetadata ? metadataMissCount : missCount).increment();
+        }
+        readIntoFrame(newFrameIndex, pageId, shard);
+        return -1 - newFrameIndex;
+      } else {
+        newFrameIndex = takeFrame(ring, isMetadata);
+      }
+    }
+  }
+
+  /**
+   * Reads a page into the pinned frame it was registered with, and releases the
+   * page if the read fails.
+   * 
+   * @param frameIndex the index of the frame, latched in exclusive mode.
+   * @param pageId     the PageId of the page.
+   * @param shard      the shard of the page.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void readIntoFrame(int frameIndex, PageId pageId, Shard shard) throws IOException {
+    try {
+      frames[frameIndex].loadDataPage(pageId);
+    } catch (IOException | RuntimeException e) {
+      abandonRead(frameIndex, shard);
+      throw e;
+    }
+  }
+
+  /**
+   * Releases a page whose read into the pinned frame it was registered with
+   * failed: the page leaves the page table, and the frame is freed by its last
+   * unpin, once the threads waiting for the read have seen it fail.
+   * 
+   * @param frameIndex the index of the frame, latched in exclusive mode.
+   * @param shard      the shard of the page.
+   */
+  private void abandonRead(int frameIndex, Shard shard) {
+    shard.lock.lock();
+    try {
+      shard.pageTable.remove(frameKeys[frameIndex]);
+      unregisterPage(frameIndex);
+      prefetchedFrames[frameIndex] = false;
+    } finally {
+      shard.lock.unlock();
+    }
+    frames[frameIndex].unlockExclusive();
+    unpinFrame(frameIndex);
+  }
+
+  /**
+   * Waits for a page being read into a pinned frame, if any, and checks that the
+   * frame still holds the page.
+   * The frame is unpinned if the read failed.
+   * 
+   * @param frameIndex the index of the frame.
+   * @param key        the key of the page.
+   * @return true if the frame holds the page, false otherwise.
+   */
+  private boolean awaitPage(int frameIndex, long key) {
+    frames[frameIndex].awaitExclusiveRelease();
+    if (frameKeys[frameIndex] == key) {
+      return true;
+    }
+    unpinFrame(frameIndex);
+    return false;
+  }
+
+  /**
+   * Unpins a frame, and frees it if it was the last pin of a frame whose page
+   * could not be read.
+   * 
+   * @param frameIndex the index of the frame.
+   */
+  private void unpinFrame(int frameIndex) {
+    // the key is read while the frame is pinned: once unpinned, its page may be
+    // evicted by another thread, which then owns the frame, or the frame dropped
+    // by a resize
+    long key = frameKeys[frameIndex];
+    if (frames[frameIndex].decreaseUsageCount() == 0 && key == -1) {
+      freeFrame(frameIndex);
+    }
+  }
+
+  /**
+   * Gives a frame holding no page back to the free frames of its pool.
+   * 
+   * @param frameIndex the index of the frame.
+   */
+  private void freeFrame(int frameIndex) {
+    poolLock.lock();
+    try {
+      if (frameIndex < metadataFrameCount) {
+        freeMetadataFrames[freeMetadataFrameCount++] = frameIndex;
+      } else {
+        freeFrames[freeFrameCount++] = frameIndex;
+      }
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Records a hit on a pinned frame in the replacement policy, or moves the
+   * frame to the pool if it belongs to a ring and is not requested through a
+   * ring.
+   * 
+   * @param frameIndex the index of the frame.
+   * @param ring       the ring the page is requested through, or null.
+   */
+  private void pageAccessed(int frameIndex, BufferRing ring) {
+    ReplacementPolicy policy = policyOf(frameIndex);
+    if (frameRings[frameIndex] == null && policy.isAccessLockFree()) {
+      policy.pageAccessed(frameIndex);
+      return;
+    }
+    poolLock.lock();
+    try {
+      if (frameRings[frameIndex] == null) {
+        policyOf(frameIndex).pageAccessed(frameIndex);
+      } else if (ring == null) {
+        adoptRingFrame(frameIndex);
+      }
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Records a hit of an optimistic read in the replacement policy, unless the
+   * frame belongs to a ring. A policy whose pageAccessed is not lock free is
+   * only told if the lock of the pool is free, so that the hit never waits; a
+   * hit missed this way only makes the policy see the page as a little colder.
+   * A page loaded ahead is marked as requested, so that its eviction is not
+   * counted as a wasted prefetch.
+   * 
+   * @param frameIndex the index of the frame, not pinned.
+   * @param key        the key of the page read.
+   */
+  private void recordOptimisticHit(int frameIndex, long key) {
+    // the flag is only set once per load, so the lock is rarely taken
+    boolean[] currentPrefetchedFrames = prefetchedFrames;
+    if (frameIndex < currentPrefetchedFrames.length && currentPrefetchedFrames[frameIndex]) {
+      Shard shard = shardOf(key);
+      shard.lock.lock();
+      try {
+        if (frameIndex < frameKeys.length && frameKeys[frameIndex] == key) {
+          prefetchedFrames[frameIndex] = false;
+        }
+      } finally {
+        shard.lock.unlock();
+      }
+    }
+    // the policy is read before the rings, see resize
+    ReplacementPolicy policy = policyOf(frameIndex);
+    BufferRing[] rings = frameRings;
+    if (policy.isAccessLockFree()) {
+      if (frameIndex < rings.length && rings[frameIndex] == null) {
+        policy.pageAccessed(frameIndex);
+      }
+      return;
+    }
+    if (!poolLock.tryLock()) {
+      return;
+    }
+    try {
+      // the frame may have been evicted or dropped by a resize since the read
+      if (frameIndex < frameKeys.length && frameKeys[frameIndex] == key && frameRings[frameIndex] == null) {
+        policyOf(frameIndex).pageAccessed(frameIndex);
+      }
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Attaches a page to a frame taken for it, in the replacement policy or in a
+   * ring, unless the ring is full.
+   * 
+   * @param frameIndex the index of the frame.
+   * @param key        the key of the page.
+   * @param ring       the ring the page is read through, or null.
+   */
+  private void registerPage(int frameIndex, long key, BufferRing ring) {
+    poolLock.lock();
+    try {
+      frameKeys[frameIndex] = key;
+      if (ring == null || ring.size() == ring.getCapacity()) {
+        // a page read through a full ring, whose frames are all pinned, joins the pool
+        policyOf(frameIndex).pageLoaded(frameIndex, key);
+      } else {
+        addToRing(ring, frameIndex);
+      }
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Detaches the page of a frame from the replacement policy or its ring, and
+   * marks the frame as holding no page.
+   * 
+   * @param frameIndex the index of the frame.
+   */
+  private void unregisterPage(int frameIndex) {
+    poolLock.lock();
+    try {
+      if (frameRings[frameIndex] == null) {
+        policyOf(frameIndex).pageEvicted(frameIndex);
+      } else {
+        frameRings[frameIndex].remove(frameIndex);
+        frameRings[frameIndex] = null;
+      }
+      frameKeys[frameIndex] = -1;
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Takes a frame for a page: a free frame if there is one, or the frame of an
+   * evicted page. When every page is pinned while the page writer is writing
+   * pages back, the frame is taken once the write is done; otherwise the frame
+   * is looked for again a few times, since the read-ahead pins pages briefly.
+   * The lock of no shard may be held by the caller.
+   * 
+   * @param ring       the ring the page is read through, or null.
+   * @param isMetadata whether the frame is taken for a metadata page.
+   * @return the index of the frame.
+   * @throws IOException           if an I/O error occurs.
+   * @throws IllegalStateException if every frame of the pool stays pinned.
+   */
+  private int takeFrame(BufferRing ring, boolean isMetadata) throws IOException {
+    for (int attempt = 0; attempt < MAX_FRAME_ATTEMPTS; attempt++) {
+      int frameIndex;
+      poolLock.lock();
+      try {
+        if (isMetadata) {
+          frameIndex = takeMetadataFrame();
+        } else {
+          frameIndex = ring == null ? takePoolFrame() : takeRingFrame(ring);
+        }
+      } finally {
+        poolLock.unlock();
+      }
+      if (frameIndex >= 0) {
+        return frameIndex;
+      }
+      if (frameIndex == NO_FRAME) {
+        if (writeBackLock.isHeldByCurrentThread()) {
+          break;
+        }
+        if (writeBackLock.isLocked()) {
+          // the pages being written back are pinned until their write is done
+          writeBackLock.lock();
+          writeBackLock.unlock();
+          continue;
+        }
+      }
+      // the pages looked at or loaded ahead of a scan are only pinned briefly
+      Thread.yield();
+    }
+    throw new IllegalStateException(isMetadata
+        ? String.format("Metadata pool exhausted: all %d frames are pinned", metadataFrameCount)
+        : String.format("Buffer pool exhausted: all %d frames are pinned", frames.length - metadataFrameCount));
+  }
+
+  /**
+   * Takes a frame for a page read through the pool: a free frame if there is
+   * one, or the frame of an evicted page. When every page of the pool is
+   * pinned, a frame is recycled from one of the open rings, since the rings of
+   * concurrent scans may hold every other frame.
+   * The caller holds the lock of the pool.
+   * 
+   * @return the index of the frame, -1 if every frame is pinned, or -2 if the
+   *         shards of the possible victims are busy.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int takePoolFrame() throws IOException {
+    if (freeFrameCount > 0) {
+      return freeFrames[--freeFrameCount];
+    }
+    BitSet busyFrames = null;
+    while (true) {
+      BitSet skippedFrames = busyFrames;
+      victimSearchCount.increment();
+      int frameIndex = replacementPolicy.selectVictim(i -> {
+        scannedFrameCount.increment();
+        return frames[i].getUsageCount() == 0 && (skippedFrames == null || !skippedFrames.get(i));
+      });
+      if (frameIndex == NO_FRAME) {
+        for (BufferRing ring : openRings) {
+          frameIndex = recycleRingFrame(ring);
+          if (frameIndex != NO_FRAME) {
+            return frameIndex;
+          }
+        }
+        return busyFrames == null ? NO_FRAME : BUSY_FRAME;
+      }
+      if (evictPage(frameIndex)) {
+        replacementPolicy.pageEvicted(frameIndex);
+        return frameIndex;
+      }
+      if (busyFrames == null) {
+        busyFrames = new BitSet(frames.length);
+      }
+      busyFrames.set(frameIndex);
+    }
+  }
+
+  /**
+   * Takes a frame for a metadata page: a free frame of the metadata pool if
+   * there is one, or the frame of a metadata page evicted by the policy of the
+   * metadata pool. When every metadata page is pinned, or without a metadata
+   * pool, a frame is taken from the buffer pool instead.
+   * The caller holds the lock of the pool.
+   * 
+   * @return the index of the frame, -1 if every frame is pinned, or -2 if the
+   *         shards of the possible victims are busy.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int takeMetadataFrame() throws IOException {
+    if (freeMetadataFrameCount > 0) {
+      return freeMetadataFrames[--freeMetadataFrameCount];
+    }
+    BitSet busyFrames = new BitSet(metadataFrameCount);
+    while (true) {
+      victimSearchCount.increment();
+      int frameIndex = metadataPolicy.selectVictim(i -> {
+        scannedFrameCount.increment();
+        return frames[i].getUsageCount() == 0 && !busyFrames.get(i);
+      });
+      if (frameIndex == NO_FRAME) {
+        return takePoolFrame();
+      }
+      if (evictPage(frameIndex)) {
+        metadataPolicy.pageEvicted(frameIndex);
+        return frameIndex;
+      }
+      busyFrames.set(frameIndex);
+    }
+  }
+
+  /**
+   * Takes a frame for a page read through a ring.
+   * Until the ring is full, it grows with a free frame or the frame of a page
+   * evicted from the pool; afterwards its frames are recycled in turn. When
+   * every frame of the ring is pinned, a frame is taken from the pool as for a
+   * page read through the pool.
+   * The caller holds the lock of the pool.
+   * 
+   * @param ring the ring.
+   * @return the index of the frame, out of the ring, -1 if every frame is
+   *         pinned, or -2 if the shards of the possible victims are busy.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int takeRingFrame(BufferRing ring) throws IOException {
+    int ringCapacity = Math.max(1, Math.min(ring.getCapacity(), (frames.length - metadataFrameCount) / 4));
+    if (ring.size() < ringCapacity) {
+      int frameIndex = takePoolFrame();
+      if (frameIndex >= 0) {
+        return frameIndex;
+      }
+    }
+
+    int frameIndex = recycleRingFrame(ring);
+    return frameIndex != NO_FRAME ? frameIndex : takePoolFrame();
+  }
+
+  /**
+   * Takes the next frame of a ring whose page can be evicted, in turn.
+   * The caller holds the lock of the pool.
+   * 
+   * @param ring the ring.
+   * @return the index of the frame, out of the ring, or -1 if no page of the
+   *         ring can be evicted.
+   * @throws IOException if an I/O error occurs.
+   */
+  private int recycleRingFrame(BufferRing ring) throws IOException {
+    for (int attempt = ring.size(); attempt > 0; attempt--) {
+      int frameIndex = ring.nextRecyclableFrame(i -> frames[i].getUsageCount() == 0);
+      if (frameIndex == NO_FRAME) {
+        break;
+      }
+      if (evictPage(frameIndex)) {
+        ring.remove(frameIndex);
+        frameRings[frameIndex] = null;
+        return frameIndex;
+      }
+    }
+    return NO_FRAME;
+  }
+
+  /**
+   * Evicts the page of a frame if it is not pinned, writing it to disk if it was
+   * modified. The frame is left out of the page table, but still in the
+   * replacement policy or its ring.
+   * The caller holds the lock of the pool; the lock of the shard of the page is
+   * only tried, so the page is not evicted if another thread holds it.
+   * 
+   * @param frameIndex the index of the frame.
+   * @return true if the page was evicted, false otherwise.
+   * @throws IOException if an I/O error occurs.
+   */
+  private boolean evictPage(int frameIndex) throws IOException {
+    long key = frameKeys[frameIndex];
+    Shard shard = shardOf(key);
+    if (!shard.lock.tryLock()) {
+      return false;
+    }
+    try {
+      MemoryFrame memoryFrame = frames[frameIndex];
+      if (memoryFrame.getUsageCount() != 0) {
+        return false;
+      }
+      boolean wasModified = memoryFrame.isModified();
+      memoryFrame.releaseDataBlock();
+      if (wasModified) {
+        dirtyFrameCount.decrementAndGet();
+        writtenBackPageCount.increment();
+      }
+      evictionCount.increment();
+      if (prefetchedFrames[frameIndex]) {
+        prefetchedFrames[frameIndex] = false;
+        wastedPrefetchCount.increment();
+      }
+      shard.pageTable.remove(key);
+      frameKeys[frameIndex] = -1;
+      memoryFrame.invalidate();
+      return true;
+    } finally {
+      shard.lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a frame holding a page to a ring.
+   * The caller holds the lock of the pool.
+   * 
+   * @param ring       the ring.
+   * @param frameIndex the index of the frame.
+   */
+  private void addToRing(BufferRing ring, int frameIndex) {
+    if (!openRings.contains(ring)) {
+      openRings.add(ring);
+    }
+    ring.add(frameIndex);
+    frameRings[frameIndex] = ring;
+  }
+
+  /**
+   * Moves a frame of a ring to the pool, keeping its page.
+   * The caller holds the lock of the pool.
+   * 
+   * @param frameIndex the index of the frame.
    */
-  private BufferManager() {
-    memoryCache = new LinkedHashMap<>(DBParams.maxFrameCount, 0.75f, true);
+  private void adoptRingFrame(int frameIndex) {
+    frameRings[frameIndex].remove(frameIndex);
+    frameRings[frameIndex] = null;
+    replacementPolicy.pageLoaded(frameIndex, frameKeys[frameIndex]);
   }
 
   /**
-   * Initializes the BufferManager by clearing the memoryCache.
+   * Gives the frames of a ring back to the pool.
+   * The pages of the ring that are not pinned are dropped, after being written
+   * to disk if they were modified, and the others join the pool.
+   * 
+   * @param ring the ring.
+   * @throws IOException if an I/O error occurs.
    */
-  public void initialize() {
-    clearMemory();
+  void releaseRing(BufferRing ring) throws IOException {
+    poolLock.lock();
+    try {
+      for (int i = 0; i < ring.size(); i++) {
+        int frameIndex = ring.frameAt(i);
+        if (frameRings[frameIndex] != ring) {
+          continue;
+        }
+        frameRings[frameIndex] = null;
+        if (!evictPage(frameIndex)) {
+          replacementPolicy.pageLoaded(frameIndex, frameKeys[frameIndex]);
+          continue;
+        }
+        freeFrames[freeFrameCount++] = frameIndex;
+      }
+    } finally {
+      ring.clear();
+      openRings.remove(ring);
+      poolLock.unlock();
+    }
   }
 
   /**
-   * Completes the operations of the BufferManager by flushing all pages.
+   * Returns the ByteBuffer of the page with the given PageId.
+   * The page is pinned until it is released with releasePage, but not latched,
+   * so it must not be modified if other threads may read it with readPage.
    * 
+   * @param pageId the PageId of the page.
+   * @return the ByteBuffer of the page.
    * @throws IOException if an I/O error occurs.
    */
-  public void complete() throws IOException {
-    flushAllPages();
+  public ByteBuffer getPageBuffer(PageId pageId) throws IOException {
+    return getPageBuffer(pageId, null);
   }
 
   /**
-   * Clears the memoryCache.
+   * Returns the ByteBuffer of the page with the given PageId, reading it
+   * through a ring if it is not in memory.
+   * The page must be released with releasePage as any other page.
+   * 
+   * @param pageId the PageId of the page.
+   * @param ring   the ring of the scan, or null to read the page through the
+   *               pool.
+   * @return the ByteBuffer of the page.
+   * @throws IOException if an I/O error occurs.
    */
-  public void clearMemory() {
-    memoryCache.clear();
+  public ByteBuffer getPageBuffer(PageId pageId, BufferRing ring) throws IOException {
+    int frameIndex = loadPage(pageId, ring, false, false);
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      frames[frameIndex].unlockExclusive();
+    }
+    return frames[frameIndex].getDataBuffer().duplicate();
   }
 
   /**
-   * Returns the MemoryFrame associated with the given PageId.
+   * Returns the ByteBuffer of the page with the given PageId, pinned and latched
+   * until the page is released with releasePage(pageId, isModified, forUpdate)
+   * by the same thread.
    * 
-   * @param pageId the PageId of the MemoryFrame to return.
-   * @return the MemoryFrame associated with the given PageId, or null if no such
-   *         MemoryFrame exists.
+   * @param pageId    the PageId of the page.
+   * @param forUpdate true to latch the page in exclusive mode, in order to modify
+   *                  it, false to latch it in shared mode, in order to read it.
+   * @return the ByteBuffer of the page.
+   * @throws IOException if an I/O error occurs.
    */
-  private MemoryFrame getMemoryFrame(PageId pageId) {
-    return memoryCache.values().stream().parallel().filter(f -> f.getDataPageId().equals(pageId)).findAny()
-        .orElse(null);
+  public ByteBuffer getPageBuffer(PageId pageId, boolean forUpdate) throws IOException {
+    return latchPage(loadPage(pageId, null, false, false), forUpdate);
   }
 
   /**
-   * Loads the page with the given PageId into memory.
-   * If the memoryCache is full, it uses the LRU policy to replace a page.
+   * Returns the ByteBuffer of the metadata page with the given PageId, such as
+   * the header page of a table, loading it into the metadata pool if it is not
+   * in memory.
+   * The page is pinned until it is released with releasePage, but not latched,
+   * as with getPageBuffer(pageId).
    * 
-   * @param pageId the PageId of the page to load.
-   * @return the MemoryFrame of the loaded page.
+   * @param pageId the PageId of the page.
+   * @return the ByteBuffer of the page.
    * @throws IOException if an I/O error occurs.
    */
-  private MemoryFrame loadPage(PageId pageId) throws IOException {
-    MemoryFrame memoryFrame = memoryCache.get(pageId);
-    if (memoryFrame == null) {
-      if (memoryCache.size() == DBParams.maxFrameCount) {
-        Iterator<PageId> iterator = memoryCache.keySet().iterator();
-        while (iterator.hasNext()) {
-          PageId lruPageId = iterator.next();
-          memoryFrame = getMemoryFrame(lruPageId);
-          if (memoryFrame.getUsageCount() == 0) {
-            break;
-          }
-        }
-        memoryFrame.releaseDataBlock();
-        memoryCache.remove(memoryFrame.getDataPageId());
-      } else {
-        memoryFrame = new MemoryFrame();
-      }
-      memoryFrame.loadDataPage(pageId);
-      memoryCache.put(pageId, memoryFrame);
+  public ByteBuffer getMetadataPageBuffer(PageId pageId) throws IOException {
+    int frameIndex = loadPage(pageId, null, false, true);
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      frames[frameIndex].unlockExclusive();
     }
-    memoryFrame.increaseUsageCount();
-    return memoryFrame;
+    return frames[frameIndex].getDataBuffer().duplicate();
   }
 
   /**
-   * Returns the ByteBuffer of the page with the given PageId.
+   * Returns the ByteBuffer of the metadata page with the given PageId, loading
+   * it into the metadata pool if it is not in memory, pinned and latched until
+   * the page is released with releasePage(pageId, isModified, forUpdate) by the
+   * same thread.
    * 
-   * @param pageId the PageId of the page.
+   * @param pageId    the PageId of the page.
+   * @param forUpdate true to latch the page in exclusive mode, in order to modify
+   *                  it, false to latch it in shared mode, in order to read it.
    * @return the ByteBuffer of the page.
    * @throws IOException if an I/O error occurs.
    */
-  public ByteBuffer getPageBuffer(PageId pageId) throws IOException {
-    MemoryFrame memoryFrame = loadPage(pageId);
+  public ByteBuffer getMetadataPageBuffer(PageId pageId, boolean forUpdate) throws IOException {
+    return latchPage(loadPage(pageId, null, false, true), forUpdate);
+  }
+
+  /**
+   * Latches a page loaded by loadPage.
+   * 
+   * @param frameIndex the index returned by loadPage.
+   * @param forUpdate  true to latch the page in exclusive mode, false to latch
+   *                   it in shared mode.
+   * @return the ByteBuffer of the page.
+   */
+  private ByteBuffer latchPage(int frameIndex, boolean forUpdate) {
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      if (!forUpdate) {
+        // the exclusive latch of the read is downgraded
+        frames[frameIndex].lockShared();
+        frames[frameIndex].unlockExclusive();
+      }
+    } else if (forUpdate) {
+      frames[frameIndex].lockExclusive();
+    } else {
+      frames[frameIndex].lockShared();
+    }
+    return frames[frameIndex].getDataBuffer().duplicate();
+  }
+
+  /**
+   * Reads the page with the given PageId, loading it into memory if needed.
+   * 
+   * @param <T>    the type of the result.
+   * @param pageId the PageId of the page.
+   * @param reader the read of the page.
+   * @return the result of the reader.
+   * @throws IOException if an I/O error occurs, or if the reader fails.
+   * @see #readPage(PageId, BufferRing, PageReader)
+   */
+  public <T> T readPage(PageId pageId, PageReader<T> reader) throws IOException {
+    return readPage(pageId, null, reader);
+  }
+
+  /**
+   * Reads the page with the given PageId, loading it through a ring if it is
+   * not in memory.
+   * A page in memory is read without pinning nor latching it: the versions of
+   * its shard and of its frame are taken before the read and checked after it,
+   * and the read is run again if they changed meanwhile, so that concurrent
+   * readers of a page write nothing they share. After a few failed attempts, or
+   * if the page is not in memory, the page is pinned and latched in shared mode
+   * while it is read, then released.
+   * 
+   * @param <T>    the type of the result.
+   * @param pageId the PageId of the page.
+   * @param ring   the ring of the scan, or null to read the page through the
+   *               pool.
+   * @param reader the read of the page, which may be run several times.
+   * @return the result of the reader.
+   * @throws IOException if an I/O error occurs, or if the reader fails.
+   */
+  public <T> T readPage(PageId pageId, BufferRing ring, PageReader<T> reader) throws IOException {
+    long key = PageTable.keyOf(pageId);
+    PageTable pageTable = shardOf(key).pageTable;
+    for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+      long arraysVersion = resizeVersion;
+      long tableVersion = pageTable.beginRead();
+      int frameIndex = pageTable.optimisticGet(key);
+      if (!pageTable.validate(tableVersion) || (arraysVersion & 1) != 0) {
+        continue;
+      }
+      if (frameIndex == NO_FRAME) {
+        break;
+      }
+      // the arrays may have been replaced by a resize since the lookup; a frame
+      // and a key read from arrays of different resizes may not match
+      MemoryFrame[] currentFrames = frames;
+      long[] currentKeys = frameKeys;
+      if (frameIndex >= currentFrames.length || frameIndex >= currentKeys.length) {
+        continue;
+      }
+      MemoryFrame memoryFrame = currentFrames[frameIndex];
+      long stamp = memoryFrame.beginOptimisticRead();
+      if ((stamp & 1) != 0 || currentKeys[frameIndex] != key) {
+        continue;
+      }
+      T result;
+      try {
+        result = reader.read(memoryFrame.getDataBuffer().duplicate());
+      } catch (IOException | RuntimeException e) {
+        // a failure on a page modified meanwhile is only a torn read
+        if (memoryFrame.validateOptimisticRead(stamp) && currentKeys[frameIndex] == key
+            && resizeVersion == arraysVersion) {
+          throw e;
+        }
+        continue;
+      }
+      if (memoryFrame.validateOptimisticRead(stamp) && currentKeys[frameIndex] == key
+          && resizeVersion == arraysVersion) {
+        hitCount.increment();
+        recordOptimisticHit(frameIndex, key);
+        return result;
+      }
+    }
 
-    return memoryFrame.getDataBuffer();
+    int frameIndex = loadPage(pageId, ring, false, false);
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      // the exclusive latch of the read is downgraded
+      frames[frameIndex].lockShared();
+      frames[frameIndex].unlockExclusive();
+    } else {
+      frames[frameIndex].lockShared();
+    }
+    try {
+      return reader.read(frames[frameIndex].getDataBuffer().duplicate());
+    } finally {
+      frames[frameIndex].unlockShared();
+      unpinFrame(frameIndex);
+    }
   }
 
   /**
    * Releases the page with the given PageId.
-   * If the page was modified, it is marked as such and its data block is
-   * released.
+   * If the page was modified, it is marked as such; it is written to disk later,
+   * and the background page writer is woken up if more than
+   * DBParams.dirtyPageHighWaterMark of the frames are dirty.
    * 
    * @param pageId     the PageId of the page to release.
    * @param isModified whether the page was modified.
    * @throws IOException if an I/O error occurs.
    */
   public void releasePage(PageId pageId, boolean isModified) throws IOException {
-    MemoryFrame memoryFrame = memoryCache.get(pageId);
-
-    if (memoryFrame != null) {
-      memoryFrame.decreaseUsageCount();
-      if (isModified) {
+    long key = PageTable.keyOf(pageId);
+    Shard shard = shardOf(key);
+    int dirtyCount = 0;
+    shard.lock.lock();
+    try {
+      int frameIndex = shard.pageTable.get(key);
+      if (frameIndex == NO_FRAME) {
+        throw new IllegalStateException("Cannot unpin a page that does not exist in buffer");
+      }
+      MemoryFrame memoryFrame = frames[frameIndex];
+      if (isModified && !memoryFrame.isModified()) {
         memoryFrame.markAsModified();
-        memoryFrame.releaseDataBlock();
+        dirtyCount = dirtyFrameCount.incrementAndGet();
       }
-    } else {
+      memoryFrame.decreaseUsageCount();
+    } finally {
+      shard.lock.unlock();
+    }
+    if (dirtyCount > frames.length * DBParams.dirtyPageHighWaterMark) {
+      pageWriter.wakeUp();
+    }
+  }
+
+  /**
+   * Releases the page with the given PageId, got with getPageBuffer(pageId,
+   * forUpdate) by the same thread: the latch of the page is released before its
+   * pin.
+   * 
+   * @param pageId     the PageId of the page to release.
+   * @param isModified whether the page was modified.
+   * @param forUpdate  the mode in which the page was latched.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void releasePage(PageId pageId, boolean isModified, boolean forUpdate) throws IOException {
+    long key = PageTable.keyOf(pageId);
+    Shard shard = shardOf(key);
+    int frameIndex;
+    shard.lock.lock();
+    try {
+      frameIndex = shard.pageTable.get(key);
+    } finally {
+      shard.lock.unlock();
+    }
+    if (frameIndex == NO_FRAME) {
       throw new IllegalStateException("Cannot unpin a page that does not exist in buffer");
     }
+    if (forUpdate) {
+      frames[frameIndex].unlockExclusive();
+    } else {
+      frames[frameIndex].unlockShared();
+    }
+    releasePage(pageId, isModified);
+  }
+
+  /**
+   * Loads pages into the free frames ahead of their use.
+   * The pages that are not already in memory are read with a single batched
+   * read; loading stops when there are no free frames left, so no page is
+   * evicted to make room for a prefetched one. As in loadPage, each page is
+   * registered in its frame, pinned and latched in exclusive mode, before it
+   * is read, so that a thread requesting it meanwhile waits for the read
+   * instead of reading it again, modifying it and having it written back
+   * before an outdated copy is attached.
+   * 
+   * @param pageIds the PageIds of the pages to prefetch.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void prefetchPages(Collection<PageId> pageIds) throws IOException {
+    List<PageId> missingPageIds = new ArrayList<>();
+    int[] frameIndexes = new int[pageIds.size()];
+    int frameIndex = NO_FRAME;
+    for (PageId pageId : pageIds) {
+      if (frameIndex == NO_FRAME) {
+        frameIndex = takeFreeFrame();
+        if (frameIndex == NO_FRAME) {
+          break;
+        }
+      }
+      long key = PageTable.keyOf(pageId);
+      Shard shard = shardOf(key);
+      // a busy shard is left alone, the page is then read when requested
+      if (!shard.lock.tryLock()) {
+        continue;
+      }
+      try {
+        if (shard.pageTable.get(key) != NO_FRAME) {
+          continue;
+        }
+        MemoryFrame memoryFrame = frames[frameIndex];
+        memoryFrame.increaseUsageCount();
+        memoryFrame.lockExclusive();
+        shard.pageTable.put(key, frameIndex);
+        registerPage(frameIndex, key, null);
+        prefetchedFrames[frameIndex] = true;
+      } finally {
+        shard.lock.unlock();
+      }
+      frameIndexes[missingPageIds.size()] = frameIndex;
+      missingPageIds.add(pageId.clone());
+      frameIndex = NO_FRAME;
+    }
+    if (frameIndex != NO_FRAME) {
+      freeFrame(frameIndex);
+    }
+    if (missingPageIds.isEmpty()) {
+      return;
+    }
+
+    // the frames are pinned, so they keep their indexes across a resize
+    prefetchedPageCount.add(missingPageIds.size());
+    ByteBuffer[] dataBuffers = new ByteBuffer[missingPageIds.size()];
+    for (int i = 0; i < dataBuffers.length; i++) {
+      dataBuffers[i] = frames[frameIndexes[i]].getDataBuffer();
+    }
+    try {
+      DiskManager.getInstance().loadPages(missingPageIds, dataBuffers);
+    } catch (IOException | RuntimeException e) {
+      for (int i = 0; i < dataBuffers.length; i++) {
+        abandonRead(frameIndexes[i], shardOf(PageTable.keyOf(missingPageIds.get(i))));
+      }
+      throw e;
+    }
+    for (int i = 0; i < dataBuffers.length; i++) {
+      MemoryFrame memoryFrame = frames[frameIndexes[i]];
+      memoryFrame.attachDataPage(missingPageIds.get(i));
+      memoryFrame.unlockExclusive();
+      unpinFrame(frameIndexes[i]);
+    }
+  }
+
+  /**
+   * Takes a free frame of the buffer pool, out of the metadata pool, without
+   * evicting any page.
+   * 
+   * @return the index of the frame, or -1 if no frame is free.
+   */
+  private int takeFreeFrame() {
+    poolLock.lock();
+    try {
+      return freeFrameCount > 0 ? freeFrames[--freeFrameCount] : NO_FRAME;
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * Loads a metadata page into a free frame of the metadata pool ahead of its
+   * use, unless the page is in memory or the metadata pool has no free frame.
+   * 
+   * @param pageId the PageId of the page.
+   * @return false if the metadata pool has no free frame, true otherwise.
+   * @throws IOException if an I/O error occurs.
+   */
+  boolean prefetchMetadataPage(PageId pageId) throws IOException {
+    poolLock.lock();
+    try {
+      if (freeMetadataFrameCount == 0) {
+        return false;
+      }
+    } finally {
+      poolLock.unlock();
+    }
+    int frameIndex = loadPage(pageId, null, true, true);
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      frames[frameIndex].unlockExclusive();
+    }
+    unpinFrame(frameIndex);
+    return true;
+  }
+
+  /**
+   * Tells whether the buffer pool has free frames, not counting the metadata
+   * pool.
+   * 
+   * @return true if a page can be loaded without evicting another one.
+   */
+  boolean hasFreeFrames() {
+    poolLock.lock();
+    try {
+      return freeFrameCount > 0;
+    } finally {
+      poolLock.unlock();
+    }
   }
 
   /**
-   * Flushes all pages in the memoryCache.
+   * Lists the pages of the metadata pool or of the buffer pool, the hottest
+   * first, as ranked by the replacement policy of the pool. The pages of the
+   * rings are left out.
+   * 
+   * @param isMetadata true to list the pages of the metadata pool.
+   * @return the PageIds of the pages.
+   */
+  List<PageId> listPagesByHotness(boolean isMetadata) {
+    Shard[] lockedShards = lockAll();
+    try {
+      List<PageId> pageIds = new ArrayList<>();
+      for (int frameIndex : (isMetadata ? metadataPolicy : replacementPolicy).framesByHotness()) {
+        if (frameKeys[frameIndex] != -1) {
+          pageIds.add(frames[frameIndex].getDataPageId());
+        }
+      }
+      return pageIds;
+    } finally {
+      unlockAll(lockedShards);
+    }
+  }
+
+  /**
+   * Checks that the page table, the frames and the free frames agree, and
+   * returns the problems found: every page in memory is held by a single
+   * frame, the page table maps it to that frame, every frame is either free or
+   * holds a page, a free frame is free only once and in its own pool, and no
+   * frame is pinned. The check is meant for a buffer pool no thread is using.
+   *
+   * @return the problems found, empty if the buffer pool is consistent.
+   */
+  List<String> checkConsistency() {
+    List<String> problems = new ArrayList<>();
+    Shard[] lockedShards = lockAll();
+    try {
+      int heldFrameCount = 0;
+      for (int frameIndex = 0; frameIndex < frames.length; frameIndex++) {
+        long key = frameKeys[frameIndex];
+        if (frames[frameIndex].getUsageCount() != 0) {
+          problems.add(String.format("frame %d is pinned %d times", frameIndex, frames[frameIndex].getUsageCount()));
+        }
+        if (key == -1) {
+          continue;
+        }
+        heldFrameCount++;
+        int tableFrameIndex = shardOf(key).pageTable.get(key);
+        if (tableFrameIndex != frameIndex) {
+          problems.add(String.format("frame %d holds page %s, which the page table maps to frame %d", frameIndex,
+              frames[frameIndex].getDataPageId(), tableFrameIndex));
+        }
+        if (PageTable.keyOf(frames[frameIndex].getDataPageId()) != key) {
+          problems.add(String.format("frame %d is registered for another page than %s", frameIndex,
+              frames[frameIndex].getDataPageId()));
+        }
+      }
+      int tablePageCount = 0;
+      for (Shard shard : lockedShards) {
+        tablePageCount += shard.pageTable.size();
+      }
+      if (tablePageCount != heldFrameCount) {
+        problems.add(String.format("the page table holds %d pages but %d frames hold a page", tablePageCount,
+            heldFrameCount));
+      }
+      BitSet freeFrameSet = new BitSet(frames.length);
+      for (int i = 0; i < freeMetadataFrameCount + freeFrameCount; i++) {
+        boolean isMetadata = i < freeMetadataFrameCount;
+        int frameIndex = isMetadata ? freeMetadataFrames[i] : freeFrames[i - freeMetadataFrameCount];
+        if (freeFrameSet.get(frameIndex)) {
+          problems.add(String.format("frame %d is free twice", frameIndex));
+        }
+        freeFrameSet.set(frameIndex);
+        if (frameKeys[frameIndex] != -1) {
+          problems.add(String.format("free frame %d holds a page", frameIndex));
+        }
+        if (isMetadata != frameIndex < metadataFrameCount) {
+          problems.add(String.format("free frame %d is in the wrong pool", frameIndex));
+        }
+      }
+      if (freeFrameSet.cardinality() + heldFrameCount != frames.length) {
+        problems.add(String.format("%d frames are neither free nor holding a page",
+            frames.length - freeFrameSet.cardinality() - heldFrameCount));
+      }
+    } finally {
+      unlockAll(lockedShards);
+    }
+    return problems;
+  }
+
+  /**
+   * Loads a page ahead of its use through a ring, recycling a frame of the ring
+   * if needed, unless the page is in memory. Without a ring, the page is only
+   * loaded into a free frame, as with prefetchPages. Either way, the page is
+   * registered in its frame, latched in exclusive mode, before it is read, so
+   * that a scan running ahead of an UPDATE or a DELETE never attaches a copy
+   * older than the one they write back.
+   * 
+   * @param pageId the PageId of the page.
+   * @param ring   the ring to read the page through, or null.
+   * @return true if the page is in memory, false otherwise.
+   * @throws IOException if an I/O error occurs.
+   */
+  boolean prefetchPage(PageId pageId, BufferRing ring) throws IOException {
+    if (ring == null) {
+      prefetchPages(List.of(pageId));
+      return peekPage(pageId, buffer -> Boolean.TRUE) != null;
+    }
+    int frameIndex = loadPage(pageId, ring, true, false);
+    if (frameIndex < 0) {
+      frameIndex = -1 - frameIndex;
+      frames[frameIndex].unlockExclusive();
+    }
+    unpinFrame(frameIndex);
+    return true;
+  }
+
+  /**
+   * Reads a page if it is in memory, without counting a request nor telling
+   * the replacement policy, so that looking at a page ahead of its use does not
+   * change which page is evicted.
+   * The page is pinned while it is read.
+   * 
+   * @param <T>    the type of the result.
+   * @param pageId the PageId of the page.
+   * @param reader the function reading the page from a buffer.
+   * @return the result of the reader, or null if the page is not in memory.
+   */
+  <T> T peekPage(PageId pageId, Function<ByteBuffer, T> reader) {
+    long key = PageTable.keyOf(pageId);
+    Shard shard = shardOf(key);
+    int frameIndex;
+    shard.lock.lock();
+    try {
+      frameIndex = shard.pageTable.get(key);
+      if (frameIndex == NO_FRAME) {
+        return null;
+      }
+      frames[frameIndex].increaseUsageCount();
+    } finally {
+      shard.lock.unlock();
+    }
+    if (!awaitPage(frameIndex, key)) {
+      return null;
+    }
+    try {
+      return reader.apply(frames[frameIndex].getDataBuffer().duplicate());
+    } finally {
+      unpinFrame(frameIndex);
+    }
+  }
+
+  /**
+   * Flushes all pages in memory.
+   * The modified pages are written back with a single batched write.
    * 
    * @throws IOException if an I/O error occurs.
    */
   public void flushAllPages() throws IOException {
-    if (memoryCache.size() > 0) {
-      for (MemoryFrame memoryFrame : memoryCache.values()) {
-        memoryFrame.releaseDataBlock();
-        memoryFrame.resetDataBlock();
+    writeBackLock.lock();
+    Shard[] lockedShards = lockAll();
+    try {
+      if (freeFrameCount + freeMetadataFrameCount == frames.length) {
+        return;
+      }
+      List<PageId> modifiedPageIds = new ArrayList<>();
+      List<ByteBuffer> modifiedBuffers = new ArrayList<>();
+      for (int frameIndex = 0; frameIndex < frames.length; frameIndex++) {
+        if (frameKeys[frameIndex] == -1) {
+          continue;
+        }
+        MemoryFrame memoryFrame = frames[frameIndex];
+        if (memoryFrame.getUsageCount() != 0) {
+          throw new IllegalStateException("Cannot release a data block that is being used");
+        }
+        if (memoryFrame.isModified()) {
+          modifiedPageIds.add(memoryFrame.getDataPageId());
+          modifiedBuffers.add(memoryFrame.getDataBuffer());
+        }
+      }
+      DiskManager.getInstance().savePages(modifiedPageIds, modifiedBuffers.toArray(ByteBuffer[]::new));
+      writtenBackPageCount.add(modifiedPageIds.size());
+      for (int frameIndex = 0; frameIndex < frames.length; frameIndex++) {
+        if (frameKeys[frameIndex] != -1) {
+          frames[frameIndex].markAsSaved();
+          frames[frameIndex].resetDataBlock();
+        }
+      }
+      dirtyFrameCount.set(0);
+      resetFrames();
+    } finally {
+      unlockAll(lockedShards);
+      writeBackLock.unlock();
+    }
+  }
+
+  /**
+   * Writes back the modified pages that are not pinned, keeping them in memory.
+   * The pages are pinned while they are written, in a single batched write
+   * ordered by file and page, so that they are not evicted and read again
+   * before being written. A page modified meanwhile is marked as modified again
+   * when it is released.
+   * 
+   * @throws IOException if an I/O error occurs; the pages are then still marked
+   *                     as modified.
+   */
+  void writeDirtyPages() throws IOException {
+    writeBackLock.lock();
+    try {
+      List<Integer> dirtyFrames = new ArrayList<>();
+      for (int frameIndex = 0; frameIndex < frames.length; frameIndex++) {
+        long key = frameKeys[frameIndex];
+        if (key == -1 || !frames[frameIndex].isModified()) {
+          continue;
+        }
+        Shard shard = shardOf(key);
+        shard.lock.lock();
+        try {
+          MemoryFrame memoryFrame = frames[frameIndex];
+          if (frameKeys[frameIndex] == key && memoryFrame.getUsageCount() == 0 && memoryFrame.isModified()) {
+            memoryFrame.increaseUsageCount();
+            memoryFrame.markAsSaved();
+            dirtyFrameCount.decrementAndGet();
+            dirtyFrames.add(frameIndex);
+          }
+        } finally {
+          shard.lock.unlock();
+        }
+      }
+      if (dirtyFrames.isEmpty()) {
+        return;
+      }
+
+      dirtyFrames.sort(Comparator.comparingLong(frameIndex -> frameKeys[frameIndex]));
+      List<PageId> pageIds = new ArrayList<>(dirtyFrames.size());
+      ByteBuffer[] dataBuffers = new ByteBuffer[dirtyFrames.size()];
+      for (int i = 0; i < dataBuffers.length; i++) {
+        MemoryFrame memoryFrame = frames[dirtyFrames.get(i)];
+        pageIds.add(memoryFrame.getDataPageId());
+        dataBuffers[i] = memoryFrame.getDataBuffer();
+      }
+      try {
+        DiskManager.getInstance().savePages(pageIds, dataBuffers);
+        writtenBackPageCount.add(dataBuffers.length);
+      } catch (IOException | RuntimeException e) {
+        for (int frameIndex : dirtyFrames) {
+          Shard shard = shardOf(frameKeys[frameIndex]);
+          shard.lock.lock();
+          try {
+            if (!frames[frameIndex].isModified()) {
+              frames[frameIndex].markAsModified();
+              dirtyFrameCount.incrementAndGet();
+            }
+          } finally {
+            shard.lock.unlock();
+          }
+        }
+        throw e;
+      } finally {
+        for (int frameIndex : dirtyFrames) {
+          frames[frameIndex].decreaseUsageCount();
+        }
+      }
+    } finally {
+      writeBackLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of pages loaded ahead of their use since the buffer pool
+   * was last cleared.
+   * 
+   * @return the number of prefetched pages.
+   */
+  @Override
+  public long getPrefetchedPageCount() {
+    return prefetchedPageCount.sum();
+  }
+
+  /**
+   * Returns the number of pages loaded ahead of their use and evicted before
+   * being requested since the buffer pool was last cleared.
+   * 
+   * @return the number of wasted prefetches.
+   */
+  @Override
+  public long getWastedPrefetchCount() {
+    return wastedPrefetchCount.sum();
+  }
+
+  /**
+   * Returns the number of frames holding a modified page.
+   * 
+   * @return the number of dirty frames.
+   */
+  @Override
+  public int getDirtyPageCount() {
+    return dirtyFrameCount.get();
+  }
+
+  /**
+   * Returns the number of page requests served from memory since the buffer
+   * pool was last cleared.
+   * 
+   * @return the number of hits.
+   */
+  @Override
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Returns the number of page requests that had to read the page from disk
+   * since the buffer pool was last cleared.
+   * 
+   * @return the number of misses.
+   */
+  @Override
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Returns the share of the page requests served from memory since the buffer
+   * pool was last cleared.
+   * 
+   * @return the hit ratio, between 0 and 1, or 0 if no page was requested.
+   */
+  @Override
+  public double getHitRatio() {
+    long hits = hitCount.sum();
+    long requestCount = hits + missCount.sum();
+    return requestCount == 0 ? 0 : (double) hits / requestCount;
+  }
+
+  @Override
+  public int getFrameCount() {
+    return frames.length - metadataFrameCount;
+  }
+
+  @Override
+  public int getMetadataFrameCount() {
+    return metadataFrameCount;
+  }
+
+  @Override
+  public long getMetadataHitCount() {
+    return metadataHitCount.sum();
+  }
+
+  @Override
+  public long getMetadataMissCount() {
+    return metadataMissCount.sum();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  @Override
+  public double getAverageEvictionScanLength() {
+    long searchCount = victimSearchCount.sum();
+    return searchCount == 0 ? 0 : (double) scannedFrameCount.sum() / searchCount;
+  }
+
+  @Override
+  public long getWrittenBackPageCount() {
+    return writtenBackPageCount.sum();
+  }
+
+  /**
+   * Returns the number of frames currently pinned. The frames are counted one
+   * by one, without any lock, so the result is approximate while the buffer
+   * pool is used.
+   * 
+   * @return the number of pinned frames.
+   */
+  @Override
+  public int getPinnedFrameCount() {
+    int pinnedFrameCount = 0;
+    for (MemoryFrame memoryFrame : frames) {
+      if (memoryFrame.getUsageCount() > 0) {
+        pinnedFrameCount++;
       }
-      memoryCache.clear();
     }
+    return pinnedFrameCount;
+  }
+
+  @Override
+  public double getAveragePinDurationMicros() {
+    long pinnedNanos = 0;
+    long pinCount = 0;
+    for (MemoryFrame memoryFrame : frames) {
+      pinnedNanos += memoryFrame.getPinnedNanos();
+      pinCount += memoryFrame.getPinCount();
+    }
+    return pinCount == 0 ? 0 : pinnedNanos / 1000.0 / pinCount;
   }
 
   /**
@@ -167,4 +2039,28 @@ public final class BufferManager {
   private final class SingletonHolder {
     private static final BufferManager INSTANCE = new BufferManager();
   }
-}
\ No newline at end of file
+
+  /**
+   * Shard is a part of the page table, with the lock guarding its pages.
+   */
+  private static final class Shard {
+    /**
+     * The lock of the shard.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The frame index of each page of the shard in memory.
+     */
+    private final PageTable pageTable;
+
+    /**
+     * Constructs a new empty Shard.
+     * 
+     * @param expectedPageCount the number of pages expected in the shard.
+     */
+    private Shard(int expectedPageCount) {
+      pageTable = new PageTable(expectedPageCount);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+
+/**
+ * The BufferPoolMXBean interface exposes the metrics of the buffer pool
+ * through JMX, under the name up.mi.bdda.app:type=BufferPool.
+ * The counters are kept since the buffer pool was last cleared. The pool can
+ * also be resized through the bean.
+ */
+public interface BufferPoolMXBean {
+
+  /**
+   * Returns the number of frames of the buffer pool, out of the metadata pool.
+   *
+   * @return the number of frames.
+   */
+  int getFrameCount();
+
+  /**
+   * Returns the number of frames of the metadata pool, in addition to the
+   * frames of the buffer pool.
+   *
+   * @return the number of metadata frames.
+   */
+  int getMetadataFrameCount();
+
+  /**
+   * Returns the number of page requests served from memory.
+   *
+   * @return the number of hits.
+   */
+  long getHitCount();
+
+  /**
+   * Returns the number of page requests that had to read the page from disk.
+   *
+   * @return the number of misses.
+   */
+  long getMissCount();
+
+  /**
+   * Returns the share of the page requests served from memory.
+   *
+   * @return the hit ratio, between 0 and 1.
+   */
+  double getHitRatio();
+
+  /**
+   * Returns the number of metadata page requests served from memory. They are
+   * not counted among the hits of the buffer pool.
+   *
+   * @return the number of metadata hits.
+   */
+  long getMetadataHitCount();
+
+  /**
+   * Returns the number of metadata page requests that had to read the page from
+   * disk. They are not counted among the misses of the buffer pool.
+   *
+   * @return the number of metadata misses.
+   */
+  long getMetadataMissCount();
+
+  /**
+   * Returns the number of pages evicted from their frame.
+   *
+   * @return the number of evictions.
+   */
+  long getEvictionCount();
+
+  /**
+   * Returns the average number of frames the replacement policy looked at to
+   * find a page to evict.
+   *
+   * @return the average eviction scan length, or 0 if no page was evicted.
+   */
+  double getAverageEvictionScanLength();
+
+  /**
+   * Returns the number of modified pages written back to disk, when evicted,
+   * flushed or written back by the page writer.
+   *
+   * @return the number of pages written back.
+   */
+  long getWrittenBackPageCount();
+
+  /**
+   * Returns the number of frames holding a modified page.
+   *
+   * @return the number of dirty frames.
+   */
+  int getDirtyPageCount();
+
+  /**
+   * Returns the number of frames currently pinned.
+   *
+   * @return the number of pinned frames.
+   */
+  int getPinnedFrameCount();
+
+  /**
+   * Returns the average time a frame stays pinned, from the time it is pinned
+   * while unpinned to the time its last user unpins it.
+   *
+   * @return the average pin duration, in microseconds, or 0 if no pin ended.
+   */
+  double getAveragePinDurationMicros();
+
+  /**
+   * Returns the number of pages loaded ahead of their use.
+   *
+   * @return the number of prefetched pages.
+   */
+  long getPrefetchedPageCount();
+
+  /**
+   * Returns the number of pages loaded ahead of their use and evicted before
+   * being requested.
+   *
+   * @return the number of wasted prefetches.
+   */
+  long getWastedPrefetchCount();
+
+  /**
+   * Resizes the buffer pool, while it is used, to hold as many frames as pages
+   * fit in a memory budget. The pool is shrunk by evicting the pages of its
+   * last frames, as far as they are not pinned.
+   *
+   * @param budget the memory budget, such as "64MB" or "25%".
+   * @return the number of frames of the buffer pool.
+   * @throws IOException if a modified page cannot be written back.
+   */
+  int resize(String budget) throws IOException;
+}
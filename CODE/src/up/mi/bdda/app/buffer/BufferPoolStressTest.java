@@ -0,0 +1,423 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import up.mi.bdda.app.disk.DiskManager;
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * BufferPoolStressTest hammers the buffer pool from many threads and checks
+ * that it stays consistent.
+ * Each page of a temporary database holds its own PageId in its first 8 bytes
+ * and a counter in the next 8 bytes. The threads request random pages, more
+ * pages than the pool holds so that pages are evicted all the time, and:
+ * <ul>
+ * <li>pin a page with getPageBuffer and release it,</li>
+ * <li>latch a page in shared mode to read it,</li>
+ * <li>latch a page in exclusive mode to increment its counter,</li>
+ * <li>read a page with readPage, without pin nor latch,</li>
+ * <li>scan a few consecutive pages through a BufferRing.</li>
+ * </ul>
+ * A page read must always hold its own PageId, also right before it is
+ * released, so that a frame reused for another page while pinned is caught.
+ * A release without a matching pin fails, since the pin count of a frame
+ * cannot go below zero. Optionally, another thread resizes the pool all the
+ * while, and another one warms the pool up as PoolWarmer does, loading
+ * batches of pages with prefetchPages whenever growing the pool back frees
+ * frames, so that pages are loaded ahead while they are modified, evicted and
+ * written back. With the read-ahead, the scans follow their pages with a
+ * ReadAhead, through a ring or, incrementing the counters of the pages as an
+ * UPDATE does, through the pool, so that pages are also loaded ahead while
+ * other threads modify them.
+ * Once the threads are done, no frame may be pinned, every page in memory must
+ * be held by a single frame mapped to it by the page table, as checked by
+ * BufferManager.checkConsistency, and the counters of the pages must add up
+ * to the number of increments.
+ * <p>
+ * Run it with ./run.sh --class up.mi.bdda.app.buffer.BufferPoolStressTest
+ * [threads] [seconds] [frames] [pages] [resize] [warm] [readahead]; it exits
+ * with status 1 if a check fails.
+ */
+public final class BufferPoolStressTest {
+  /**
+   * The number of consecutive pages scanned through a ring.
+   */
+  private static final int SCAN_PAGE_COUNT = 8;
+
+  /**
+   * The number of consecutive pages scanned with a read-ahead.
+   */
+  private static final int READ_AHEAD_PAGE_COUNT = 32;
+
+  /**
+   * The pages of the test database.
+   */
+  private final List<PageId> pageIds = new ArrayList<>();
+
+  /**
+   * The number of pins taken by getPageBuffer.
+   */
+  private final AtomicLong pinCount = new AtomicLong();
+
+  /**
+   * The number of pins released by releasePage.
+   */
+  private final AtomicLong releaseCount = new AtomicLong();
+
+  /**
+   * The number of increments of the counters of the pages.
+   */
+  private final AtomicLong incrementCount = new AtomicLong();
+
+  /**
+   * The number of operations done by the threads.
+   */
+  private final AtomicLong operationCount = new AtomicLong();
+
+  /**
+   * The failures found, with the first of them kept for the report.
+   */
+  private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Whether the scans load their pages ahead with a ReadAhead.
+   */
+  private final boolean isReadingAhead;
+
+  /**
+   * Private constructor: the test is run from main.
+   *
+   * @param isReadingAhead whether the scans load their pages ahead.
+   */
+  private BufferPoolStressTest(boolean isReadingAhead) {
+    this.isReadingAhead = isReadingAhead;
+  }
+
+  /**
+   * Runs the stress test.
+   *
+   * @param args the number of threads (8), the duration in seconds (10), the
+   *             number of frames (64), the number of pages (1024), then
+   *             "resize" to resize the pool while the threads run, "warm"
+   *             to warm the pool up meanwhile and "readahead" to scan with a
+   *             read-ahead.
+   * @throws Exception if the test database cannot be set up.
+   */
+  public static void main(String[] args) throws Exception {
+    int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int frameCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+    int pageCount = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+    List<String> options = args.length > 4 ? List.of(args).subList(4, args.length) : List.of();
+    boolean isResizing = options.contains("resize");
+    boolean isWarming = options.contains("warm");
+
+    Path folder = Files.createTempDirectory("buffer-pool-stress");
+    DBParams.databaseFolderPath = folder.toString();
+    DBParams.pageSize = 4096;
+    DBParams.maxFileCount = 4;
+    DBParams.maxFrameCount = frameCount;
+    DBParams.bufferPoolSize = null;
+    DBParams.bufferPoolWarmUp = false;
+
+    boolean isPassed;
+    try {
+      isPassed = new BufferPoolStressTest(options.contains("readahead")).run(threadCount, seconds, frameCount, pageCount, isResizing,
+          isWarming);
+    } finally {
+      deleteFolder(folder);
+    }
+    System.out.println(isPassed ? "PASSED" : "FAILED");
+    System.exit(isPassed ? 0 : 1);
+  }
+
+  /**
+   * Sets the test database up, runs the threads and checks the buffer pool.
+   *
+   * @param threadCount the number of threads.
+   * @param seconds     the duration of the test, in seconds.
+   * @param frameCount  the number of frames of the pool.
+   * @param pageCount   the number of pages of the test database.
+   * @param isResizing  whether the pool is resized while the threads run.
+   * @param isWarming   whether the pool is warmed up while the threads run.
+   * @return true if every check passed.
+   * @throws Exception if the test database cannot be set up.
+   */
+  private boolean run(int threadCount, int seconds, int frameCount, int pageCount, boolean isResizing,
+      boolean isWarming) throws Exception {
+    DiskManager diskManager = DiskManager.getInstance();
+    BufferManager bufferManager = BufferManager.getInstance();
+    diskManager.initialize();
+    bufferManager.initialize();
+    for (int i = 0; i < pageCount; i++) {
+      PageId pageId = diskManager.allocatePage();
+      ByteBuffer buffer = bufferManager.getPageBuffer(pageId, true);
+      buffer.putInt(0, pageId.getFileIdx());
+      buffer.putInt(4, pageId.getPageIdx());
+      buffer.putLong(8, 0);
+      bufferManager.releasePage(pageId, true, true);
+      pageIds.add(pageId);
+    }
+    System.out.println(String.format(":: (Info) %d threads on %d frames and %d pages for %d s%s%s%s",
+        threadCount, frameCount, pageCount, seconds, isResizing ? ", resizing the pool" : "",
+        isWarming ? ", warming the pool up" : "", isReadingAhead ? ", reading ahead" : ""));
+
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      threads.add(new Thread(() -> work(deadline), "stress-" + i));
+    }
+    if (isResizing) {
+      threads.add(new Thread(() -> resize(deadline, frameCount), "stress-resize"));
+    }
+    if (isWarming) {
+      threads.add(new Thread(() -> warm(deadline, frameCount), "stress-warm"));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (pinCount.get() != releaseCount.get()) {
+      failures.add(String.format("%d pins but %d releases", pinCount.get(), releaseCount.get()));
+    }
+    for (String problem : bufferManager.checkConsistency()) {
+      failures.add("inconsistent buffer pool: " + problem);
+    }
+    long counterSum = 0;
+    for (PageId pageId : pageIds) {
+      counterSum += bufferManager.readPage(pageId, buffer -> buffer.getLong(8));
+    }
+    if (counterSum != incrementCount.get()) {
+      failures.add(String.format("the counters add up to %d after %d increments", counterSum,
+          incrementCount.get()));
+    }
+    bufferManager.complete();
+    diskManager.terminate();
+
+    System.out.println(String.format(":: (Info) %d operations, %d pins, %d increments, %d pages loaded ahead,"
+        + " hit ratio %.3f", operationCount.get(), pinCount.get(), incrementCount.get(),
+        bufferManager.getPrefetchedPageCount(), bufferManager.getHitRatio()));
+    synchronized (failures) {
+      for (String failure : failures.subList(0, Math.min(20, failures.size()))) {
+        System.out.println(String.format(":: (Error) %s", failure));
+      }
+      if (failures.size() > 20) {
+        System.out.println(String.format(":: (Error) ... and %d more", failures.size() - 20));
+      }
+    }
+    return failures.isEmpty();
+  }
+
+  /**
+   * Runs random operations on random pages until the deadline.
+   *
+   * @param deadline the time at which the thread stops, in nanoseconds.
+   */
+  private void work(long deadline) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    BufferManager bufferManager = BufferManager.getInstance();
+    while (System.nanoTime() < deadline) {
+      int pageIdx = random.nextInt(pageIds.size());
+      PageId pageId = pageIds.get(pageIdx).clone();
+      try {
+        int operation = random.nextInt(10);
+        if (operation < 3) {
+          ByteBuffer buffer = bufferManager.getPageBuffer(pageId);
+          pinCount.incrementAndGet();
+          try {
+            checkPage(pageId, buffer, "pinned");
+            Thread.onSpinWait();
+            checkPage(pageId, buffer, "pinned, before its release");
+          } finally {
+            bufferManager.releasePage(pageId, false);
+            releaseCount.incrementAndGet();
+          }
+        } else if (operation < 5) {
+          ByteBuffer buffer = bufferManager.getPageBuffer(pageId, false);
+          pinCount.incrementAndGet();
+          try {
+            checkPage(pageId, buffer, "latched in shared mode");
+          } finally {
+            bufferManager.releasePage(pageId, false, false);
+            releaseCount.incrementAndGet();
+          }
+        } else if (operation < 7) {
+          increment(pageId);
+        } else if (operation < 9) {
+          PageId readPageId = bufferManager.readPage(pageId,
+              buffer -> new PageId(buffer.getInt(0), buffer.getInt(4)));
+          if (!readPageId.equals(pageId)) {
+            failures.add(String.format("page %s read without lock holds page %s", pageId, readPageId));
+          }
+        } else if (isReadingAhead) {
+          scanAhead(pageIdx, random.nextBoolean());
+        } else {
+          scan(pageIdx);
+        }
+        operationCount.incrementAndGet();
+      } catch (IOException | RuntimeException e) {
+        failures.add(String.format("%s on page %s: %s", e.getClass().getSimpleName(), pageId, e.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * Latches a page in exclusive mode to increment its counter.
+   *
+   * @param pageId the PageId of the page.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void increment(PageId pageId) throws IOException {
+    BufferManager bufferManager = BufferManager.getInstance();
+    ByteBuffer buffer = bufferManager.getPageBuffer(pageId, true);
+    pinCount.incrementAndGet();
+    try {
+      checkPage(pageId, buffer, "latched in exclusive mode");
+      buffer.putLong(8, buffer.getLong(8) + 1);
+      incrementCount.incrementAndGet();
+    } finally {
+      bufferManager.releasePage(pageId, true, true);
+      releaseCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Scans consecutive pages with a ReadAhead, as DBFileManager scans the data
+   * pages of a table: through a BufferRing, reading the pages, or through the
+   * pool, incrementing their counters.
+   *
+   * @param firstPageIdx the index of the first page in the list of pages.
+   * @param isUsingRing  whether the pages are read through a ring.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void scanAhead(int firstPageIdx, boolean isUsingRing) throws IOException {
+    BufferManager bufferManager = BufferManager.getInstance();
+    List<PageId> scannedPageIds = pageIds.subList(firstPageIdx,
+        Math.min(pageIds.size(), firstPageIdx + READ_AHEAD_PAGE_COUNT));
+    // the read-ahead is closed before the ring
+    try (BufferRing ring = isUsingRing ? new BufferRing() : null;
+        ReadAhead readAhead = new ReadAhead(ring, scannedPageIds)) {
+      for (PageId pageId : scannedPageIds) {
+        if (ring == null) {
+          increment(pageId.clone());
+        } else {
+          PageId readPageId = bufferManager.readPage(pageId, ring,
+              buffer -> new PageId(buffer.getInt(0), buffer.getInt(4)));
+          if (!readPageId.equals(pageId)) {
+            failures.add(String.format("page %s read ahead through a ring holds page %s", pageId, readPageId));
+          }
+        }
+        readAhead.pageTouched(pageId);
+      }
+    }
+  }
+
+  /**
+   * Reads consecutive pages through a BufferRing, as a sequential scan does.
+   *
+   * @param firstPageIdx the index of the first page in the list of pages.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void scan(int firstPageIdx) throws IOException {
+    BufferManager bufferManager = BufferManager.getInstance();
+    try (BufferRing ring = new BufferRing()) {
+      for (int i = firstPageIdx; i < Math.min(pageIds.size(), firstPageIdx + SCAN_PAGE_COUNT); i++) {
+        PageId pageId = pageIds.get(i);
+        PageId readPageId = bufferManager.readPage(pageId, ring,
+            buffer -> new PageId(buffer.getInt(0), buffer.getInt(4)));
+        if (!readPageId.equals(pageId)) {
+          failures.add(String.format("page %s read through a ring holds page %s", pageId, readPageId));
+        }
+      }
+    }
+  }
+
+  /**
+   * Resizes the buffer pool between half and twice its size until the
+   * deadline.
+   *
+   * @param deadline   the time at which the thread stops, in nanoseconds.
+   * @param frameCount the initial number of frames of the pool.
+   */
+  private void resize(long deadline, int frameCount) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (System.nanoTime() < deadline) {
+      try {
+        BufferManager.getInstance().resize(frameCount / 2 + random.nextInt(frameCount * 3 / 2 + 1));
+        Thread.sleep(20);
+      } catch (IOException | RuntimeException e) {
+        failures.add(String.format("resize failed: %s", e));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Warms the pool up until the deadline, as PoolWarmer does while the first
+   * queries run: the pool is shrunk and grown back, which frees frames, and
+   * batches of consecutive pages are loaded into them with prefetchPages until
+   * no frame is free.
+   *
+   * @param deadline   the time at which the thread stops, in nanoseconds.
+   * @param frameCount the initial number of frames of the pool.
+   */
+  private void warm(long deadline, int frameCount) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    BufferManager bufferManager = BufferManager.getInstance();
+    while (System.nanoTime() < deadline) {
+      try {
+        bufferManager.resize(Math.max(1, frameCount / 2));
+        bufferManager.resize(frameCount);
+        while (bufferManager.hasFreeFrames() && System.nanoTime() < deadline) {
+          int first = random.nextInt(pageIds.size());
+          bufferManager.prefetchPages(
+              pageIds.subList(first, Math.min(pageIds.size(), first + PoolWarmer.BATCH_PAGE_COUNT)));
+        }
+      } catch (IOException | RuntimeException e) {
+        failures.add(String.format("warm-up failed: %s", e));
+      }
+    }
+  }
+
+  /**
+   * Checks that a page holds its own PageId.
+   *
+   * @param pageId the PageId of the page.
+   * @param buffer the buffer of the page.
+   * @param state  how the page is held, for the report.
+   */
+  private void checkPage(PageId pageId, ByteBuffer buffer, String state) {
+    PageId readPageId = new PageId(buffer.getInt(0), buffer.getInt(4));
+    if (!readPageId.equals(pageId)) {
+      failures.add(String.format("page %s %s holds page %s", pageId, state, readPageId));
+    }
+  }
+
+  /**
+   * Deletes the temporary database folder.
+   *
+   * @param folder the folder.
+   * @throws IOException if a file cannot be deleted.
+   */
+  private static void deleteFolder(Path folder) throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.util.function.IntPredicate;
+
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * The BufferRing class is a small private set of frames used by a sequential
+ * scan.
+ * The pages a scan reads through its ring are loaded into the frames of the
+ * ring, which are recycled in turn once the ring is full, instead of evicting
+ * the pages of the rest of the buffer pool. A page of the ring that is
+ * requested outside of the ring joins the buffer pool.
+ * A ring must be closed once the scan is done, which gives its frames back to
+ * the buffer pool.
+ */
+public final class BufferRing implements AutoCloseable {
+  /**
+   * The indexes of the frames of the ring.
+   */
+  private final int[] frameIndexes;
+
+  /**
+   * The number of frames of the ring.
+   */
+  private int size;
+
+  /**
+   * The position in frameIndexes of the next frame to recycle.
+   */
+  private int nextFrame;
+
+  /**
+   * Constructs a new BufferRing of DBParams.scanRingFrameCount frames.
+   */
+  public BufferRing() {
+    this(DBParams.scanRingFrameCount);
+  }
+
+  /**
+   * Constructs a new BufferRing.
+   * 
+   * @param capacity the maximum number of frames of the ring.
+   */
+  public BufferRing(int capacity) {
+    frameIndexes = new int[Math.max(1, capacity)];
+    size = 0;
+    nextFrame = 0;
+  }
+
+  /**
+   * Returns the maximum number of frames of the ring.
+   * 
+   * @return the capacity of the ring.
+   */
+  public int getCapacity() {
+    return frameIndexes.length;
+  }
+
+  /**
+   * Returns the number of frames of the ring.
+   * 
+   * @return the size of the ring.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the index of a frame of the ring.
+   * 
+   * @param position the position of the frame in the ring.
+   * @return the index of the frame.
+   */
+  int frameAt(int position) {
+    return frameIndexes[position];
+  }
+
+  /**
+   * Adds a frame to the ring.
+   * 
+   * @param frameIndex the index of the frame.
+   */
+  void add(int frameIndex) {
+    frameIndexes[size++] = frameIndex;
+  }
+
+  /**
+   * Removes a frame from the ring.
+   * 
+   * @param frameIndex the index of the frame.
+   */
+  void remove(int frameIndex) {
+    for (int i = 0; i < size; i++) {
+      if (frameIndexes[i] == frameIndex) {
+        frameIndexes[i] = frameIndexes[--size];
+        if (nextFrame >= size) {
+          nextFrame = 0;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Finds the next frame of the ring to recycle, in turn.
+   * 
+   * @param isRecyclable tells whether a frame can be recycled.
+   * @return the index of the frame, or -1 if no frame can be recycled.
+   */
+  int nextRecyclableFrame(IntPredicate isRecyclable) {
+    for (int attempt = 0; attempt < size; attempt++) {
+      int frameIndex = frameIndexes[nextFrame];
+      nextFrame = (nextFrame + 1) % size;
+      if (isRecyclable.test(frameIndex)) {
+        return frameIndex;
+      }
+    }
+    return FrameList.NO_FRAME;
+  }
+
+  /**
+   * Forgets every frame of the ring.
+   */
+  void clear() {
+    size = 0;
+    nextFrame = 0;
+  }
+
+  /**
+   * Gives the frames of the ring back to the buffer pool.
+   * 
+   * @throws IOException if a modified page cannot be written to disk.
+   */
+  @Override
+  public void close() throws IOException {
+    BufferManager.getInstance().releaseRing(this);
+  }
+}
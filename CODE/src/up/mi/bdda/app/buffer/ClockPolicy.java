@@ -0,0 +1,101 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * ClockPolicy evicts pages with the CLOCK (second chance) algorithm.
+ * Each frame has a reference bit set when its page is used. A hand sweeps the
+ * frames in a circle: a page whose bit is set loses it and is spared, and the
+ * first evictable page whose bit is clear is the victim. A hit only sets a
+ * bit, so no structure is reordered and a hit takes no lock.
+ */
+final class ClockPolicy implements ReplacementPolicy {
+  /**
+   * Whether each frame holds a page.
+   */
+  private final boolean[] occupiedFrames;
+
+  /**
+   * The reference bit of each frame.
+   */
+  private final boolean[] referencedFrames;
+
+  /**
+   * The index of the next frame looked at by the hand.
+   */
+  private int hand;
+
+  /**
+   * Constructs a new ClockPolicy.
+   *
+   * @param frameCount The number of frames of the buffer pool.
+   */
+  ClockPolicy(int frameCount) {
+    occupiedFrames = new boolean[frameCount];
+    referencedFrames = new boolean[frameCount];
+    hand = 0;
+  }
+
+  @Override
+  public void pageLoaded(int frameIndex, long pageKey) {
+    occupiedFrames[frameIndex] = true;
+    referencedFrames[frameIndex] = true;
+  }
+
+  @Override
+  public void pageAccessed(int frameIndex) {
+    // the bit is only written when it changes, so hits on a hot page do not
+    // keep writing its cache line
+    if (!referencedFrames[frameIndex]) {
+      referencedFrames[frameIndex] = true;
+    }
+  }
+
+  @Override
+  public boolean isAccessLockFree() {
+    // a reference bit set while the hand passes only delays the eviction
+    return true;
+  }
+
+  @Override
+  public void pageEvicted(int frameIndex) {
+    occupiedFrames[frameIndex] = false;
+    referencedFrames[frameIndex] = false;
+  }
+
+  @Override
+  public int selectVictim(IntPredicate isEvictable) {
+    // two turns are enough: the first one clears every reference bit
+    for (int step = 0; step < 2 * occupiedFrames.length; step++) {
+      int frameIndex = hand;
+      hand = (hand + 1) % occupiedFrames.length;
+      if (!occupiedFrames[frameIndex] || !isEvictable.test(frameIndex)) {
+        continue;
+      }
+      if (referencedFrames[frameIndex]) {
+        referencedFrames[frameIndex] = false;
+      } else {
+        return frameIndex;
+      }
+    }
+    return FrameList.NO_FRAME;
+  }
+
+  @Override
+  public int[] framesByHotness() {
+    // the pages used since the hand last passed come first
+    return IntStream.concat(
+        IntStream.range(0, occupiedFrames.length).filter(i -> occupiedFrames[i] && referencedFrames[i]),
+        IntStream.range(0, occupiedFrames.length).filter(i -> occupiedFrames[i] && !referencedFrames[i]))
+        .toArray();
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(occupiedFrames, false);
+    Arrays.fill(referencedFrames, false);
+    hand = 0;
+  }
+}
@@ -0,0 +1,177 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.Arrays;
+
+/**
+ * FrameList is a doubly linked list of frame indexes stored in int arrays, so
+ * that adding, moving and removing a frame neither allocates nor searches.
+ * A frame belongs to at most one list at a time.
+ */
+final class FrameList {
+  /**
+   * Index marking the end of the list.
+   */
+  static final int NO_FRAME = -1;
+
+  /**
+   * The previous frame of each frame in the list.
+   */
+  private final int[] previousFrames;
+
+  /**
+   * The next frame of each frame in the list.
+   */
+  private final int[] nextFrames;
+
+  /**
+   * Whether each frame is in the list.
+   */
+  private final boolean[] members;
+
+  /**
+   * The first frame of the list, or NO_FRAME if the list is empty.
+   */
+  private int firstFrame;
+
+  /**
+   * The last frame of the list, or NO_FRAME if the list is empty.
+   */
+  private int lastFrame;
+
+  /**
+   * The number of frames in the list.
+   */
+  private int size;
+
+  /**
+   * Constructs a new empty FrameList.
+   *
+   * @param frameCount The number of frames of the buffer pool.
+   */
+  FrameList(int frameCount) {
+    previousFrames = new int[frameCount];
+    nextFrames = new int[frameCount];
+    members = new boolean[frameCount];
+    clear();
+  }
+
+  /**
+   * Appends a frame at the end of the list.
+   *
+   * @param frameIndex The index of the frame, not in the list.
+   */
+  void addLast(int frameIndex) {
+    previousFrames[frameIndex] = lastFrame;
+    nextFrames[frameIndex] = NO_FRAME;
+    if (lastFrame == NO_FRAME) {
+      firstFrame = frameIndex;
+    } else {
+      nextFrames[lastFrame] = frameIndex;
+    }
+    lastFrame = frameIndex;
+    members[frameIndex] = true;
+    size++;
+  }
+
+  /**
+   * Removes a frame from the list.
+   *
+   * @param frameIndex The index of the frame.
+   * @return true if the frame was in the list, false otherwise.
+   */
+  boolean remove(int frameIndex) {
+    if (!members[frameIndex]) {
+      return false;
+    }
+    int previous = previousFrames[frameIndex];
+    int next = nextFrames[frameIndex];
+    if (previous == NO_FRAME) {
+      firstFrame = next;
+    } else {
+      nextFrames[previous] = next;
+    }
+    if (next == NO_FRAME) {
+      lastFrame = previous;
+    } else {
+      previousFrames[next] = previous;
+    }
+    members[frameIndex] = false;
+    size--;
+    return true;
+  }
+
+  /**
+   * Moves a frame of the list to its end.
+   *
+   * @param frameIndex The index of the frame, in the list.
+   */
+  void moveToLast(int frameIndex) {
+    if (frameIndex != lastFrame) {
+      remove(frameIndex);
+      addLast(frameIndex);
+    }
+  }
+
+  /**
+   * Checks if a frame is in the list.
+   *
+   * @param frameIndex The index of the frame.
+   * @return true if the frame is in the list, false otherwise.
+   */
+  boolean contains(int frameIndex) {
+    return members[frameIndex];
+  }
+
+  /**
+   * Returns the first frame of the list.
+   *
+   * @return The index of the first frame, or NO_FRAME if the list is empty.
+   */
+  int first() {
+    return firstFrame;
+  }
+
+  /**
+   * Returns the frame following a frame of the list.
+   *
+   * @param frameIndex The index of a frame of the list.
+   * @return The index of the next frame, or NO_FRAME at the end of the list.
+   */
+  int next(int frameIndex) {
+    return nextFrames[frameIndex];
+  }
+
+  /**
+   * Returns the frames of the list, from its end to its start.
+   *
+   * @return The indexes of the frames, the last one first.
+   */
+  int[] toReversedArray() {
+    int[] frameIndexes = new int[size];
+    int frameIndex = lastFrame;
+    for (int i = 0; i < size; i++) {
+      frameIndexes[i] = frameIndex;
+      frameIndex = previousFrames[frameIndex];
+    }
+    return frameIndexes;
+  }
+
+  /**
+   * Returns the number of frames in the list.
+   *
+   * @return The size of the list.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Removes every frame from the list.
+   */
+  void clear() {
+    Arrays.fill(members, false);
+    firstFrame = NO_FRAME;
+    lastFrame = NO_FRAME;
+    size = 0;
+  }
+}
@@ -0,0 +1,144 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * LruKPolicy evicts pages with the LRU-K algorithm.
+ * The times of the last K uses of each page are kept, and the victim is the
+ * page whose K-th most recent use is the oldest. Pages used less than K times
+ * have no K-th use and are evicted first, the least recently used one first.
+ * The history of an evicted page is retained for a while, so a page loaded
+ * again soon after its eviction keeps its past uses.
+ * Choosing a victim looks at every frame.
+ */
+final class LruKPolicy implements ReplacementPolicy {
+  /**
+   * The number of uses kept per page.
+   */
+  private final int k;
+
+  /**
+   * The times of the last K uses of the page of each frame, most recent first;
+   * 0 stands for no use.
+   */
+  private final long[] history;
+
+  /**
+   * Whether each frame holds a page.
+   */
+  private final boolean[] occupiedFrames;
+
+  /**
+   * The key of the page held by each frame.
+   */
+  private final long[] pageKeys;
+
+  /**
+   * The histories of the pages recently evicted, by page key, oldest first. As
+   * many histories are retained as there are frames.
+   */
+  private final Map<Long, long[]> retainedHistories;
+
+  /**
+   * The logical time, incremented on each use of a page.
+   */
+  private long clock;
+
+  /**
+   * Constructs a new LruKPolicy.
+   *
+   * @param frameCount The number of frames of the buffer pool.
+   * @param k          The number of uses kept per page.
+   */
+  LruKPolicy(int frameCount, int k) {
+    this.k = Math.max(1, k);
+    history = new long[frameCount * this.k];
+    occupiedFrames = new boolean[frameCount];
+    pageKeys = new long[frameCount];
+    retainedHistories = new LinkedHashMap<>();
+    clock = 0;
+  }
+
+  @Override
+  public void pageLoaded(int frameIndex, long pageKey) {
+    occupiedFrames[frameIndex] = true;
+    pageKeys[frameIndex] = pageKey;
+    long[] retainedHistory = retainedHistories.remove(pageKey);
+    if (retainedHistory != null) {
+      System.arraycopy(retainedHistory, 0, history, frameIndex * k, k);
+    } else {
+      Arrays.fill(history, frameIndex * k, (frameIndex + 1) * k, 0);
+    }
+    pageAccessed(frameIndex);
+  }
+
+  @Override
+  public void pageAccessed(int frameIndex) {
+    int start = frameIndex * k;
+    System.arraycopy(history, start, history, start + 1, k - 1);
+    history[start] = ++clock;
+  }
+
+  @Override
+  public void pageEvicted(int frameIndex) {
+    occupiedFrames[frameIndex] = false;
+    retainedHistories.put(pageKeys[frameIndex], Arrays.copyOfRange(history, frameIndex * k, (frameIndex + 1) * k));
+    if (retainedHistories.size() > occupiedFrames.length) {
+      Iterator<Long> iterator = retainedHistories.keySet().iterator();
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  @Override
+  public int selectVictim(IntPredicate isEvictable) {
+    int victim = FrameList.NO_FRAME;
+    for (int frameIndex = 0; frameIndex < occupiedFrames.length; frameIndex++) {
+      if (!occupiedFrames[frameIndex] || !isEvictable.test(frameIndex)) {
+        continue;
+      }
+      if (victim == FrameList.NO_FRAME || isOlder(frameIndex, victim)) {
+        victim = frameIndex;
+      }
+    }
+    return victim;
+  }
+
+  /**
+   * Compares the histories of two frames.
+   *
+   * @param frameIndex The index of a frame.
+   * @param other      The index of another frame.
+   * @return true if the K-th most recent use of the page of the first frame is
+   *         older, ties being broken by the most recent use.
+   */
+  private boolean isOlder(int frameIndex, int other) {
+    long kthUse = history[frameIndex * k + k - 1];
+    long otherKthUse = history[other * k + k - 1];
+    if (kthUse != otherKthUse) {
+      return kthUse < otherKthUse;
+    }
+    return history[frameIndex * k] < history[other * k];
+  }
+
+  @Override
+  public int[] framesByHotness() {
+    return IntStream.range(0, occupiedFrames.length)
+        .filter(frameIndex -> occupiedFrames[frameIndex])
+        .boxed()
+        .sorted((frameIndex, other) -> isOlder(frameIndex, other) ? 1 : isOlder(other, frameIndex) ? -1 : 0)
+        .mapToInt(Integer::intValue)
+        .toArray();
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(occupiedFrames, false);
+    retainedHistories.clear();
+  }
+}
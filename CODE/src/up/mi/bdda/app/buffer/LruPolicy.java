@@ -0,0 +1,58 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * LruPolicy evicts the least recently used page.
+ * The frames are kept in a list ordered by last use: a page moves to the end of
+ * the list each time it is used, and victims are searched from its start.
+ */
+final class LruPolicy implements ReplacementPolicy {
+  /**
+   * The frames holding a page, from the least to the most recently used.
+   */
+  private final FrameList recencyList;
+
+  /**
+   * Constructs a new LruPolicy.
+   *
+   * @param frameCount The number of frames of the buffer pool.
+   */
+  LruPolicy(int frameCount) {
+    recencyList = new FrameList(frameCount);
+  }
+
+  @Override
+  public void pageLoaded(int frameIndex, long pageKey) {
+    recencyList.addLast(frameIndex);
+  }
+
+  @Override
+  public void pageAccessed(int frameIndex) {
+    recencyList.moveToLast(frameIndex);
+  }
+
+  @Override
+  public void pageEvicted(int frameIndex) {
+    recencyList.remove(frameIndex);
+  }
+
+  @Override
+  public int selectVictim(IntPredicate isEvictable) {
+    int frameIndex = recencyList.first();
+    while (frameIndex != FrameList.NO_FRAME && !isEvictable.test(frameIndex)) {
+      frameIndex = recencyList.next(frameIndex);
+    }
+    return frameIndex;
+  }
+
+  @Override
+  public int[] framesByHotness() {
+    return recencyList.toReversedArray();
+  }
+
+  @Override
+  public void clear() {
+    recencyList.clear();
+  }
+}
@@ -1,12 +1,17 @@
 package up.mi.bdda.app.buffer;
 
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import up.mi.bdda.app.disk.DiskManager;
 import up.mi.bdda.app.page.PageId;
 import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.IOMode;
+import up.mi.bdda.app.utils.FileHandler;
 
 /**
  * The MemoryFrame class represents a frame in the buffer pool.
@@ -14,9 +19,21 @@ import up.mi.bdda.app.settings.DBParams;
  */
 public class MemoryFrame {
   /**
-   * The data buffer that holds the data of the page.
+   * The maximum size of a slab of frame buffers, in bytes.
    */
-  private ByteBuffer dataBuffer;
+  private static final int SLAB_SIZE = 1 << 30;
+
+  /**
+   * One pin of a frame in PIN_SAMPLING_INTERVAL is timed, since reading the
+   * clock costs about as much as a hit in the buffer pool. A power of two.
+   */
+  private static final int PIN_SAMPLING_INTERVAL = 16;
+
+  /**
+   * The data buffer that holds the data of the page. It is reused for every
+   * page loaded into the frame.
+   */
+  private final ByteBuffer dataBuffer;
 
   /**
    * The ID of the page that is currently loaded into the frame.
@@ -29,20 +46,67 @@ public class MemoryFrame {
    */
   private AtomicInteger usageCount;
 
+  /**
+   * The number of times the frame was pinned while unpinned. Several threads
+   * may pin the frame in turn, so it is counted atomically.
+   */
+  private final AtomicInteger pinSequence;
+
+  /**
+   * The time at which the frame was last pinned while unpinned, in
+   * nanoseconds, or 0 if that pin is not timed.
+   */
+  private volatile long pinStartNanos;
+
+  /**
+   * The total time the frame was pinned, in nanoseconds, over its timed pins.
+   */
+  private final AtomicLong pinnedNanos;
+
+  /**
+   * The number of timed pins of the frame that ended, a pin lasting from the
+   * time the frame is pinned while unpinned to the time its last user unpins
+   * it.
+   */
+  private final AtomicLong pinCount;
+
   /**
    * The dirty flag of the frame. It is set to true when the page is modified
    * while in the frame.
    */
-  private boolean isModified;
+  private volatile boolean isModified;
 
   /**
-   * Constructs a new Frame object.
+   * The latch of the frame. Readers of the page share it and a writer holds it
+   * alone; the Buffer Manager also holds it alone while it loads a page into
+   * the frame.
    */
-  public MemoryFrame() {
-    dataBuffer = null;
+  private final ReentrantReadWriteLock latch;
+
+  /**
+   * The version of the content of the frame, used as a sequence lock: it is odd
+   * while the content is being written, and changes whenever the content may
+   * have changed, so that a reader can check that what it read without any lock
+   * is consistent.
+   */
+  private final AtomicLong version;
+
+  /**
+   * Constructs a new Frame object over a data buffer, such as a slice of the
+   * slab of the buffer pool.
+   *
+   * @param dataBuffer the data buffer of the frame, of DBParams.pageSize bytes
+   */
+  public MemoryFrame(ByteBuffer dataBuffer) {
+    this.dataBuffer = dataBuffer;
     dataPageId = new PageId(-1, -1);
     usageCount = new AtomicInteger(0);
+    pinSequence = new AtomicInteger(0);
+    pinnedNanos = new AtomicLong(0);
+    pinCount = new AtomicLong(0);
     isModified = false;
+    latch = new ReentrantReadWriteLock();
+    version = new AtomicLong(0);
   }
 
   /**
@@ -64,7 +128,11 @@ public class MemoryFrame {
    * @return the new usage count
    */
   public int increaseUsageCount() {
-    return usageCount.incrementAndGet();
+    int currentCount = usageCount.incrementAndGet();
+    if (currentCount == 1) {
+      pinStartNanos = (pinSequence.incrementAndGet() & (PIN_SAMPLING_INTERVAL - 1)) == 0 ? System.nanoTime() : 0;
+    }
+    return currentCount;
   }
 
   /**
@@ -78,6 +146,13 @@ public class MemoryFrame {
     if (currentCount < 0) {
       throw new IllegalStateException("Usage count cannot be negative");
     }
+    if (currentCount == 0) {
+      long startNanos = pinStartNanos;
+      if (startNanos != 0) {
+        pinnedNanos.addAndGet(System.nanoTime() - startNanos);
+        pinCount.incrementAndGet();
+      }
+    }
     return currentCount;
   }
 
@@ -109,18 +184,145 @@ public class MemoryFrame {
   }
 
   /**
-   * Loads a page into the frame.
+   * Loads a page into the data buffer of the frame.
    *
    * @param pageId the ID of the page to load
    * @throws IOException if an I/O error occurs
    */
   public void loadDataPage(PageId pageId) throws IOException {
-    dataBuffer = ByteBuffer.allocate(DBParams.pageSize);
     DiskManager.getInstance().loadPageData(pageId, dataBuffer);
     this.dataPageId.setIndexes(pageId);
     isModified = false;
   }
 
+  /**
+   * Allocates the data buffers of the frames of the buffer pool as slices of
+   * off-heap slabs, allocated once.
+   * A slab holds at most SLAB_SIZE bytes; in the DIRECT I/O mode, the slabs are
+   * aligned so that the slices are aligned whenever the page size is a multiple
+   * of the alignment.
+   *
+   * @param frameCount the number of frames
+   * @return the data buffers, one per frame
+   */
+  static ByteBuffer[] allocateSlabBuffers(int frameCount) {
+    ByteBuffer[] dataBuffers = new ByteBuffer[frameCount];
+    int framesPerSlab = Math.max(1, SLAB_SIZE / DBParams.pageSize);
+    for (int first = 0; first < frameCount; first += framesPerSlab) {
+      int slabFrameCount = Math.min(framesPerSlab, frameCount - first);
+      int slabSize = slabFrameCount * DBParams.pageSize;
+      ByteBuffer slab = DBParams.ioMode == IOMode.DIRECT ? FileHandler.allocateAlignedBuffer(slabSize)
+          : ByteBuffer.allocateDirect(slabSize);
+      for (int i = 0; i < slabFrameCount; i++) {
+        dataBuffers[first + i] = slab.slice(i * DBParams.pageSize, DBParams.pageSize);
+      }
+    }
+    return dataBuffers;
+  }
+
+  /**
+   * Attaches a page whose data has already been read into the data buffer of
+   * the frame.
+   *
+   * @param pageId the ID of the page
+   */
+  public void attachDataPage(PageId pageId) {
+    this.dataPageId.setIndexes(pageId);
+    isModified = false;
+  }
+
+  /**
+   * Acquires the latch of the frame in shared mode, waiting for a writer or a
+   * load in progress to be done.
+   */
+  public void lockShared() {
+    latch.readLock().lock();
+  }
+
+  /**
+   * Releases the latch of the frame held in shared mode.
+   */
+  public void unlockShared() {
+    latch.readLock().unlock();
+  }
+
+  /**
+   * Acquires the latch of the frame in exclusive mode, waiting for the readers
+   * and writers to be done, and starts a write of the content of the frame.
+   */
+  public void lockExclusive() {
+    latch.writeLock().lock();
+    beginWrite();
+  }
+
+  /**
+   * Ends the write of the content of the frame and releases the latch of the
+   * frame held in exclusive mode.
+   */
+  public void unlockExclusive() {
+    endWrite();
+    latch.writeLock().unlock();
+  }
+
+  /**
+   * Starts a write of the content of the frame: the version becomes odd until
+   * endWrite is called, so optimistic reads fail meanwhile.
+   */
+  public void beginWrite() {
+    version.incrementAndGet();
+    VarHandle.storeStoreFence();
+  }
+
+  /**
+   * Ends a write of the content of the frame started with beginWrite.
+   */
+  public void endWrite() {
+    version.incrementAndGet();
+  }
+
+  /**
+   * Makes the optimistic reads in progress fail, because the frame is about to
+   * hold another page.
+   */
+  public void invalidate() {
+    version.addAndGet(2);
+    VarHandle.storeStoreFence();
+  }
+
+  /**
+   * Starts an optimistic read of the content of the frame, taking no lock and
+   * writing nothing.
+   *
+   * @return the stamp of the read, to validate once the content is read
+   */
+  public long beginOptimisticRead() {
+    return version.get();
+  }
+
+  /**
+   * Checks that the content read since an optimistic read started was not
+   * being written nor changed meanwhile.
+   *
+   * @param stamp the stamp returned by beginOptimisticRead
+   * @return true if the content read is consistent, false otherwise
+   */
+  public boolean validateOptimisticRead(long stamp) {
+    // the reads of the content must not move after the read of the version
+    VarHandle.acquireFence();
+    return (stamp & 1) == 0 && version.get() == stamp;
+  }
+
+  /**
+   * Waits for the holder of the latch in exclusive mode, if any, to release it.
+   * The latch is not kept.
+   */
+  public void awaitExclusiveRelease() {
+    if (latch.isWriteLocked()) {
+      lockShared();
+      unlockShared();
+    }
+  }
+
   /**
    * Marks the frame as dirty.
    */
@@ -128,6 +330,13 @@ public class MemoryFrame {
     isModified = true;
   }
 
+  /**
+   * Marks the frame as clean, once its page has been written to disk.
+   */
+  public void markAsSaved() {
+    isModified = false;
+  }
+
   /**
    * Returns the data buffer of the frame.
    *
@@ -155,6 +364,35 @@ public class MemoryFrame {
     return usageCount.get();
   }
 
+  /**
+   * Returns the total time the frame was pinned over its timed pins that
+   * ended.
+   *
+   * @return the pinned time, in nanoseconds
+   */
+  public long getPinnedNanos() {
+    return pinnedNanos.get();
+  }
+
+  /**
+   * Returns the number of timed pins of the frame that ended, each lasting from
+   * the time it is pinned while unpinned to the time its last user unpins it.
+   * One pin in PIN_SAMPLING_INTERVAL is timed.
+   *
+   * @return the number of timed pins
+   */
+  public long getPinCount() {
+    return pinCount.get();
+  }
+
+  /**
+   * Forgets the timed pins of the frame.
+   */
+  public void resetPinStatistics() {
+    pinnedNanos.set(0);
+    pinCount.set(0);
+  }
+
   /**
    * Returns whether the frame is dirty.
    *
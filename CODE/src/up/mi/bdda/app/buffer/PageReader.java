@@ -0,0 +1,26 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The PageReader interface represents a read of the content of a page, given
+ * to BufferManager.readPage.
+ * A read may be run on a page being modified by another thread, in which case
+ * its result is dropped and it is run again: it must not modify the page nor
+ * have any other effect, and must expect inconsistent content, such as
+ * offsets out of the page.
+ *
+ * @param <T> the type of the result of the read.
+ */
+@FunctionalInterface
+public interface PageReader<T> {
+  /**
+   * Reads the content of a page.
+   *
+   * @param buffer the ByteBuffer of the page, which must not be modified.
+   * @return the result of the read.
+   * @throws IOException if the content of the page cannot be read.
+   */
+  T read(ByteBuffer buffer) throws IOException;
+}
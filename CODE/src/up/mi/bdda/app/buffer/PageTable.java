@@ -0,0 +1,313 @@
+package up.mi.bdda.app.buffer;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+import up.mi.bdda.app.page.PageId;
+
+/**
+ * PageTable maps the pages held in the buffer pool to the index of their
+ * frame.
+ * It is an open-addressed hash table with linear probing over primitive
+ * arrays: a page is identified by a long key made of its file and page
+ * indexes, so lookups neither allocate nor compare PageId objects.
+ * The table doubles its number of slots when it gets half full.
+ * It has a single writer at a time, but can be read without any lock through
+ * optimisticGet: its version is odd while it is modified, so a reader checks
+ * that the version did not change during its lookup.
+ */
+final class PageTable {
+  /**
+   * The key of an empty slot. No page has this key since page indexes are never
+   * negative.
+   */
+  private static final long EMPTY_KEY = -1L;
+
+  /**
+   * The keys of the pages, by slot.
+   */
+  private long[] keys;
+
+  /**
+   * The frame indexes of the pages, by slot.
+   */
+  private int[] frameIndexes;
+
+  /**
+   * The mask turning a hash into a slot index.
+   */
+  private int mask;
+
+  /**
+   * The number of pages in the table.
+   */
+  private int size;
+
+  /**
+   * The version of the table, odd while the table is modified.
+   */
+  private volatile long version;
+
+  /**
+   * Constructs a new empty PageTable.
+   * The table has at least twice as many slots as entries, so probe sequences
+   * stay short.
+   *
+   * @param expectedEntryCount The number of pages expected to be held at the
+   *                           same time.
+   */
+  PageTable(int expectedEntryCount) {
+    allocateSlots(Integer.highestOneBit(Math.max(2, expectedEntryCount) * 2 - 1) << 1);
+    clear();
+  }
+
+  /**
+   * Replaces the slots of the table by empty ones.
+   *
+   * @param capacity The number of slots, a power of two.
+   */
+  private void allocateSlots(int capacity) {
+    keys = new long[capacity];
+    frameIndexes = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Returns the key of a page.
+   *
+   * @param pageId The PageId of the page.
+   * @return The key of the page.
+   */
+  static long keyOf(PageId pageId) {
+    return keyOf(pageId.getFileIdx(), pageId.getPageIdx());
+  }
+
+  /**
+   * Returns the key of a page.
+   *
+   * @param fileIdx The index of the file of the page.
+   * @param pageIdx The index of the page in its file.
+   * @return The key of the page.
+   */
+  static long keyOf(int fileIdx, int pageIdx) {
+    return ((long) fileIdx << 32) | (pageIdx & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the frame index of a page.
+   *
+   * @param key The key of the page.
+   * @return The index of the frame holding the page, or -1 if it is not in the
+   *         table.
+   */
+  int get(long key) {
+    for (int slot = slotOf(key);; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return frameIndexes[slot];
+      }
+      if (keys[slot] == EMPTY_KEY) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Maps a page to a frame index, replacing its previous frame index if any.
+   *
+   * @param key        The key of the page.
+   * @param frameIndex The index of the frame holding the page.
+   */
+  void put(long key, int frameIndex) {
+    beginWrite();
+    try {
+      insert(key, frameIndex);
+    } finally {
+      version++;
+    }
+  }
+
+  /**
+   * Maps a page to a frame index, growing the table if needed.
+   *
+   * @param key        The key of the page.
+   * @param frameIndex The index of the frame holding the page.
+   */
+  private void insert(long key, int frameIndex) {
+    int slot = slotOf(key);
+    while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    if (keys[slot] == EMPTY_KEY) {
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+        insert(key, frameIndex);
+        return;
+      }
+      keys[slot] = key;
+      size++;
+    }
+    frameIndexes[slot] = frameIndex;
+  }
+
+  /**
+   * Doubles the number of slots of the table.
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldFrameIndexes = frameIndexes;
+    allocateSlots(oldKeys.length * 2);
+    Arrays.fill(keys, EMPTY_KEY);
+    size = 0;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] != EMPTY_KEY) {
+        insert(oldKeys[slot], oldFrameIndexes[slot]);
+      }
+    }
+  }
+
+  /**
+   * Removes a page from the table.
+   * The following entries of the probe sequence are shifted back, so no
+   * tombstone is left behind.
+   *
+   * @param key The key of the page.
+   * @return The index of the frame that held the page, or -1 if it was not in
+   *         the table.
+   */
+  int remove(long key) {
+    beginWrite();
+    try {
+      return delete(key);
+    } finally {
+      version++;
+    }
+  }
+
+  /**
+   * Removes a page from the table, shifting back the following entries of its
+   * probe sequence.
+   *
+   * @param key The key of the page.
+   * @return The index of the frame that held the page, or -1 if it was not in
+   *         the table.
+   */
+  private int delete(long key) {
+    int slot = slotOf(key);
+    while (keys[slot] != key) {
+      if (keys[slot] == EMPTY_KEY) {
+        return -1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int frameIndex = frameIndexes[slot];
+    size--;
+
+    int hole = slot;
+    for (int next = (hole + 1) & mask; keys[next] != EMPTY_KEY; next = (next + 1) & mask) {
+      int home = slotOf(keys[next]);
+      // an entry can fill the hole unless its home slot lies between the hole and it
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        keys[hole] = keys[next];
+        frameIndexes[hole] = frameIndexes[next];
+        hole = next;
+      }
+    }
+    keys[hole] = EMPTY_KEY;
+    return frameIndex;
+  }
+
+  /**
+   * Returns the number of pages in the table.
+   *
+   * @return The number of pages.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Removes every page from the table.
+   */
+  void clear() {
+    beginWrite();
+    Arrays.fill(keys, EMPTY_KEY);
+    size = 0;
+    version++;
+  }
+
+  /**
+   * Returns the frame index of a page without any lock, while the table may be
+   * modified. The result is only meaningful if validate succeeds afterwards.
+   *
+   * @param key The key of the page.
+   * @return The index of the frame holding the page, or -1 if it is not in the
+   *         table or was not found consistently.
+   */
+  int optimisticGet(long key) {
+    long[] currentKeys = keys;
+    int[] currentFrameIndexes = frameIndexes;
+    int currentMask = currentKeys.length - 1;
+    int slot = slotOf(key, currentMask);
+    for (int probe = 0; probe < currentKeys.length; probe++, slot = (slot + 1) & currentMask) {
+      long slotKey = currentKeys[slot];
+      if (slotKey == key) {
+        return slot < currentFrameIndexes.length ? currentFrameIndexes[slot] : -1;
+      }
+      if (slotKey == EMPTY_KEY) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Makes the version odd before a modification. The stores of the
+   * modification cannot move before it.
+   */
+  private void beginWrite() {
+    version++;
+    VarHandle.storeStoreFence();
+  }
+
+  /**
+   * Starts an optimistic lookup of the table.
+   *
+   * @return The version of the table, to validate once the lookup is done.
+   */
+  long beginRead() {
+    return version;
+  }
+
+  /**
+   * Checks that the table was not modified since an optimistic lookup started.
+   *
+   * @param readVersion The version returned by beginRead.
+   * @return true if the lookup is consistent, false otherwise.
+   */
+  boolean validate(long readVersion) {
+    VarHandle.acquireFence();
+    return (readVersion & 1) == 0 && version == readVersion;
+  }
+
+  /**
+   * Returns the home slot of a key.
+   *
+   * @param key The key.
+   * @return The index of the first slot of the probe sequence of the key.
+   */
+  private int slotOf(long key) {
+    return slotOf(key, mask);
+  }
+
+  /**
+   * Returns the home slot of a key in a table of a given number of slots.
+   *
+   * @param key  The key.
+   * @param mask The number of slots of the table minus one.
+   * @return The index of the first slot of the probe sequence of the key.
+   */
+  private static int slotOf(long key, int mask) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & mask;
+  }
+}
@@ -0,0 +1,157 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import up.mi.bdda.app.disk.DiskManager;
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.PageReplacement;
+
+/**
+ * PageTableBenchmark measures the latency of a buffer pool hit, that is of a
+ * getPageBuffer and releasePage pair on a page in memory, for several sizes of
+ * the buffer pool.
+ * For each size, a temporary database holds one page more than the pool has
+ * frames. Every frame is filled, then HIT_COUNT requests on random pages of the
+ * pool are timed, and the best of ROUND_COUNT rounds is kept. The cost of a miss
+ * is measured afterwards by requesting every page in turn, more pages than the
+ * pool holds, so that under LRU every request evicts the page requested next,
+ * and the best of ROUND_COUNT rounds of MISS_COUNT misses is kept.
+ * <p>
+ * Run it with ./run.sh --class up.mi.bdda.app.buffer.PageTableBenchmark
+ * [frames...]; the sizes default to 16, 1024 and 65536 frames.
+ */
+public final class PageTableBenchmark {
+  /**
+   * The number of hits timed in a round.
+   */
+  private static final int HIT_COUNT = 2_000_000;
+
+  /**
+   * The number of rounds of hits, of which the best is kept.
+   */
+  private static final int ROUND_COUNT = 5;
+
+  /**
+   * The number of misses timed in a round.
+   */
+  private static final int MISS_COUNT = 20_000;
+
+  /**
+   * Private constructor: the benchmark is run from main.
+   */
+  private PageTableBenchmark() {
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the numbers of frames of the buffer pool, 16, 1024 and 65536 by
+   *             default.
+   * @throws IOException if the temporary database cannot be used.
+   */
+  public static void main(String[] args) throws IOException {
+    int[] frameCounts = args.length > 0 ? Stream.of(args).mapToInt(Integer::parseInt).toArray()
+        : new int[] { 16, 1024, 65536 };
+    for (int frameCount : frameCounts) {
+      Path folder = Files.createTempDirectory("page-table-benchmark");
+      try {
+        run(folder, frameCount);
+      } finally {
+        deleteFolder(folder);
+      }
+    }
+  }
+
+  /**
+   * Measures the latency of a hit and of a miss for a number of frames.
+   *
+   * @param folder     the folder of the temporary database.
+   * @param frameCount the number of frames of the buffer pool.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static void run(Path folder, int frameCount) throws IOException {
+    DBParams.databaseFolderPath = folder.toString();
+    DBParams.pageSize = 4096;
+    DBParams.maxFileCount = 4;
+    DBParams.maxFrameCount = frameCount;
+    DBParams.bufferPoolSize = null;
+    DBParams.bufferPoolWarmUp = false;
+    DBParams.pageReplacement = PageReplacement.LRU;
+    DiskManager diskManager = DiskManager.getInstance();
+    BufferManager bufferManager = BufferManager.getInstance();
+    diskManager.initialize();
+    bufferManager.initialize();
+
+    List<PageId> pageIds = new ArrayList<>();
+    for (int i = 0; i <= frameCount; i++) {
+      pageIds.add(diskManager.allocatePage());
+    }
+    for (int i = 0; i < frameCount; i++) {
+      bufferManager.getPageBuffer(pageIds.get(i));
+      bufferManager.releasePage(pageIds.get(i), false);
+    }
+    // the requests use copies of the page IDs, as the callers of the pool do
+    Random random = new Random(7);
+    PageId[] requestedPageIds = new PageId[HIT_COUNT];
+    for (int i = 0; i < HIT_COUNT; i++) {
+      requestedPageIds[i] = pageIds.get(random.nextInt(frameCount)).clone();
+    }
+
+    double hitTime = Double.MAX_VALUE;
+    for (int round = 0; round < ROUND_COUNT; round++) {
+      long start = System.nanoTime();
+      for (PageId pageId : requestedPageIds) {
+        bufferManager.getPageBuffer(pageId);
+        bufferManager.releasePage(pageId, false);
+      }
+      hitTime = Math.min(hitTime, (System.nanoTime() - start) / (double) HIT_COUNT);
+    }
+
+    // a first turn over the pages leaves the pool one page behind the requests
+    for (int i = 0; i <= frameCount; i++) {
+      PageId pageId = pageIds.get((frameCount + i) % (frameCount + 1));
+      bufferManager.getPageBuffer(pageId);
+      bufferManager.releasePage(pageId, false);
+    }
+    double missTime = Double.MAX_VALUE;
+    int requestIdx = 0;
+    for (int round = 0; round < ROUND_COUNT; round++) {
+      long missCount = bufferManager.getMissCount();
+      long start = System.nanoTime();
+      for (int i = 0; i < MISS_COUNT; i++, requestIdx++) {
+        PageId pageId = pageIds.get((frameCount + requestIdx) % (frameCount + 1));
+        bufferManager.getPageBuffer(pageId);
+        bufferManager.releasePage(pageId, false);
+      }
+      long roundMissCount = bufferManager.getMissCount() - missCount;
+      missTime = Math.min(missTime, (System.nanoTime() - start) / (double) roundMissCount);
+    }
+
+    System.out.println(String.format(":: (Info) %d frames: hit %.0f ns, miss %.0f ns", frameCount, hitTime,
+        missTime));
+    bufferManager.complete();
+    diskManager.terminate();
+  }
+
+  /**
+   * Deletes the temporary database folder.
+   *
+   * @param folder the folder.
+   * @throws IOException if a file cannot be deleted.
+   */
+  private static void deleteFolder(Path folder) throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * PageWriter writes the modified pages of the buffer pool back to disk in the
+ * background.
+ * Every DBParams.pageWriterInterval milliseconds, or as soon as it is woken up
+ * because too many frames are dirty, its daemon thread asks the Buffer Manager
+ * to write back the modified pages that are not pinned, in a single batch.
+ */
+final class PageWriter {
+  /**
+   * The Buffer Manager whose pages are written back.
+   */
+  private final BufferManager bufferManager;
+
+  /**
+   * The thread of the writer, or null if the writer is stopped.
+   */
+  private volatile Thread thread;
+
+  /**
+   * Whether the writer was asked to stop.
+   */
+  private volatile boolean isStopping;
+
+  /**
+   * Constructs a new stopped PageWriter.
+   *
+   * @param bufferManager The Buffer Manager whose pages are written back.
+   */
+  PageWriter(BufferManager bufferManager) {
+    this.bufferManager = bufferManager;
+  }
+
+  /**
+   * Starts the thread of the writer, unless it is running or the background
+   * writer is disabled.
+   */
+  synchronized void start() {
+    if (thread != null || DBParams.pageWriterInterval <= 0) {
+      return;
+    }
+    isStopping = false;
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(DBParams.pageWriterInterval);
+    thread = new Thread(() -> run(intervalNanos), "page-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Wakes the writer up, so that it writes back the modified pages without
+   * waiting for the end of its interval.
+   */
+  void wakeUp() {
+    Thread writerThread = thread;
+    if (writerThread != null) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  /**
+   * Stops the thread of the writer, waiting for its current round to be done.
+   */
+  synchronized void stop() {
+    Thread writerThread = thread;
+    if (writerThread == null) {
+      return;
+    }
+    isStopping = true;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    thread = null;
+  }
+
+  /**
+   * Runs the rounds of the writer until it is stopped.
+   *
+   * @param intervalNanos The delay between two rounds, in nanoseconds.
+   */
+  private void run(long intervalNanos) {
+    while (!isStopping) {
+      LockSupport.parkNanos(this, intervalNanos);
+      if (isStopping) {
+        break;
+      }
+      try {
+        bufferManager.writeDirtyPages();
+      } catch (IOException | RuntimeException e) {
+        System.out.println(String.format(":: (Warning) The page writer failed to write back pages: %s", e.getMessage()));
+      }
+    }
+  }
+}
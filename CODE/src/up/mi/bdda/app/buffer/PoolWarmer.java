@@ -0,0 +1,179 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.utils.FileHandler;
+
+/**
+ * PoolWarmer loads the pages that were in memory at the last shutdown back
+ * into the buffer pool on startup, so that the first queries do not all pay
+ * for a read from disk.
+ * At shutdown, the pages of the metadata pool and of the buffer pool are
+ * listed, the hottest first as ranked by their replacement policies, in the
+ * file returned by FileHandler.retrieveWarmUpListPath. On startup, the daemon
+ * thread of the warmer reads the list and deletes it, then loads the pages in
+ * batches, the hottest batch first, each batch being read with a single
+ * batched read ordered by file and page. Pages are only loaded into free
+ * frames, so the warmer never evicts a page requested by a query meanwhile.
+ */
+final class PoolWarmer {
+  /**
+   * The number of pages loaded by each batched read.
+   */
+  static final int BATCH_PAGE_COUNT = 64;
+
+  /**
+   * The Buffer Manager whose pool is warmed up.
+   */
+  private final BufferManager bufferManager;
+
+  /**
+   * The thread of the warmer, or null if the warmer is not running.
+   */
+  private volatile Thread thread;
+
+  /**
+   * Whether the warmer was asked to stop.
+   */
+  private volatile boolean isStopping;
+
+  /**
+   * Constructs a new stopped PoolWarmer.
+   *
+   * @param bufferManager The Buffer Manager whose pool is warmed up.
+   */
+  PoolWarmer(BufferManager bufferManager) {
+    this.bufferManager = bufferManager;
+  }
+
+  /**
+   * Lists the pages in memory, the hottest first, so that they are loaded on
+   * the next startup. Nothing is listed if the warm-up is disabled or if the
+   * buffer pool is empty.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  void save() throws IOException {
+    Path path = FileHandler.retrieveWarmUpListPath();
+    List<PageId> metadataPageIds = bufferManager.listPagesByHotness(true);
+    List<PageId> pageIds = bufferManager.listPagesByHotness(false);
+    if (!DBParams.bufferPoolWarmUp || (metadataPageIds.isEmpty() && pageIds.isEmpty())) {
+      Files.deleteIfExists(path);
+      return;
+    }
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      writePageIds(output, metadataPageIds);
+      writePageIds(output, pageIds);
+    } catch (IOException e) {
+      throw new IOException("Error saving warm-up list", e);
+    }
+  }
+
+  /**
+   * Starts the thread of the warmer, unless it is running, the warm-up is
+   * disabled or no pages were listed at the last shutdown.
+   */
+  synchronized void start() {
+    Path path = FileHandler.retrieveWarmUpListPath();
+    if (thread != null || !DBParams.bufferPoolWarmUp || !Files.exists(path)) {
+      return;
+    }
+    isStopping = false;
+    thread = new Thread(() -> run(path), "buffer-pool-warmer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the thread of the warmer, waiting for its current batch to be loaded.
+   */
+  synchronized void stop() {
+    Thread warmerThread = thread;
+    if (warmerThread == null) {
+      return;
+    }
+    isStopping = true;
+    try {
+      warmerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    thread = null;
+  }
+
+  /**
+   * Loads the pages of the list, the metadata pages first, until the list is
+   * done, the pools have no free frames left or the warmer is stopped.
+   *
+   * @param path The path of the list.
+   */
+  private void run(Path path) {
+    try {
+      List<PageId> metadataPageIds;
+      List<PageId> pageIds;
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+        metadataPageIds = readPageIds(input);
+        pageIds = readPageIds(input);
+      } catch (IOException e) {
+        throw new IOException("Error loading warm-up list", e);
+      } finally {
+        // the list is only valid until the pages change again
+        Files.deleteIfExists(path);
+      }
+      for (PageId pageId : metadataPageIds) {
+        if (isStopping || !bufferManager.prefetchMetadataPage(pageId)) {
+          break;
+        }
+      }
+      for (int first = 0; first < pageIds.size(); first += BATCH_PAGE_COUNT) {
+        if (isStopping || !bufferManager.hasFreeFrames()) {
+          break;
+        }
+        bufferManager.prefetchPages(pageIds.subList(first, Math.min(pageIds.size(), first + BATCH_PAGE_COUNT)));
+      }
+    } catch (IOException | RuntimeException e) {
+      System.out.println(String.format(":: (Warning) The buffer pool warm-up failed: %s", e.getMessage()));
+    }
+  }
+
+  /**
+   * Writes a list of PageIds, preceded by its size.
+   *
+   * @param output  The stream to write to.
+   * @param pageIds The PageIds.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static void writePageIds(DataOutputStream output, List<PageId> pageIds) throws IOException {
+    output.writeInt(pageIds.size());
+    for (PageId pageId : pageIds) {
+      output.writeInt(pageId.getFileIdx());
+      output.writeInt(pageId.getPageIdx());
+    }
+  }
+
+  /**
+   * Reads a list of PageIds written by writePageIds.
+   *
+   * @param input The stream to read from.
+   * @return The PageIds.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static List<PageId> readPageIds(DataInputStream input) throws IOException {
+    int pageCount = input.readInt();
+    List<PageId> pageIds = new ArrayList<>();
+    for (int i = 0; i < pageCount; i++) {
+      pageIds.add(new PageId(input.readInt(), input.readInt()));
+    }
+    return pageIds;
+  }
+}
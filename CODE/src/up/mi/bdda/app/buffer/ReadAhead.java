@@ -0,0 +1,320 @@
+package up.mi.bdda.app.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * The ReadAhead class loads the pages of a chain ahead of a scan walking it.
+ * In a chain, such as the data pages of a table, each page holds the PageId of
+ * the next one, so a scan only finds page k + 1 once page k is read. While the
+ * scan works on a page, the read-ahead walks the chain further on a background
+ * thread and loads the following pages into the buffer ring of the scan, or
+ * into the free frames of the buffer pool if the scan has no ring, so that no
+ * other page is evicted for them.
+ * The number of pages kept ahead of the scan adapts to its speed: it is the
+ * number of page reads that fit in the time the scan spends on a page, plus
+ * one, at most DBParams.maxReadAheadDepth and half the ring. The limit is
+ * halved whenever pages loaded ahead are evicted before being requested, and
+ * grows back by one page per page scanned. The chain is walked again once half
+ * of the pages loaded ahead have been scanned.
+ * When the pages of the scan are known up front, such as the data pages listed
+ * in the page directory of a table, the read-ahead follows their list instead
+ * of a chain, and loads the following pages without reading the current one.
+ * A read-ahead must be closed once the scan is done, before its ring.
+ */
+public final class ReadAhead implements AutoCloseable {
+  /**
+   * The weight of a new measure in the averages of the durations.
+   */
+  private static final double SMOOTHING = 0.25;
+
+  /**
+   * The thread walking the chains of every scan.
+   */
+  private static final ExecutorService WALKER = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "read-ahead");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * The ring of the scan, or null.
+   */
+  private final BufferRing ring;
+
+  /**
+   * The function returning the PageId of the page following a page, invalid
+   * after the last page, or null if it is not known yet.
+   */
+  private final UnaryOperator<PageId> nextPageIdOf;
+
+  /**
+   * The pages loaded ahead of the scan, in chain order.
+   */
+  private final Deque<PageId> aheadPageIds;
+
+  /**
+   * The last page of the chain known, from which the walk goes on, or null if
+   * the end of the chain is reached.
+   */
+  private PageId lastPageId;
+
+  /**
+   * Whether the chain is being walked on the background thread.
+   */
+  private boolean isWalking;
+
+  /**
+   * Whether the read-ahead is closed.
+   */
+  private boolean isClosed;
+
+  /**
+   * The number of pages to keep ahead of the scan.
+   */
+  private int depth;
+
+  /**
+   * The maximum depth, lowered when loaded pages are wasted.
+   */
+  private int depthLimit;
+
+  /**
+   * The number of wasted prefetches of the buffer pool when the depth was last
+   * adapted.
+   */
+  private long lastWastedCount;
+
+  /**
+   * The time at which the scan touched its last page, in nanoseconds.
+   */
+  private long lastTouchNanos;
+
+  /**
+   * The average time the scan spends on a page, in nanoseconds.
+   */
+  private double touchIntervalNanos;
+
+  /**
+   * The average time it takes to load a page ahead, in nanoseconds.
+   */
+  private double readNanos;
+
+  /**
+   * Constructs a new ReadAhead.
+   *
+   * @param ring       the ring of the scan, or null if the scan reads its pages
+   *                   through the buffer pool.
+   * @param nextPageOf the function reading the PageId of the next page of the
+   *                   chain from a page, invalid at the end of the chain.
+   */
+  public ReadAhead(BufferRing ring, Function<ByteBuffer, PageId> nextPageOf) {
+    this(ring, (PageId pageId) -> BufferManager.getInstance().peekPage(pageId, nextPageOf));
+  }
+
+  /**
+   * Constructs a new ReadAhead following a list of pages known up front.
+   *
+   * @param ring    the ring of the scan, or null if the scan reads its pages
+   *                through the buffer pool.
+   * @param pageIds the PageIds of the pages, in the order the scan reads them.
+   */
+  public ReadAhead(BufferRing ring, List<PageId> pageIds) {
+    this(ring, followingPageIdOf(pageIds));
+  }
+
+  /**
+   * Constructs a new ReadAhead.
+   *
+   * @param ring         the ring of the scan, or null.
+   * @param nextPageIdOf the function returning the PageId of the page following
+   *                     a page.
+   */
+  private ReadAhead(BufferRing ring, UnaryOperator<PageId> nextPageIdOf) {
+    this.ring = ring;
+    this.nextPageIdOf = nextPageIdOf;
+    aheadPageIds = new ArrayDeque<>();
+    depth = 1;
+    depthLimit = maxDepth();
+    lastWastedCount = BufferManager.getInstance().getWastedPrefetchCount();
+  }
+
+  /**
+   * Returns the function returning the PageId of the page following a page of
+   * a list, invalid after the last page of the list.
+   *
+   * @param pageIds the PageIds of the pages of the list.
+   * @return the function.
+   */
+  private static UnaryOperator<PageId> followingPageIdOf(List<PageId> pageIds) {
+    Map<PageId, PageId> nextPageIds = new HashMap<>();
+    for (int i = 0; i < pageIds.size(); i++) {
+      nextPageIds.put(pageIds.get(i), i + 1 < pageIds.size() ? pageIds.get(i + 1) : new PageId(-1, -1));
+    }
+    return nextPageIds::get;
+  }
+
+  /**
+   * Tells the read-ahead that the scan has read a page of the chain, which is
+   * still in memory, and starts walking the chain from the last page known if
+   * half of the pages loaded ahead have been scanned.
+   *
+   * @param pageId the PageId of the page.
+   */
+  public synchronized void pageTouched(PageId pageId) {
+    if (isClosed || DBParams.maxReadAheadDepth <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (lastTouchNanos != 0) {
+      touchIntervalNanos = smooth(touchIntervalNanos, now - lastTouchNanos);
+    }
+    lastTouchNanos = now;
+
+    if (aheadPageIds.contains(pageId)) {
+      while (!aheadPageIds.removeFirst().equals(pageId)) {
+        // the pages the scan has passed are forgotten
+      }
+    } else {
+      // the scan went past the pages loaded ahead, the walk starts over
+      aheadPageIds.clear();
+      lastPageId = pageId.clone();
+    }
+    adaptDepth();
+
+    if (!isWalking && lastPageId != null && aheadPageIds.size() <= depth / 2) {
+      isWalking = true;
+      WALKER.execute(this::walk);
+    }
+  }
+
+  /**
+   * Adapts the depth to the speed of the scan and to the wasted prefetches.
+   */
+  private void adaptDepth() {
+    long wastedCount = BufferManager.getInstance().getWastedPrefetchCount();
+    if (wastedCount > lastWastedCount) {
+      depthLimit = Math.max(1, depthLimit / 2);
+    } else {
+      depthLimit = Math.min(maxDepth(), depthLimit + 1);
+    }
+    lastWastedCount = wastedCount;
+
+    int wantedDepth = touchIntervalNanos == 0 ? 1 : (int) Math.ceil(readNanos / touchIntervalNanos) + 1;
+    depth = Math.max(1, Math.min(depthLimit, wantedDepth));
+  }
+
+  /**
+   * Returns the maximum number of pages to keep ahead of the scan.
+   *
+   * @return the maximum depth.
+   */
+  private int maxDepth() {
+    return ring == null ? DBParams.maxReadAheadDepth
+        : Math.max(1, Math.min(DBParams.maxReadAheadDepth, ring.getCapacity() / 2));
+  }
+
+  /**
+   * Walks the chain from the last page known and loads the following pages
+   * until the depth is reached, the end of the chain is reached, or a page
+   * cannot be loaded.
+   */
+  private void walk() {
+    while (true) {
+      PageId fromPageId;
+      synchronized (this) {
+        if (isClosed || lastPageId == null || aheadPageIds.size() >= depth) {
+          stopWalking();
+          return;
+        }
+        fromPageId = lastPageId;
+      }
+
+      PageId nextPageId = nextPageIdOf.apply(fromPageId);
+      long start = System.nanoTime();
+      boolean isLoaded = false;
+      if (nextPageId != null && nextPageId.isValid()) {
+        try {
+          isLoaded = BufferManager.getInstance().prefetchPage(nextPageId, ring);
+        } catch (IOException | IllegalStateException e) {
+          // the scan reads the page itself
+        }
+      }
+
+      synchronized (this) {
+        if (!isLoaded) {
+          if (lastPageId == fromPageId && nextPageId != null && !nextPageId.isValid()) {
+            lastPageId = null;
+          }
+          stopWalking();
+          return;
+        }
+        readNanos = smooth(readNanos, System.nanoTime() - start);
+        if (lastPageId == fromPageId) {
+          aheadPageIds.addLast(nextPageId);
+          lastPageId = nextPageId;
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks the walk as done and wakes up the threads waiting for it.
+   * The caller holds the monitor of the read-ahead.
+   */
+  private void stopWalking() {
+    isWalking = false;
+    notifyAll();
+  }
+
+  /**
+   * Returns the number of pages the read-ahead currently keeps ahead of the
+   * scan.
+   *
+   * @return the depth of the read-ahead.
+   */
+  public synchronized int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Stops loading pages ahead of the scan, waiting for the page being loaded,
+   * if any.
+   */
+  @Override
+  public synchronized void close() {
+    isClosed = true;
+    aheadPageIds.clear();
+    while (isWalking) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds a measure to an average.
+   *
+   * @param average the average, or 0 if there is no measure yet.
+   * @param measure the new measure.
+   * @return the new average.
+   */
+  private static double smooth(double average, long measure) {
+    return average == 0 ? measure : average + SMOOTHING * (measure - average);
+  }
+}
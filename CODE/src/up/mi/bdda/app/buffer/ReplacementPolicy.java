@@ -0,0 +1,94 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.function.IntPredicate;
+
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.PageReplacement;
+
+/**
+ * The ReplacementPolicy interface provides a contract for choosing the page to
+ * evict from the buffer pool when every frame is used.
+ * The Buffer Manager tells the policy when a page is loaded into a frame, used
+ * again or evicted, and asks it for a victim among the frames that can be
+ * evicted (the frames whose page is not pinned).
+ * Frames are identified by their index in the buffer pool.
+ * The Buffer Manager serializes the calls to a policy, except the calls to
+ * pageAccessed of a policy whose isAccessLockFree method returns true.
+ */
+public interface ReplacementPolicy {
+
+  /**
+   * Records that a page was loaded into a free frame.
+   *
+   * @param frameIndex The index of the frame.
+   * @param pageKey    The key identifying the page.
+   */
+  void pageLoaded(int frameIndex, long pageKey);
+
+  /**
+   * Records that the page of a frame was used again.
+   *
+   * @param frameIndex The index of the frame.
+   */
+  void pageAccessed(int frameIndex);
+
+  /**
+   * Tells whether pageAccessed may be called concurrently with the other
+   * methods, so that a hit takes no lock.
+   *
+   * @return true if pageAccessed is safe without locking, false otherwise.
+   */
+  default boolean isAccessLockFree() {
+    return false;
+  }
+
+  /**
+   * Records that the page of a frame was evicted, leaving the frame free.
+   *
+   * @param frameIndex The index of the frame.
+   */
+  void pageEvicted(int frameIndex);
+
+  /**
+   * Chooses the frame whose page should be evicted.
+   * The frame stays in the policy until pageEvicted is called.
+   *
+   * @param isEvictable Tells whether the page of a frame can be evicted.
+   * @return The index of the chosen frame, or -1 if no page can be evicted.
+   */
+  int selectVictim(IntPredicate isEvictable);
+
+  /**
+   * Lists the frames holding a page, from the page the policy would keep the
+   * longest to the page it would evict first.
+   *
+   * @return The indexes of the frames, the hottest first.
+   */
+  int[] framesByHotness();
+
+  /**
+   * Forgets every page, leaving every frame free.
+   */
+  void clear();
+
+  /**
+   * Creates a replacement policy.
+   *
+   * @param replacement The replacement policy to create.
+   * @param frameCount  The number of frames of the buffer pool.
+   * @return The new replacement policy.
+   */
+  static ReplacementPolicy of(PageReplacement replacement, int frameCount) {
+    switch (replacement) {
+      case CLOCK:
+        return new ClockPolicy(frameCount);
+      case TWO_QUEUE:
+        return new TwoQueuePolicy(frameCount);
+      case LRU_K:
+        return new LruKPolicy(frameCount, DBParams.lruK);
+      case LRU:
+      default:
+        return new LruPolicy(frameCount);
+    }
+  }
+}
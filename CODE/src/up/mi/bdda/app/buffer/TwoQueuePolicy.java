@@ -0,0 +1,141 @@
+package up.mi.bdda.app.buffer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * TwoQueuePolicy evicts pages with the 2Q algorithm.
+ * A page loaded for the first time enters the A1in FIFO queue. When it is
+ * evicted from A1in, its key is remembered in the A1out ghost queue, and a page
+ * loaded again while its key is in A1out enters the Am LRU queue. Pages seen
+ * only once, such as the pages of a large scan, therefore go through A1in
+ * without pushing the pages used often out of Am.
+ */
+final class TwoQueuePolicy implements ReplacementPolicy {
+  /**
+   * The frames of the pages used once, in load order.
+   */
+  private final FrameList a1in;
+
+  /**
+   * The frames of the pages used again, from the least to the most recently
+   * used.
+   */
+  private final FrameList am;
+
+  /**
+   * The keys of the pages recently evicted from A1in, oldest first.
+   */
+  private final LinkedHashSet<Long> a1out;
+
+  /**
+   * The key of the page held by each frame.
+   */
+  private final long[] pageKeys;
+
+  /**
+   * The number of frames A1in may hold before its pages are evicted first.
+   */
+  private final int a1inCapacity;
+
+  /**
+   * The number of keys remembered in A1out.
+   */
+  private final int a1outCapacity;
+
+  /**
+   * Constructs a new TwoQueuePolicy.
+   * A1in gets a quarter of the frames and A1out remembers as many keys as half
+   * the frames, the sizes suggested by the authors of 2Q.
+   *
+   * @param frameCount The number of frames of the buffer pool.
+   */
+  TwoQueuePolicy(int frameCount) {
+    a1in = new FrameList(frameCount);
+    am = new FrameList(frameCount);
+    a1out = new LinkedHashSet<>();
+    pageKeys = new long[frameCount];
+    a1inCapacity = Math.max(1, frameCount / 4);
+    a1outCapacity = Math.max(1, frameCount / 2);
+  }
+
+  @Override
+  public void pageLoaded(int frameIndex, long pageKey) {
+    pageKeys[frameIndex] = pageKey;
+    if (a1out.remove(pageKey)) {
+      am.addLast(frameIndex);
+    } else {
+      a1in.addLast(frameIndex);
+    }
+  }
+
+  @Override
+  public void pageAccessed(int frameIndex) {
+    if (am.contains(frameIndex)) {
+      am.moveToLast(frameIndex);
+    }
+  }
+
+  @Override
+  public void pageEvicted(int frameIndex) {
+    if (a1in.remove(frameIndex)) {
+      a1out.add(pageKeys[frameIndex]);
+      if (a1out.size() > a1outCapacity) {
+        Iterator<Long> iterator = a1out.iterator();
+        iterator.next();
+        iterator.remove();
+      }
+    } else {
+      am.remove(frameIndex);
+    }
+  }
+
+  @Override
+  public int selectVictim(IntPredicate isEvictable) {
+    if (a1in.size() > a1inCapacity || am.size() == 0) {
+      int frameIndex = firstEvictable(a1in, isEvictable);
+      if (frameIndex != FrameList.NO_FRAME) {
+        return frameIndex;
+      }
+    }
+    int frameIndex = firstEvictable(am, isEvictable);
+    if (frameIndex != FrameList.NO_FRAME) {
+      return frameIndex;
+    }
+    return firstEvictable(a1in, isEvictable);
+  }
+
+  /**
+   * Returns the first frame of a queue whose page can be evicted.
+   *
+   * @param queue       The queue.
+   * @param isEvictable Tells whether the page of a frame can be evicted.
+   * @return The index of the frame, or NO_FRAME if there is none.
+   */
+  private static int firstEvictable(FrameList queue, IntPredicate isEvictable) {
+    int frameIndex = queue.first();
+    while (frameIndex != FrameList.NO_FRAME && !isEvictable.test(frameIndex)) {
+      frameIndex = queue.next(frameIndex);
+    }
+    return frameIndex;
+  }
+
+  @Override
+  public int[] framesByHotness() {
+    // the pages used again come before the pages used once
+    int[] frequentFrames = am.toReversedArray();
+    int[] recentFrames = a1in.toReversedArray();
+    int[] frameIndexes = Arrays.copyOf(frequentFrames, frequentFrames.length + recentFrames.length);
+    System.arraycopy(recentFrames, 0, frameIndexes, frequentFrames.length, recentFrames.length);
+    return frameIndexes;
+  }
+
+  @Override
+  public void clear() {
+    a1in.clear();
+    am.clear();
+    a1out.clear();
+  }
+}
@@ -50,16 +50,16 @@ public class DBManager {
 
   /**
    * Ends the process of the database.
-   * It saves the database information, terminates the disk manager, and completes
-   * the buffer manager.
+   * It saves the database information, completes the buffer manager, and
+   * terminates the disk manager once every page has been written back.
    * 
    * @throws IOException if there is an error during the end process.
    */
   public void endProcess() throws IOException {
     dbInfo.saveData();
     dbInfo.clearResourceDetails();
-    DiskManager.getInstance().terminate();
     BufferManager.getInstance().complete();
+    DiskManager.getInstance().terminate();
     isInitialized = false;
   }
 
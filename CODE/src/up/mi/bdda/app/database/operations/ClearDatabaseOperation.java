@@ -8,6 +8,7 @@ import java.nio.file.Paths;
 import java.util.Comparator;
 import java.util.Map;
 
+import up.mi.bdda.app.buffer.BufferManager;
 import up.mi.bdda.app.database.DBManager;
 import up.mi.bdda.app.settings.DBParams;
 
@@ -25,8 +26,10 @@ public class ClearDatabaseOperation implements DatabaseOperation {
 
   /**
    * This method performs the operation of clearing the database.
-   * It first deletes all files in the database folder, then it clears all data in
-   * the database.
+   * It first drops the pages of the buffer pool and stops the page writer, so
+   * that no modified page is written into the new database, then deletes all
+   * files in the database folder and clears all data in the database, and
+   * finally starts the page writer again.
    *
    * @param query A map representing the query parameters.
    * @throws IOException If an I/O error occurs during the operation.
@@ -36,14 +39,21 @@ public class ClearDatabaseOperation implements DatabaseOperation {
     // Path to the database folder
     Path databasePath = Paths.get(DBParams.databaseFolderPath);
 
-    // Delete all files from the database folder if it exists
-    if (Files.exists(databasePath)) {
-      Files.walk(databasePath).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    // Drop the pages in memory before their files
+    BufferManager bufferManager = BufferManager.getInstance();
+    bufferManager.discardAllPages();
+    try {
+      // Delete all files from the database folder if it exists
+      if (Files.exists(databasePath)) {
+        Files.walk(databasePath).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+
+      // Reset the database
+      DBManager.getInstance().clearAll();
+    } finally {
+      bufferManager.resumeWriteBack();
     }
 
-    // Reset the database
-    DBManager.getInstance().clearAll();
-
     // Print a message to the user
     System.out.println(" ... done!");
   }
@@ -0,0 +1,231 @@
+package up.mi.bdda.app.disk;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * AllocationBitmap records which pages of a data file are allocated, with one
+ * bit per page.
+ * The bitmap is stored in the first page of the file, after a header holding
+ * MAGIC and FORMAT_VERSION, so that a first page holding anything else, such
+ * as a page of a database written before the bitmaps existed, is told apart
+ * from a bitmap. The first page is always allocated, and a file can hold at
+ * most 8 * (pageSize - HEADER_SIZE) pages, the metadata page included: 32704
+ * pages, or nearly 128 MiB, with pages of 4 KiB. Only one page holds the
+ * bitmap, so this limit can only be raised with a larger page size.
+ */
+final class AllocationBitmap {
+  /**
+   * The index of the page that stores the bitmap in its file.
+   */
+  static final int METADATA_PAGE_IDX = 0;
+
+  /**
+   * The number written at the start of the metadata page, "BDBM" in ASCII.
+   */
+  static final int MAGIC = 0x4244424D;
+
+  /**
+   * The version of the layout of the metadata page.
+   */
+  static final int FORMAT_VERSION = 1;
+
+  /**
+   * The number of bytes of the header of the metadata page, before the bits.
+   */
+  static final int HEADER_SIZE = 8;
+
+  /**
+   * The allocated pages of the file.
+   */
+  private final BitSet allocatedPages;
+
+  /**
+   * The number of pages the bitmap can describe.
+   */
+  private final int capacity;
+
+  /**
+   * No page below this index is free.
+   */
+  private int freePageHint;
+
+  /**
+   * Whether the bitmap changed since it was last loaded or stored.
+   */
+  private boolean isModified;
+
+  /**
+   * Constructs an empty AllocationBitmap where only the metadata page is
+   * allocated.
+   *
+   * @param pageSize The size of a page, in bytes.
+   */
+  AllocationBitmap(int pageSize) {
+    capacity = getCapacity(pageSize);
+    allocatedPages = new BitSet(capacity);
+    allocatedPages.set(METADATA_PAGE_IDX);
+    freePageHint = METADATA_PAGE_IDX + 1;
+    isModified = true;
+  }
+
+  /**
+   * Returns the number of pages a file can hold, its metadata page included.
+   *
+   * @param pageSize The size of a page, in bytes.
+   * @return The number of bits of a page, its header excluded.
+   */
+  static int getCapacity(int pageSize) {
+    return (pageSize - HEADER_SIZE) * 8;
+  }
+
+  /**
+   * Loads the bitmap from the content of a metadata page.
+   * A page that does not start with MAGIC and FORMAT_VERSION does not hold a
+   * bitmap of this layout, and leaves the bitmap empty.
+   *
+   * @param buffer The content of the metadata page.
+   * @return true if the page holds a bitmap, false otherwise.
+   */
+  boolean load(ByteBuffer buffer) {
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+      return false;
+    }
+    BitSet storedPages = BitSet.valueOf(buffer.duplicate().clear().position(HEADER_SIZE));
+    allocatedPages.clear();
+    allocatedPages.or(storedPages);
+    allocatedPages.set(METADATA_PAGE_IDX);
+    freePageHint = allocatedPages.nextClearBit(METADATA_PAGE_IDX + 1);
+    isModified = false;
+    return true;
+  }
+
+  /**
+   * Stores the bitmap into the content of a metadata page.
+   *
+   * @param buffer The buffer of the metadata page.
+   */
+  void store(ByteBuffer buffer) {
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, FORMAT_VERSION);
+    byte[] bytes = allocatedPages.toByteArray();
+    for (int i = HEADER_SIZE; i < buffer.capacity(); i++) {
+      buffer.put(i, i - HEADER_SIZE < bytes.length ? bytes[i - HEADER_SIZE] : 0);
+    }
+    isModified = false;
+  }
+
+  /**
+   * Allocates the free page with the lowest index.
+   *
+   * @return The index of the allocated page, or -1 if the file is full.
+   */
+  int allocate() {
+    if (freePageHint >= capacity) {
+      return -1;
+    }
+    int pageIdx = freePageHint;
+    allocatedPages.set(pageIdx);
+    freePageHint = allocatedPages.nextClearBit(pageIdx + 1);
+    isModified = true;
+    return pageIdx;
+  }
+
+  /**
+   * Allocates the first run of contiguous free pages of the given length.
+   *
+   * @param length The number of pages of the run.
+   * @return The index of the first page of the run, or -1 if there is no such
+   *         run.
+   */
+  int allocateRun(int length) {
+    int runStart = freePageHint;
+    while (runStart + length <= capacity) {
+      int runEnd = allocatedPages.nextSetBit(runStart);
+      if (runEnd < 0 || runEnd >= runStart + length) {
+        markRun(runStart, length);
+        return runStart;
+      }
+      runStart = allocatedPages.nextClearBit(runEnd);
+    }
+    return -1;
+  }
+
+  /**
+   * Allocates a run of contiguous pages starting at the given index, if all of
+   * them are free.
+   *
+   * @param runStart The index of the first page of the run.
+   * @param length   The number of pages of the run.
+   * @return true if the run was allocated, false otherwise.
+   */
+  boolean allocateRunAt(int runStart, int length) {
+    if (runStart + length > capacity) {
+      return false;
+    }
+    int runEnd = allocatedPages.nextSetBit(runStart);
+    if (runEnd >= 0 && runEnd < runStart + length) {
+      return false;
+    }
+    markRun(runStart, length);
+    return true;
+  }
+
+  /**
+   * Marks a run of free pages as allocated.
+   *
+   * @param runStart The index of the first page of the run.
+   * @param length   The number of pages of the run.
+   */
+  private void markRun(int runStart, int length) {
+    allocatedPages.set(runStart, runStart + length);
+    if (runStart == freePageHint) {
+      freePageHint = allocatedPages.nextClearBit(runStart + length);
+    }
+    isModified = true;
+  }
+
+  /**
+   * Frees a page.
+   *
+   * @param pageIdx The index of the page to free.
+   * @return true if the page was allocated, false otherwise.
+   */
+  boolean free(int pageIdx) {
+    if (pageIdx == METADATA_PAGE_IDX || pageIdx >= capacity || !allocatedPages.get(pageIdx)) {
+      return false;
+    }
+    allocatedPages.clear(pageIdx);
+    freePageHint = Math.min(freePageHint, pageIdx);
+    isModified = true;
+    return true;
+  }
+
+  /**
+   * Checks if a page is allocated.
+   *
+   * @param pageIdx The index of the page.
+   * @return true if the page is allocated, false otherwise.
+   */
+  boolean isAllocated(int pageIdx) {
+    return pageIdx < capacity && allocatedPages.get(pageIdx);
+  }
+
+  /**
+   * Returns the number of allocated pages, the metadata page excluded.
+   *
+   * @return The number of allocated pages.
+   */
+  int countAllocatedPages() {
+    return allocatedPages.cardinality() - 1;
+  }
+
+  /**
+   * Returns whether the bitmap changed since it was last loaded or stored.
+   *
+   * @return true if the bitmap must be stored, false otherwise.
+   */
+  boolean isModified() {
+    return isModified;
+  }
+}
@@ -0,0 +1,182 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.utils.FileHandler;
+
+/**
+ * AsyncPageChannels reads and writes pages with AsynchronousFileChannels.
+ * Each data file has its own channel and a bounded number of requests in
+ * flight: once the bound is reached, a new request waits for a previous one to
+ * complete before being issued.
+ */
+final class AsyncPageChannels {
+  /**
+   * The open channels of the data files, by file index.
+   */
+  private final Map<Integer, FileQueue> fileQueues;
+
+  /**
+   * Constructs a new AsyncPageChannels.
+   */
+  AsyncPageChannels() {
+    fileQueues = new HashMap<>();
+  }
+
+  /**
+   * Starts reading a page into a buffer.
+   * The whole buffer is filled: the part of the page that lies past the end of
+   * its file reads as zeros.
+   *
+   * @param pageId The PageId of the page to read.
+   * @param buffer The buffer to read the page into.
+   * @return A future completed once the page is read.
+   */
+  CompletableFuture<Void> read(PageId pageId, ByteBuffer buffer) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    FileQueue fileQueue;
+    try {
+      fileQueue = acquire(pageId.getFileIdx());
+    } catch (IOException | InterruptedException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    long position = (long) pageId.getPageIdx() * DBParams.pageSize;
+    fileQueue.channel.read(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+      @Override
+      public void completed(Integer result, ByteBuffer target) {
+        if (result >= 0 && target.hasRemaining()) {
+          fileQueue.channel.read(target, position + target.position(), target, this);
+          return;
+        }
+        while (target.hasRemaining()) {
+          target.put((byte) 0);
+        }
+        fileQueue.inFlightRequests.release();
+        future.complete(null);
+      }
+
+      @Override
+      public void failed(Throwable exc, ByteBuffer target) {
+        fileQueue.inFlightRequests.release();
+        future.completeExceptionally(exc);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Starts writing a buffer to a page.
+   *
+   * @param pageId The PageId of the page to write.
+   * @param buffer The buffer containing the page.
+   * @return A future completed once the page is written.
+   */
+  CompletableFuture<Void> write(PageId pageId, ByteBuffer buffer) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    FileQueue fileQueue;
+    try {
+      fileQueue = acquire(pageId.getFileIdx());
+    } catch (IOException | InterruptedException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    long position = (long) pageId.getPageIdx() * DBParams.pageSize;
+    fileQueue.channel.write(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+      @Override
+      public void completed(Integer result, ByteBuffer source) {
+        if (source.hasRemaining()) {
+          fileQueue.channel.write(source, position + source.position(), source, this);
+          return;
+        }
+        fileQueue.inFlightRequests.release();
+        future.complete(null);
+      }
+
+      @Override
+      public void failed(Throwable exc, ByteBuffer source) {
+        fileQueue.inFlightRequests.release();
+        future.completeExceptionally(exc);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Closes every open channel.
+   *
+   * @throws IOException If a channel cannot be closed.
+   */
+  synchronized void closeAll() throws IOException {
+    IOException failure = null;
+    for (FileQueue fileQueue : fileQueues.values()) {
+      try {
+        fileQueue.channel.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    fileQueues.clear();
+    if (failure != null) {
+      throw new IOException("Failed to close data files", failure);
+    }
+  }
+
+  /**
+   * Takes a request slot of a file, waiting for one to be free, and returns its
+   * queue.
+   *
+   * @param fileIdx The index of the file.
+   * @return The queue of the file.
+   * @throws IOException          If the file cannot be opened.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  private FileQueue acquire(int fileIdx) throws IOException, InterruptedException {
+    FileQueue fileQueue;
+    synchronized (this) {
+      fileQueue = fileQueues.get(fileIdx);
+      if (fileQueue == null || !fileQueue.channel.isOpen()) {
+        fileQueue = new FileQueue(FileHandler.openAsynchronousChannel(fileIdx));
+        fileQueues.put(fileIdx, fileQueue);
+      }
+    }
+    fileQueue.inFlightRequests.acquire();
+    return fileQueue;
+  }
+
+  /**
+   * FileQueue holds the channel of a data file and its request slots.
+   */
+  private static final class FileQueue {
+    /**
+     * The channel of the file.
+     */
+    private final AsynchronousFileChannel channel;
+
+    /**
+     * The free request slots of the file.
+     */
+    private final Semaphore inFlightRequests;
+
+    /**
+     * Constructs a new FileQueue.
+     *
+     * @param channel The channel of the file.
+     */
+    private FileQueue(AsynchronousFileChannel channel) {
+      this.channel = channel;
+      inFlightRequests = new Semaphore(Math.max(1, DBParams.maxInFlightPageRequests));
+    }
+  }
+}
@@ -0,0 +1,440 @@
+package up.mi.bdda.app.disk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.utils.FileHandler;
+
+/**
+ * CompressedPageStore stores compressed pages when page compression is
+ * enabled.
+ * A data file then holds variable-size slots instead of fixed-size pages: each
+ * page is compressed into a slot whose offset, length and capacity are kept in
+ * the page map of the file. The page maps are stored next to the data files and
+ * saved when the Disk Manager terminates.
+ * A page is rewritten in place while its compressed size fits in its slot, and
+ * moved to a free or new slot otherwise.
+ * <p>
+ * The page maps on disk only change when they are saved, at termination or
+ * once the slots waiting to be freed in a file exceed
+ * MAX_PENDING_FREE_BYTES. A map is saved after the data file is forced, to a
+ * temporary file that then replaces the previous map, so a crash leaves either
+ * the old map or the new one. The slot a page moves out of is only reused once
+ * a map that no longer points to it is saved: after a crash, the saved map
+ * still points every page to a slot holding bytes of that page, and a page
+ * moved since the map was saved reads from the slot it had then. A page
+ * rewritten in place since then reads with its new content if its compressed
+ * size did not change, and may read corrupted otherwise, since the saved map
+ * holds its old size; it is never read from the bytes of another page.
+ */
+final class CompressedPageStore {
+  /**
+   * The alignment, in bytes, of the capacity of a slot.
+   * It leaves room for the page to grow a little before it has to move.
+   */
+  private static final int SLOT_ALIGNMENT = 64;
+
+  /**
+   * The number of bytes of slots waiting to be freed in a file beyond which its
+   * page map is saved, so that they can be reused.
+   */
+  private static final long MAX_PENDING_FREE_BYTES = 1L << 20;
+
+  /**
+   * The codec used to compress the pages.
+   */
+  private final PageCodec codec;
+
+  /**
+   * The open compressed files, by file index.
+   */
+  private final Map<Integer, CompressedFile> compressedFiles;
+
+  /**
+   * The buffer holding a compressed page while it is read or written.
+   */
+  private ByteBuffer compressedBuffer;
+
+  /**
+   * Constructs a new CompressedPageStore.
+   *
+   * @param codec The codec used to compress the pages.
+   */
+  CompressedPageStore(PageCodec codec) {
+    this.codec = codec;
+    compressedFiles = new HashMap<>();
+  }
+
+  /**
+   * Reads and decompresses a page into a buffer.
+   * A page that was never written reads as zeros.
+   *
+   * @param pageId The PageId of the page to read.
+   * @param buffer The buffer to read the page into.
+   * @throws IOException If the page cannot be read or is corrupted.
+   */
+  synchronized void read(PageId pageId, ByteBuffer buffer) throws IOException {
+    CompressedFile compressedFile = fileOf(pageId.getFileIdx());
+    ByteBuffer target = buffer.duplicate().clear();
+    Slot slot = compressedFile.slots.get(pageId.getPageIdx());
+    if (slot != null) {
+      ByteBuffer source = compressedBuffer().limit(slot.length);
+      while (source.hasRemaining()) {
+        if (compressedFile.channel.read(source, slot.offset + source.position()) < 0) {
+          throw new IOException("Compressed page " + pageId + " is truncated");
+        }
+      }
+      try {
+        codec.decompress(source.flip(), target);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Compressed page " + pageId + " is corrupted", e);
+      }
+    }
+    while (target.hasRemaining()) {
+      target.put((byte) 0);
+    }
+  }
+
+  /**
+   * Compresses and writes a page.
+   *
+   * @param pageId The PageId of the page to write.
+   * @param buffer The buffer containing the page.
+   * @throws IOException If the page cannot be written.
+   */
+  synchronized void write(PageId pageId, ByteBuffer buffer) throws IOException {
+    CompressedFile compressedFile = fileOf(pageId.getFileIdx());
+    ByteBuffer source = compressedBuffer();
+    int length = codec.compress(buffer.duplicate().clear(), source);
+
+    Slot slot = compressedFile.slots.get(pageId.getPageIdx());
+    if (slot == null || slot.capacity < length) {
+      if (slot != null) {
+        // the saved page map may still point to the slot, so it is not reused
+        // before the page map is saved again
+        compressedFile.pendingFreeSlots.add(slot);
+        compressedFile.pendingFreeBytes += slot.capacity;
+      }
+      slot = compressedFile.reserveSlot(length);
+      compressedFile.slots.put(pageId.getPageIdx(), slot);
+    }
+    slot.length = length;
+    compressedFile.isModified = true;
+
+    source.flip();
+    while (source.hasRemaining()) {
+      compressedFile.channel.write(source, slot.offset + source.position());
+    }
+    if (compressedFile.pendingFreeBytes > MAX_PENDING_FREE_BYTES) {
+      saveMap(pageId.getFileIdx(), compressedFile);
+    }
+  }
+
+  /**
+   * Returns the number of bytes a page takes on disk.
+   *
+   * @param pageId The PageId of the page.
+   * @return The size of the compressed page, or 0 if it was never written.
+   * @throws IOException If the page map of the file cannot be loaded.
+   */
+  synchronized int storedSize(PageId pageId) throws IOException {
+    Slot slot = fileOf(pageId.getFileIdx()).slots.get(pageId.getPageIdx());
+    return slot == null ? 0 : slot.length;
+  }
+
+  /**
+   * Saves the modified page maps.
+   *
+   * @throws IOException If a page map cannot be saved.
+   */
+  synchronized void save() throws IOException {
+    for (Map.Entry<Integer, CompressedFile> entry : compressedFiles.entrySet()) {
+      if (entry.getValue().isModified) {
+        saveMap(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Saves the page map of a file durably, then frees the slots the pages moved
+   * out of, which the saved map no longer points to.
+   *
+   * @param fileIdx        The index of the file.
+   * @param compressedFile The compressed file.
+   * @throws IOException If the page map cannot be saved.
+   */
+  private void saveMap(int fileIdx, CompressedFile compressedFile) throws IOException {
+    // the pages are on disk before the map pointing to them
+    compressedFile.channel.force(false);
+    Path path = FileHandler.retrievePageMapPath(fileIdx);
+    Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileOutputStream fileOutput = new FileOutputStream(temporaryPath.toFile());
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+      output.writeInt(compressedFile.slots.size());
+      for (Map.Entry<Integer, Slot> slotEntry : compressedFile.slots.entrySet()) {
+        Slot slot = slotEntry.getValue();
+        output.writeInt(slotEntry.getKey());
+        output.writeLong(slot.offset);
+        output.writeInt(slot.length);
+        output.writeInt(slot.capacity);
+      }
+      output.flush();
+      fileOutput.getFD().sync();
+    } catch (IOException e) {
+      throw new IOException("Error saving page map", e);
+    }
+    try {
+      Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new IOException("Error saving page map", e);
+    }
+    compressedFile.isModified = false;
+    for (Slot slot : compressedFile.pendingFreeSlots) {
+      compressedFile.freeSlot(slot);
+    }
+    compressedFile.pendingFreeSlots.clear();
+    compressedFile.pendingFreeBytes = 0;
+  }
+
+  /**
+   * Forgets the page maps and closes the compressed files.
+   *
+   * @throws IOException If a file cannot be closed.
+   */
+  synchronized void clear() throws IOException {
+    IOException failure = null;
+    for (CompressedFile compressedFile : compressedFiles.values()) {
+      try {
+        compressedFile.channel.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    compressedFiles.clear();
+    if (failure != null) {
+      throw new IOException("Failed to close data files", failure);
+    }
+  }
+
+  /**
+   * Returns the buffer holding a compressed page, cleared.
+   *
+   * @return The compressed page buffer.
+   */
+  private ByteBuffer compressedBuffer() {
+    int size = codec.maxCompressedSize(DBParams.pageSize);
+    if (compressedBuffer == null || compressedBuffer.capacity() < size) {
+      compressedBuffer = ByteBuffer.allocate(size);
+    }
+    return compressedBuffer.clear();
+  }
+
+  /**
+   * Returns an open compressed file, opening it and loading its page map if
+   * needed.
+   *
+   * @param fileIdx The index of the file.
+   * @return The compressed file.
+   * @throws IOException If the file cannot be opened or its page map loaded.
+   */
+  private CompressedFile fileOf(int fileIdx) throws IOException {
+    CompressedFile compressedFile = compressedFiles.get(fileIdx);
+    if (compressedFile != null) {
+      return compressedFile;
+    }
+
+    compressedFile = new CompressedFile(FileHandler.openChannel(fileIdx, false));
+    Path path = FileHandler.retrievePageMapPath(fileIdx);
+    if (Files.exists(path)) {
+      try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+        int slotCount = input.readInt();
+        for (int i = 0; i < slotCount; i++) {
+          int pageIdx = input.readInt();
+          long offset = input.readLong();
+          int length = input.readInt();
+          Slot slot = new Slot(offset, input.readInt());
+          slot.length = length;
+          compressedFile.slots.put(pageIdx, slot);
+        }
+      } catch (IOException e) {
+        compressedFile.channel.close();
+        throw new IOException("Error loading page map", e);
+      }
+      compressedFile.rebuildFreeSlots();
+    }
+    compressedFiles.put(fileIdx, compressedFile);
+    return compressedFile;
+  }
+
+  /**
+   * CompressedFile holds the channel of a compressed data file and its page map.
+   */
+  private static final class CompressedFile {
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The slots of the pages of the file, by page index.
+     */
+    private final TreeMap<Integer, Slot> slots;
+
+    /**
+     * The free slots of the file, in offset order.
+     */
+    private final List<Slot> freeSlots;
+
+    /**
+     * The slots the pages moved out of since the page map was last saved, which
+     * are freed once it is saved again.
+     */
+    private final List<Slot> pendingFreeSlots;
+
+    /**
+     * The number of bytes of the slots waiting to be freed.
+     */
+    private long pendingFreeBytes;
+
+    /**
+     * The offset of the end of the last slot.
+     */
+    private long endOffset;
+
+    /**
+     * Whether the page map changed since it was last loaded or saved.
+     */
+    private boolean isModified;
+
+    /**
+     * Constructs a new CompressedFile with an empty page map.
+     *
+     * @param channel The channel of the file.
+     */
+    private CompressedFile(FileChannel channel) {
+      this.channel = channel;
+      slots = new TreeMap<>();
+      freeSlots = new ArrayList<>();
+      pendingFreeSlots = new ArrayList<>();
+      pendingFreeBytes = 0;
+      endOffset = 0;
+      isModified = false;
+    }
+
+    /**
+     * Reserves a slot large enough for a compressed page, taken from the first
+     * free slot that fits, whose remainder stays free, or appended at the end of
+     * the file.
+     *
+     * @param length The size of the compressed page, in bytes.
+     * @return The reserved slot.
+     */
+    private Slot reserveSlot(int length) {
+      int capacity = Math.max(SLOT_ALIGNMENT, (length + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT);
+      ListIterator<Slot> iterator = freeSlots.listIterator();
+      while (iterator.hasNext()) {
+        Slot freeSlot = iterator.next();
+        if (freeSlot.capacity >= capacity) {
+          if (freeSlot.capacity > capacity) {
+            iterator.set(new Slot(freeSlot.offset + capacity, freeSlot.capacity - capacity));
+          } else {
+            iterator.remove();
+          }
+          return new Slot(freeSlot.offset, capacity);
+        }
+      }
+
+      Slot slot = new Slot(endOffset, capacity);
+      endOffset += capacity;
+      return slot;
+    }
+
+    /**
+     * Frees a slot so that another page can use it, merging it with the free
+     * slots right before and after it.
+     *
+     * @param slot The slot to free.
+     */
+    private void freeSlot(Slot slot) {
+      int index = 0;
+      while (index < freeSlots.size() && freeSlots.get(index).offset < slot.offset) {
+        index++;
+      }
+
+      long offset = slot.offset;
+      long end = slot.offset + slot.capacity;
+      if (index < freeSlots.size() && freeSlots.get(index).offset == end) {
+        end += freeSlots.remove(index).capacity;
+      }
+      if (index > 0 && freeSlots.get(index - 1).offset + freeSlots.get(index - 1).capacity == offset) {
+        offset = freeSlots.remove(--index).offset;
+      }
+      freeSlots.add(index, new Slot(offset, (int) (end - offset)));
+    }
+
+    /**
+     * Rebuilds the free slots and the end offset from the slots of the pages:
+     * every gap between two slots is a free slot.
+     */
+    private void rebuildFreeSlots() {
+      List<Slot> usedSlots = new ArrayList<>(slots.values());
+      usedSlots.sort((a, b) -> Long.compare(a.offset, b.offset));
+      freeSlots.clear();
+      endOffset = 0;
+      for (Slot slot : usedSlots) {
+        if (slot.offset > endOffset) {
+          freeSlots.add(new Slot(endOffset, (int) (slot.offset - endOffset)));
+        }
+        endOffset = Math.max(endOffset, slot.offset + slot.capacity);
+      }
+    }
+  }
+
+  /**
+   * Slot represents the place of a compressed page in its data file.
+   */
+  private static final class Slot {
+    /**
+     * The offset of the slot in the file.
+     */
+    private final long offset;
+
+    /**
+     * The number of bytes reserved for the slot.
+     */
+    private final int capacity;
+
+    /**
+     * The size of the compressed page stored in the slot.
+     */
+    private int length;
+
+    /**
+     * Constructs a new empty Slot.
+     *
+     * @param offset   The offset of the slot in the file.
+     * @param capacity The number of bytes reserved for the slot.
+     */
+    private Slot(long offset, int capacity) {
+      this.offset = offset;
+      this.capacity = capacity;
+      length = 0;
+    }
+  }
+}
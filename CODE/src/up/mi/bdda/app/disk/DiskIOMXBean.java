@@ -0,0 +1,69 @@
+package up.mi.bdda.app.disk;
+
+/**
+ * The DiskIOMXBean interface exposes the metrics of the page reads and writes
+ * of the Disk Manager through JMX, under the name up.mi.bdda.app:type=DiskIO.
+ * A request reads or writes a single page or a batch of pages; its latency is
+ * the time until its pages are transferred. The counters are kept since the
+ * application started.
+ */
+public interface DiskIOMXBean {
+
+  /**
+   * Returns the number of read requests.
+   *
+   * @return the number of read requests.
+   */
+  long getReadRequestCount();
+
+  /**
+   * Returns the number of pages read.
+   *
+   * @return the number of pages read.
+   */
+  long getReadPageCount();
+
+  /**
+   * Returns the number of bytes of page data read.
+   *
+   * @return the number of bytes read.
+   */
+  long getReadBytes();
+
+  /**
+   * Returns the average latency of the read requests.
+   *
+   * @return the average read latency, in microseconds, or 0 if nothing was
+   *         read.
+   */
+  double getAverageReadLatencyMicros();
+
+  /**
+   * Returns the number of write requests.
+   *
+   * @return the number of write requests.
+   */
+  long getWriteRequestCount();
+
+  /**
+   * Returns the number of pages written.
+   *
+   * @return the number of pages written.
+   */
+  long getWritePageCount();
+
+  /**
+   * Returns the number of bytes of page data written.
+   *
+   * @return the number of bytes written.
+   */
+  long getWriteBytes();
+
+  /**
+   * Returns the average latency of the write requests.
+   *
+   * @return the average write latency, in microseconds, or 0 if nothing was
+   *         written.
+   */
+  double getAverageWriteLatencyMicros();
+}
@@ -0,0 +1,119 @@
+package up.mi.bdda.app.disk;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DiskIOStatistics counts the page reads and writes of the Disk Manager in
+ * striped counters, so that the threads doing I/O do not contend on them.
+ */
+final class DiskIOStatistics implements DiskIOMXBean {
+  /**
+   * The number of read requests.
+   */
+  private final LongAdder readRequestCount = new LongAdder();
+
+  /**
+   * The number of pages read.
+   */
+  private final LongAdder readPageCount = new LongAdder();
+
+  /**
+   * The number of bytes read.
+   */
+  private final LongAdder readBytes = new LongAdder();
+
+  /**
+   * The total latency of the read requests, in nanoseconds.
+   */
+  private final LongAdder readNanos = new LongAdder();
+
+  /**
+   * The number of write requests.
+   */
+  private final LongAdder writeRequestCount = new LongAdder();
+
+  /**
+   * The number of pages written.
+   */
+  private final LongAdder writePageCount = new LongAdder();
+
+  /**
+   * The number of bytes written.
+   */
+  private final LongAdder writeBytes = new LongAdder();
+
+  /**
+   * The total latency of the write requests, in nanoseconds.
+   */
+  private final LongAdder writeNanos = new LongAdder();
+
+  /**
+   * Records a read request.
+   *
+   * @param pageCount The number of pages read.
+   * @param pageSize  The size of a page, in bytes.
+   * @param nanos     The latency of the request, in nanoseconds.
+   */
+  void pagesRead(int pageCount, int pageSize, long nanos) {
+    readRequestCount.increment();
+    readPageCount.add(pageCount);
+    readBytes.add((long) pageCount * pageSize);
+    readNanos.add(nanos);
+  }
+
+  /**
+   * Records a write request.
+   *
+   * @param pageCount The number of pages written.
+   * @param pageSize  The size of a page, in bytes.
+   * @param nanos     The latency of the request, in nanoseconds.
+   */
+  void pagesWritten(int pageCount, int pageSize, long nanos) {
+    writeRequestCount.increment();
+    writePageCount.add(pageCount);
+    writeBytes.add((long) pageCount * pageSize);
+    writeNanos.add(nanos);
+  }
+
+  @Override
+  public long getReadRequestCount() {
+    return readRequestCount.sum();
+  }
+
+  @Override
+  public long getReadPageCount() {
+    return readPageCount.sum();
+  }
+
+  @Override
+  public long getReadBytes() {
+    return readBytes.sum();
+  }
+
+  @Override
+  public double getAverageReadLatencyMicros() {
+    long requestCount = readRequestCount.sum();
+    return requestCount == 0 ? 0 : readNanos.sum() / 1000.0 / requestCount;
+  }
+
+  @Override
+  public long getWriteRequestCount() {
+    return writeRequestCount.sum();
+  }
+
+  @Override
+  public long getWritePageCount() {
+    return writePageCount.sum();
+  }
+
+  @Override
+  public long getWriteBytes() {
+    return writeBytes.sum();
+  }
+
+  @Override
+  public double getAverageWriteLatencyMicros() {
+    long requestCount = writeRequestCount.sum();
+    return requestCount == 0 ? 0 : writeNanos.sum() / 1000.0 / requestCount;
+  }
+}
@@ -1,114 +1,434 @@
 package up.mi.bdda.app.disk;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.IOMode;
+import up.mi.bdda.app.utils.FileHandler;
+import up.mi.bdda.app.utils.ManagementHandler;
 
 /**
  * DiskManager is a singleton class that manages the allocation and deallocation
  * of pages on disk.
- * It keeps track of active and reusable pages, and provides methods to read and
- * write page data.
+ * It keeps track of the allocated pages of each file in an allocation bitmap
+ * stored in the first page of the file, and provides methods to read and write
+ * page data.
+ * The pages of a table are allocated from extents, runs of contiguous pages
+ * reserved for the table, so that they sit together on disk.
+ * The data files are preallocated by chunks as pages are allocated, following
+ * DBParams.fileGrowthChunkSize.
+ * When DBParams.pageCompression is set, the pages are compressed on write and
+ * decompressed on load, whatever the I/O mode.
  */
 public final class DiskManager {
   /**
-   * A set of PageIds that are currently active.
+   * The allocation bitmaps of the data files, by file index.
    */
-  private final Set<PageId> activePageIds;
+  private final AllocationBitmap[] allocationBitmaps;
 
   /**
-   * A queue of PageIds that have been deallocated and can be reused.
+   * The index of the file in which the next page is allocated.
    */
-  private final Deque<PageId> reusablePageIds;
+  private int workingFileIdx;
 
   /**
-   * The PageId that is currently being worked on.
+   * The extent currently used by each owner, by PageId of the owner.
    */
-  private final PageId workingPageId;
+  private final Map<PageId, Extent> activeExtents;
+
+  /**
+   * Every extent reserved since the DiskManager was initialized.
+   */
+  private final List<Extent> extents;
+
+  /**
+   * The pool of open data files used for page reads and writes.
+   */
+  private final FileChannelPool channelPool;
+
+  /**
+   * The memory mappings of the data files, used in the MEMORY_MAPPED I/O mode.
+   */
+  private final MappedPageFiles mappedFiles;
+
+  /**
+   * The asynchronous channels of the data files, used for asynchronous page
+   * reads and writes.
+   */
+  private final AsyncPageChannels asyncChannels;
+
+  /**
+   * The aligned buffers through which the pages of unaligned buffers are
+   * transferred in the DIRECT I/O mode, one per thread.
+   */
+  private final ThreadLocal<ByteBuffer> alignedBuffers;
+
+  /**
+   * The store of the compressed pages, used when page compression is enabled.
+   */
+  private final CompressedPageStore compressedPages;
+
+  /**
+   * The worker threads of the data files, used to read and write the pages of
+   * a batch in parallel across the files.
+   */
+  private final FileIOWorkers ioWorkers;
+
+  /**
+   * The policy preallocating the space of the data files.
+   */
+  private final FileGrowthPolicy growthPolicy;
+
+  /**
+   * The counters of the page reads and writes.
+   */
+  private final DiskIOStatistics ioStatistics;
 
   /**
    * Private constructor for the singleton DiskManager class.
    */
   private DiskManager() {
-    activePageIds = new HashSet<>();
-    reusablePageIds = new ArrayDeque<>();
-    workingPageId = new PageId(0, 0);
+    allocationBitmaps = new AllocationBitmap[DBParams.maxFileCount];
+    activeExtents = new HashMap<>();
+    extents = new ArrayList<>();
+    channelPool = new FileChannelPool(DBParams.maxFileCount);
+    mappedFiles = new MappedPageFiles(channelPool);
+    asyncChannels = new AsyncPageChannels();
+    alignedBuffers = ThreadLocal.withInitial(() -> FileHandler.allocateAlignedBuffer(DBParams.pageSize));
+    compressedPages = new CompressedPageStore(new RunLengthCodec());
+    ioWorkers = new FileIOWorkers();
+    growthPolicy = new FileGrowthPolicy(channelPool, DBParams.maxFileCount);
+    ioStatistics = new DiskIOStatistics();
+    resetAllocationBitmaps();
   }
 
   /**
-   * Initializes the DiskManager by clearing all active and reusable pages.
+   * Initializes the DiskManager by loading the allocation bitmaps of the
+   * existing data files, and exposes the metrics of the page reads and writes.
+   * A data file whose first page holds no allocation bitmap, such as a file
+   * written before the bitmaps existed, is refused unless it holds nothing
+   * but zeros: its pages would otherwise be allocated again over live data,
+   * and its first page overwritten by the bitmap.
+   *
+   * @throws IOException If a data file cannot be read, or holds pages but no
+   *                     allocation bitmap.
    */
-  public void initialize() throws IOException {
+  public synchronized void initialize() throws IOException {
+    ManagementHandler.registerMBean(ioStatistics, "DiskIO");
     clear();
+    ByteBuffer buffer = ByteBuffer.allocate(DBParams.pageSize);
+    for (int fileIdx = 0; fileIdx < allocationBitmaps.length; fileIdx++) {
+      Path path = FileHandler.retrieveFilePath(fileIdx).orElse(null);
+      if (path == null) {
+        continue;
+      }
+      loadPageData(metadataPageId(fileIdx), buffer);
+      if (!allocationBitmaps[fileIdx].load(buffer) && holdsData(path)) {
+        clear();
+        throw new IOException(String.format(
+            "Data file %s holds pages but no valid allocation bitmap: it was written by another version of the"
+                + " database or its first page is damaged; move the database folder away to start a new database",
+            path));
+      }
+    }
+  }
+
+  /**
+   * Tells whether a data file holds any byte other than zero.
+   *
+   * @param path The path of the file.
+   * @return true if the file holds data, false if it is empty or only holds
+   *         preallocated space.
+   * @throws IOException If the file cannot be read.
+   */
+  private static boolean holdsData(Path path) throws IOException {
+    byte[] chunk = new byte[1 << 16];
+    try (InputStream input = Files.newInputStream(path)) {
+      int length;
+      while ((length = input.read(chunk)) > 0) {
+        for (int i = 0; i < length; i++) {
+          if (chunk[i] != 0) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
   }
 
   /**
-   * Terminates the DiskManager by clearing all active and reusable pages.
+   * Terminates the DiskManager by releasing the unused pages of the extents,
+   * saving the allocation bitmaps and the page maps of the compressed files,
+   * forcing the memory mapped pages to disk and closing the data files.
    */
-  public void terminate() throws IOException {
+  public synchronized void terminate() throws IOException {
+    for (Extent extent : activeExtents.values()) {
+      int firstUnusedPageIdx = extent.getFirstPageIdx() + extent.getUsedPageCount();
+      for (int pageIdx = firstUnusedPageIdx; pageIdx < extent.getEndPageIdx(); pageIdx++) {
+        allocationBitmaps[extent.getFileIdx()].free(pageIdx);
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(DBParams.pageSize);
+    for (int fileIdx = 0; fileIdx < allocationBitmaps.length; fileIdx++) {
+      if (allocationBitmaps[fileIdx].isModified() && FileHandler.retrieveFilePath(fileIdx).isPresent()) {
+        allocationBitmaps[fileIdx].store(buffer);
+        savePageData(metadataPageId(fileIdx), buffer);
+      }
+    }
+    compressedPages.save();
+    mappedFiles.force();
     clear();
   }
 
   /**
-   * Clears all active and reusable pages and resets the working page index.
+   * Resets the allocation bitmaps, the extents, the working file index and the
+   * high-water marks of the files, drops the memory mappings, stops the I/O
+   * workers and closes the data files.
+   */
+  public synchronized void clear() throws IOException {
+    resetAllocationBitmaps();
+    mappedFiles.clear();
+    channelPool.closeAll();
+    asyncChannels.closeAll();
+    compressedPages.clear();
+    ioWorkers.shutdown();
+    growthPolicy.clear();
+  }
+
+  /**
+   * Replaces every allocation bitmap by an empty one and forgets the extents.
+   */
+  private void resetAllocationBitmaps() {
+    for (int fileIdx = 0; fileIdx < allocationBitmaps.length; fileIdx++) {
+      allocationBitmaps[fileIdx] = new AllocationBitmap(DBParams.pageSize);
+    }
+    workingFileIdx = 0;
+    activeExtents.clear();
+    extents.clear();
+  }
+
+  /**
+   * Returns the PageId of the page holding the allocation bitmap of a file.
+   *
+   * @param fileIdx The index of the file.
+   * @return The PageId of the metadata page of the file.
    */
-  public void clear() throws IOException {
-    workingPageId.setIndexes(0, 0);
-    activePageIds.clear();
-    reusablePageIds.clear();
+  private static PageId metadataPageId(int fileIdx) {
+    return new PageId(fileIdx, AllocationBitmap.METADATA_PAGE_IDX);
   }
 
   /**
-   * Allocates a new page on disk. If there are reusable pages, one of them is
-   * reused.
-   * Otherwise, a new page is created.
+   * Allocates a new page on disk. The free page with the lowest index of the
+   * working file is used, deallocated pages included, and the working file then
+   * moves to the next file so that pages are spread across all the files.
    *
    * @return The PageId of the allocated page.
+   * @throws IOException If every file is full.
    */
-  public PageId allocatePage() throws IOException {
-    PageId pageId;
+  public synchronized PageId allocatePage() throws IOException {
+    for (int attempt = 0; attempt < allocationBitmaps.length; attempt++) {
+      int fileIdx = workingFileIdx;
+      workingFileIdx = (workingFileIdx + 1) % allocationBitmaps.length;
 
-    if (reusablePageIds.isEmpty()) {
-      pageId = workingPageId.clone();
-      try {
-        pageId.createFile();
-      } catch (IOException e) {
-        throw new IOException("Failed to allocate page", e);
+      int pageIdx = allocationBitmaps[fileIdx].allocate();
+      if (pageIdx >= 0) {
+        PageId pageId = new PageId(fileIdx, pageIdx);
+        try {
+          pageId.createFile();
+          growFile(pageId);
+        } catch (IOException e) {
+          allocationBitmaps[fileIdx].free(pageIdx);
+          throw new IOException("Failed to allocate page", e);
+        }
+        return pageId;
+      }
+    }
+    throw new IOException("Failed to allocate page: " + describeCapacity());
+  }
+
+  /**
+   * Describes the limit reached when every data file is full.
+   * A file holds at most as many pages as its allocation bitmap, stored in a
+   * single page, has bits.
+   *
+   * @return The description of the limit.
+   */
+  private String describeCapacity() {
+    long filePageCount = AllocationBitmap.getCapacity(DBParams.pageSize);
+    long fileSize = filePageCount * DBParams.pageSize;
+    return String.format(
+        "every data file is full (%d files of at most %d pages of %d bytes, %d KiB per file and %d KiB in all;"
+            + " the limit of a file is 8 * (pageSize - 8) pages)",
+        allocationBitmaps.length, filePageCount, DBParams.pageSize, fileSize >> 10,
+        (fileSize * allocationBitmaps.length) >> 10);
+  }
+
+  /**
+   * Allocates a new page on disk for the given owner.
+   * The page is taken from the extent of the owner. When the extent is full, a
+   * new one is reserved, right after the previous one if those pages are free,
+   * and twice as long up to DBParams.maxExtentPageCount pages. When no run of
+   * free pages is long enough, a single page is allocated as with
+   * allocatePage().
+   *
+   * @param ownerId The PageId identifying the owner of the page.
+   * @return The PageId of the allocated page.
+   * @throws IOException If every file is full.
+   */
+  public synchronized PageId allocatePage(PageId ownerId) throws IOException {
+    if (ownerId == null) {
+      throw new IllegalArgumentException("Owner PageId cannot be null");
+    }
+
+    Extent extent = activeExtents.get(ownerId);
+    if (extent == null || extent.isFull()) {
+      extent = reserveExtent(ownerId, extent);
+      if (extent == null) {
+        return allocatePage();
       }
-      workingPageId.nextIndex();
-    } else {
-      pageId = reusablePageIds.poll();
+      activeExtents.put(extent.getOwnerId(), extent);
+      extents.add(extent);
     }
 
-    if (!activePageIds.contains(pageId)) {
-      activePageIds.add(pageId);
+    PageId pageId = extent.nextPage();
+    try {
+      pageId.createFile();
+      growFile(pageId);
+    } catch (IOException e) {
+      throw new IOException("Failed to allocate page", e);
     }
     return pageId;
   }
 
+  /**
+   * Makes sure the space of a newly allocated page is preallocated in its file,
+   * so that writing the page does not extend the file.
+   *
+   * @param pageId The PageId of the page.
+   * @throws IOException If the file cannot be extended.
+   */
+  private void growFile(PageId pageId) throws IOException {
+    if (growthPolicy.ensureCapacity(pageId)) {
+      int preallocatedPageCount = growthPolicy.getPreallocatedPageCount(pageId.getFileIdx());
+      mappedFiles.pageWritten(new PageId(pageId.getFileIdx(), preallocatedPageCount - 1));
+    }
+  }
+
+  /**
+   * Returns the high-water mark of a data file, i.e. the number of pages whose
+   * space is preallocated in the file.
+   *
+   * @param fileIdx The index of the file.
+   * @return The number of preallocated pages, or -1 if no page of the file was
+   *         allocated since the DiskManager was initialized.
+   */
+  public int getPreallocatedPageCount(int fileIdx) {
+    return growthPolicy.getPreallocatedPageCount(fileIdx);
+  }
+
+  /**
+   * Reserves a new extent for an owner.
+   *
+   * @param ownerId        The PageId identifying the owner.
+   * @param previousExtent The previous extent of the owner, or null if it has
+   *                       none.
+   * @return The new extent, or null if there is no run of free pages long enough.
+   */
+  private Extent reserveExtent(PageId ownerId, Extent previousExtent) {
+    int minLength = Math.max(1, DBParams.minExtentPageCount);
+    int maxLength = Math.max(minLength, DBParams.maxExtentPageCount);
+    int length = previousExtent == null ? minLength : Math.min(previousExtent.getLength() * 2, maxLength);
+
+    if (previousExtent != null) {
+      AllocationBitmap allocationBitmap = allocationBitmaps[previousExtent.getFileIdx()];
+      if (allocationBitmap.allocateRunAt(previousExtent.getEndPageIdx(), length)) {
+        return new Extent(ownerId, previousExtent.getFileIdx(), previousExtent.getEndPageIdx(), length);
+      }
+    }
+
+    for (; length >= minLength; length /= 2) {
+      for (int attempt = 0; attempt < allocationBitmaps.length; attempt++) {
+        int fileIdx = workingFileIdx;
+        workingFileIdx = (workingFileIdx + 1) % allocationBitmaps.length;
+
+        int firstPageIdx = allocationBitmaps[fileIdx].allocateRun(length);
+        if (firstPageIdx >= 0) {
+          return new Extent(ownerId, fileIdx, firstPageIdx, length);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns every extent reserved since the DiskManager was initialized.
+   *
+   * @return The extents, in reservation order.
+   */
+  public synchronized List<Extent> getExtents() {
+    return Collections.unmodifiableList(new ArrayList<>(extents));
+  }
+
+  /**
+   * Returns the share of the pages of the extents already handed out.
+   *
+   * @return The fill ratio of the extents, between 0 and 1, or 1 if there is no
+   *         extent.
+   */
+  public synchronized double getExtentFillRatio() {
+    long usedPageCount = 0;
+    long reservedPageCount = 0;
+    for (Extent extent : extents) {
+      usedPageCount += extent.getUsedPageCount();
+      reservedPageCount += extent.getLength();
+    }
+    return reservedPageCount == 0 ? 1 : (double) usedPageCount / reservedPageCount;
+  }
+
   /**
    * Deallocates a page, making it reusable.
    *
    * @param pageId The PageId of the page to deallocate.
    */
-  public void deallocatePage(PageId pageId) {
+  public synchronized void deallocatePage(PageId pageId) {
     if (pageId == null) {
       throw new IllegalArgumentException("PageId cannot be null");
     }
 
-    if (activePageIds.removeIf(p -> p.equals(pageId))) {
-      reusablePageIds.add(pageId);
+    if (!pageId.isValid() || pageId.getFileIdx() >= allocationBitmaps.length) {
+      throw new IllegalArgumentException("Invalid PageId: " + pageId);
     }
 
-    if (activePageIds.isEmpty()) {
-      workingPageId.setIndexes(0, 0);
-    }
+    allocationBitmaps[pageId.getFileIdx()].free(pageId.getPageIdx());
+  }
+
+  /**
+   * Checks if a page is currently allocated.
+   *
+   * @param pageId The PageId of the page.
+   * @return true if the page is allocated, false otherwise.
+   */
+  public synchronized boolean isAllocated(PageId pageId) {
+    return pageId.isValid() && pageId.getFileIdx() < allocationBitmaps.length
+        && pageId.getPageIdx() != AllocationBitmap.METADATA_PAGE_IDX
+        && allocationBitmaps[pageId.getFileIdx()].isAllocated(pageId.getPageIdx());
   }
 
   /**
@@ -116,8 +436,27 @@ public final class DiskManager {
    *
    * @return The number of active pages.
    */
-  public int countActivePages() {
-    return activePageIds.size();
+  public synchronized int countActivePages() {
+    int activePageCount = 0;
+    for (AllocationBitmap allocationBitmap : allocationBitmaps) {
+      activePageCount += allocationBitmap.countAllocatedPages();
+    }
+    return activePageCount;
+  }
+
+  /**
+   * Returns the number of bytes a page takes on disk.
+   *
+   * @param pageId The PageId of the page.
+   * @return The size of the compressed page with page compression (0 if it was
+   *         never written), the page size otherwise.
+   * @throws IOException If the page map of the file cannot be loaded.
+   */
+  public int getStoredPageSize(PageId pageId) throws IOException {
+    if (!DBParams.pageCompression) {
+      return DBParams.pageSize;
+    }
+    return compressedPages.storedSize(pageId);
   }
 
   /**
@@ -135,10 +474,59 @@ public final class DiskManager {
       throw new IllegalArgumentException("ByteBuffer cannot be null");
     }
 
-    try (RandomAccessFile file = pageId.getAccessFile()) {
-      file.read(buffer.array());
+    long start = System.nanoTime();
+    readPageData(pageId, buffer);
+    ioStatistics.pagesRead(1, DBParams.pageSize, System.nanoTime() - start);
+  }
+
+  /**
+   * Loads the data of a page into a ByteBuffer, without counting the read.
+   *
+   * @param pageId The PageId of the page to load.
+   * @param buffer The ByteBuffer to load the data into.
+   */
+  private void readPageData(PageId pageId, ByteBuffer buffer) throws IOException {
+    if (DBParams.pageCompression) {
+      try {
+        compressedPages.read(pageId, buffer);
+      } catch (IOException e) {
+        throw new IOException("Error reading page", e);
+      }
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.ASYNCHRONOUS) {
+      awaitCompletion(startPageRead(pageId, buffer), "Error reading page");
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.DIRECT && !FileHandler.isAlignedBuffer(buffer)) {
+      ByteBuffer alignedBuffer = alignedBuffers.get();
+      readPageData(pageId, alignedBuffer);
+      buffer.put(0, alignedBuffer, 0, DBParams.pageSize);
+      return;
+    }
+
+    ByteBuffer target = buffer.duplicate();
+    target.clear();
+    try {
+      if (DBParams.ioMode == IOMode.MEMORY_MAPPED && mappedFiles.read(pageId, target)) {
+        return;
+      }
+      FileChannel channel = channelPool.acquire(pageId.getFileIdx());
+      long position = pageOffset(pageId);
+      while (target.hasRemaining()) {
+        if (channel.read(target, position + target.position()) < 0) {
+          break;
+        }
+      }
     } catch (IOException e) {
-      throw new RuntimeException("Error reading page", e);
+      throw new IOException("Error reading page", e);
+    }
+
+    // a page that was never written reads as zeros
+    while (target.hasRemaining()) {
+      target.put((byte) 0);
     }
   }
 
@@ -157,13 +545,466 @@ public final class DiskManager {
       throw new IllegalArgumentException("ByteBuffer cannot be null");
     }
 
-    try (RandomAccessFile file = pageId.getAccessFile()) {
-      file.write(buffer.array());
+    long start = System.nanoTime();
+    writePageData(pageId, buffer);
+    ioStatistics.pagesWritten(1, DBParams.pageSize, System.nanoTime() - start);
+  }
+
+  /**
+   * Saves the data of a ByteBuffer to a page, without counting the write.
+   *
+   * @param pageId The PageId of the page to save to.
+   * @param buffer The ByteBuffer containing the data to save.
+   */
+  private void writePageData(PageId pageId, ByteBuffer buffer) throws IOException {
+    if (DBParams.pageCompression) {
+      try {
+        compressedPages.write(pageId, buffer);
+      } catch (IOException e) {
+        throw new IOException("Error writing page", e);
+      }
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.ASYNCHRONOUS) {
+      awaitCompletion(startPageWrite(pageId, buffer), "Error writing page");
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.DIRECT && !FileHandler.isAlignedBuffer(buffer)) {
+      ByteBuffer alignedBuffer = alignedBuffers.get();
+      alignedBuffer.put(0, buffer, 0, DBParams.pageSize);
+      writePageData(pageId, alignedBuffer);
+      return;
+    }
+
+    ByteBuffer source = buffer.duplicate();
+    source.clear();
+    try {
+      if (DBParams.ioMode == IOMode.MEMORY_MAPPED && mappedFiles.write(pageId, source)) {
+        return;
+      }
+      FileChannel channel = channelPool.acquire(pageId.getFileIdx());
+      long position = pageOffset(pageId);
+      while (source.hasRemaining()) {
+        channel.write(source, position + source.position());
+      }
+      mappedFiles.pageWritten(pageId);
     } catch (IOException e) {
       throw new IOException("Error writing page", e);
     }
   }
 
+  /**
+   * Starts loading the data of a page into a ByteBuffer, without waiting for the
+   * read to complete.
+   * The read is issued on the asynchronous channel of the data file; when too
+   * many requests are already in flight on that file, this method waits for one
+   * of them to complete first. With page compression, the page is read before
+   * this method returns.
+   *
+   * @param pageId The PageId of the page to load.
+   * @param buffer The ByteBuffer to load the data into.
+   * @return A future completed once the data is loaded.
+   */
+  public CompletableFuture<Void> loadPageDataAsync(PageId pageId, ByteBuffer buffer) {
+    if (pageId == null) {
+      throw new IllegalArgumentException("PageId cannot be null");
+    }
+
+    if (buffer == null) {
+      throw new IllegalArgumentException("ByteBuffer cannot be null");
+    }
+
+    long start = System.nanoTime();
+    return startPageRead(pageId, buffer).whenComplete((result, failure) -> {
+      if (failure == null) {
+        ioStatistics.pagesRead(1, DBParams.pageSize, System.nanoTime() - start);
+      }
+    });
+  }
+
+  /**
+   * Starts loading the data of a page into a ByteBuffer, without counting the
+   * read.
+   *
+   * @param pageId The PageId of the page to load.
+   * @param buffer The ByteBuffer to load the data into.
+   * @return A future completed once the data is loaded.
+   */
+  private CompletableFuture<Void> startPageRead(PageId pageId, ByteBuffer buffer) {
+    if (DBParams.pageCompression) {
+      return completedOperation(() -> readPageData(pageId, buffer));
+    }
+
+    return asyncChannels.read(pageId, buffer.duplicate().clear());
+  }
+
+  /**
+   * Starts saving the data of a ByteBuffer to a page, without waiting for the
+   * write to complete.
+   * The buffer must not be modified until the returned future is completed.
+   * With page compression, the page is written before this method returns.
+   *
+   * @param pageId The PageId of the page to save to.
+   * @param buffer The ByteBuffer containing the data to save.
+   * @return A future completed once the data is saved.
+   */
+  public CompletableFuture<Void> savePageDataAsync(PageId pageId, ByteBuffer buffer) {
+    if (pageId == null) {
+      throw new IllegalArgumentException("PageId cannot be null");
+    }
+
+    if (buffer == null) {
+      throw new IllegalArgumentException("ByteBuffer cannot be null");
+    }
+
+    long start = System.nanoTime();
+    return startPageWrite(pageId, buffer).whenComplete((result, failure) -> {
+      if (failure == null) {
+        ioStatistics.pagesWritten(1, DBParams.pageSize, System.nanoTime() - start);
+      }
+    });
+  }
+
+  /**
+   * Starts saving the data of a ByteBuffer to a page, without counting the
+   * write.
+   *
+   * @param pageId The PageId of the page to save to.
+   * @param buffer The ByteBuffer containing the data to save.
+   * @return A future completed once the data is saved.
+   */
+  private CompletableFuture<Void> startPageWrite(PageId pageId, ByteBuffer buffer) {
+    if (DBParams.pageCompression) {
+      return completedOperation(() -> writePageData(pageId, buffer));
+    }
+
+    PageId savedPageId = pageId.clone();
+    return asyncChannels.write(savedPageId, buffer.duplicate().clear())
+        .thenRun(() -> mappedFiles.pageWritten(savedPageId));
+  }
+
+  /**
+   * Runs a page operation and returns a future holding its outcome.
+   *
+   * @param operation The page operation.
+   * @return A future completed normally, or exceptionally if the operation
+   *         failed.
+   */
+  private static CompletableFuture<Void> completedOperation(PageOperation operation) {
+    try {
+      operation.run();
+      return CompletableFuture.completedFuture(null);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Waits for an asynchronous page operation to complete.
+   *
+   * @param future  The future of the operation.
+   * @param message The message of the exception thrown if the operation fails.
+   * @throws IOException If the operation fails or the wait is interrupted.
+   */
+  private static void awaitCompletion(CompletableFuture<?> future, String message) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(message, e);
+    } catch (ExecutionException e) {
+      throw new IOException(message, e.getCause());
+    }
+  }
+
+  /**
+   * Loads the data of several pages at once.
+   * The pages are grouped by file and sorted by offset, and each run of
+   * contiguous pages is read with a single scattering read, the files being
+   * read in parallel when DBParams.parallelFileIO is set. In the DIRECT I/O
+   * mode, the pages are read one by one unless every buffer is aligned, and so
+   * are compressed pages.
+   *
+   * @param pageIds The PageIds of the pages to load.
+   * @param buffers The ByteBuffers to load the data into, one per page.
+   */
+  public void loadPages(List<PageId> pageIds, ByteBuffer[] buffers) throws IOException {
+    checkBatch(pageIds, buffers);
+
+    long start = System.nanoTime();
+    readPages(pageIds, buffers);
+    ioStatistics.pagesRead(buffers.length, DBParams.pageSize, System.nanoTime() - start);
+  }
+
+  /**
+   * Loads the data of several pages at once, without counting the read.
+   *
+   * @param pageIds The PageIds of the pages to load.
+   * @param buffers The ByteBuffers to load the data into, one per page.
+   */
+  private void readPages(List<PageId> pageIds, ByteBuffer[] buffers) throws IOException {
+    if (DBParams.pageCompression || DBParams.ioMode == IOMode.MEMORY_MAPPED
+        || (DBParams.ioMode == IOMode.DIRECT && !Arrays.stream(buffers).allMatch(FileHandler::isAlignedBuffer))) {
+      for (int i = 0; i < buffers.length; i++) {
+        readPageData(pageIds.get(i), buffers[i]);
+      }
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.ASYNCHRONOUS) {
+      CompletableFuture<?>[] futures = new CompletableFuture<?>[buffers.length];
+      for (int i = 0; i < buffers.length; i++) {
+        futures[i] = startPageRead(pageIds.get(i), buffers[i]);
+      }
+      awaitCompletion(CompletableFuture.allOf(futures), "Error reading pages");
+      return;
+    }
+
+    transferRuns(pageIds, run -> readRun(pageIds, buffers, run), "Error reading pages");
+  }
+
+  /**
+   * Reads a run of contiguous pages with a single scattering read.
+   *
+   * @param pageIds The PageIds of the pages of the batch.
+   * @param buffers The ByteBuffers of the pages of the batch.
+   * @param run     The positions in the batch of the pages of the run.
+   */
+  private void readRun(List<PageId> pageIds, ByteBuffer[] buffers, int[] run) throws IOException {
+    ByteBuffer[] targets = new ByteBuffer[run.length];
+    for (int i = 0; i < run.length; i++) {
+      targets[i] = buffers[run[i]].duplicate().clear();
+    }
+    PageId firstPageId = pageIds.get(run[0]);
+    try {
+      FileChannel channel = channelPool.acquire(firstPageId.getFileIdx());
+      synchronized (channel) {
+        channel.position(pageOffset(firstPageId));
+        long remaining = (long) run.length * DBParams.pageSize;
+        while (remaining > 0) {
+          long read = channel.read(targets);
+          if (read < 0) {
+            break;
+          }
+          remaining -= read;
+        }
+      }
+    } catch (IOException e) {
+      throw new IOException("Error reading pages", e);
+    }
+
+    // pages that were never written read as zeros
+    for (ByteBuffer target : targets) {
+      while (target.hasRemaining()) {
+        target.put((byte) 0);
+      }
+    }
+  }
+
+  /**
+   * Saves the data of several pages at once.
+   * The pages are grouped by file and sorted by offset, and each run of
+   * contiguous pages is written with a single gathering write, the files being
+   * written in parallel when DBParams.parallelFileIO is set. In the DIRECT
+   * I/O mode, the pages are written one by one unless every buffer is aligned,
+   * and so are compressed pages.
+   *
+   * @param pageIds The PageIds of the pages to save to.
+   * @param buffers The ByteBuffers containing the data to save, one per page.
+   */
+  public void savePages(List<PageId> pageIds, ByteBuffer[] buffers) throws IOException {
+    checkBatch(pageIds, buffers);
+
+    long start = System.nanoTime();
+    writePages(pageIds, buffers);
+    ioStatistics.pagesWritten(buffers.length, DBParams.pageSize, System.nanoTime() - start);
+  }
+
+  /**
+   * Saves the data of several pages at once, without counting the write.
+   *
+   * @param pageIds The PageIds of the pages to save to.
+   * @param buffers The ByteBuffers containing the data to save, one per page.
+   */
+  private void writePages(List<PageId> pageIds, ByteBuffer[] buffers) throws IOException {
+    if (DBParams.pageCompression || DBParams.ioMode == IOMode.MEMORY_MAPPED
+        || (DBParams.ioMode == IOMode.DIRECT && !Arrays.stream(buffers).allMatch(FileHandler::isAlignedBuffer))) {
+      for (int i = 0; i < buffers.length; i++) {
+        writePageData(pageIds.get(i), buffers[i]);
+      }
+      return;
+    }
+
+    if (DBParams.ioMode == IOMode.ASYNCHRONOUS) {
+      CompletableFuture<?>[] futures = new CompletableFuture<?>[buffers.length];
+      for (int i = 0; i < buffers.length; i++) {
+        futures[i] = startPageWrite(pageIds.get(i), buffers[i]);
+      }
+      awaitCompletion(CompletableFuture.allOf(futures), "Error writing pages");
+      return;
+    }
+
+    transferRuns(pageIds, run -> writeRun(pageIds, buffers, run), "Error writing pages");
+  }
+
+  /**
+   * Writes a run of contiguous pages with a single gathering write.
+   *
+   * @param pageIds The PageIds of the pages of the batch.
+   * @param buffers The ByteBuffers of the pages of the batch.
+   * @param run     The positions in the batch of the pages of the run.
+   */
+  private void writeRun(List<PageId> pageIds, ByteBuffer[] buffers, int[] run) throws IOException {
+    ByteBuffer[] sources = new ByteBuffer[run.length];
+    for (int i = 0; i < run.length; i++) {
+      sources[i] = buffers[run[i]].duplicate().clear();
+    }
+    PageId firstPageId = pageIds.get(run[0]);
+    try {
+      FileChannel channel = channelPool.acquire(firstPageId.getFileIdx());
+      synchronized (channel) {
+        channel.position(pageOffset(firstPageId));
+        long remaining = (long) run.length * DBParams.pageSize;
+        while (remaining > 0) {
+          remaining -= channel.write(sources);
+        }
+      }
+    } catch (IOException e) {
+      throw new IOException("Error writing pages", e);
+    }
+    mappedFiles.pageWritten(pageIds.get(run[run.length - 1]));
+  }
+
+  /**
+   * Splits a batch of pages into runs of contiguous pages and transfers them.
+   * When DBParams.parallelFileIO is set and the batch spans several files, the
+   * runs of each file are handed to the I/O worker of the file and this method
+   * waits for every file to be done; otherwise the runs are transferred one
+   * after the other on the calling thread.
+   *
+   * @param pageIds  The PageIds of the pages of the batch.
+   * @param transfer The read or write of a run.
+   * @param message  The message of the exception thrown if a transfer fails.
+   */
+  private void transferRuns(List<PageId> pageIds, RunTransfer transfer, String message) throws IOException {
+    List<int[]> runs = contiguousRuns(pageIds);
+    Map<Integer, List<int[]>> runsByFile = new LinkedHashMap<>();
+    for (int[] run : runs) {
+      runsByFile.computeIfAbsent(pageIds.get(run[0]).getFileIdx(), fileIdx -> new ArrayList<>()).add(run);
+    }
+
+    if (!DBParams.parallelFileIO || runsByFile.size() < 2) {
+      for (int[] run : runs) {
+        transfer.transfer(run);
+      }
+      return;
+    }
+
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (Map.Entry<Integer, List<int[]>> entry : runsByFile.entrySet()) {
+      futures.add(ioWorkers.submit(entry.getKey(), () -> {
+        for (int[] run : entry.getValue()) {
+          transfer.transfer(run);
+        }
+      }));
+    }
+    awaitCompletion(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])), message);
+  }
+
+  /**
+   * RunTransfer is the read or write of a run of contiguous pages.
+   */
+  @FunctionalInterface
+  private interface RunTransfer {
+    /**
+     * Transfers a run.
+     *
+     * @param run The positions in the batch of the pages of the run.
+     * @throws IOException If the pages cannot be read or written.
+     */
+    void transfer(int[] run) throws IOException;
+  }
+
+  /**
+   * Checks the arguments of a batched page operation.
+   *
+   * @param pageIds The PageIds of the pages.
+   * @param buffers The ByteBuffers of the pages.
+   */
+  private static void checkBatch(List<PageId> pageIds, ByteBuffer[] buffers) {
+    if (pageIds == null || buffers == null) {
+      throw new IllegalArgumentException("PageIds and ByteBuffers cannot be null");
+    }
+
+    if (pageIds.size() != buffers.length) {
+      throw new IllegalArgumentException("There must be one ByteBuffer per PageId");
+    }
+
+    for (int i = 0; i < buffers.length; i++) {
+      if (pageIds.get(i) == null || buffers[i] == null) {
+        throw new IllegalArgumentException("PageId and ByteBuffer cannot be null");
+      }
+    }
+  }
+
+  /**
+   * Splits a list of pages into runs of contiguous pages of the same file.
+   * The pages are sorted by file and by offset, and each run holds the positions
+   * of its pages in the given list.
+   *
+   * @param pageIds The PageIds of the pages.
+   * @return The runs of contiguous pages.
+   */
+  private static List<int[]> contiguousRuns(List<PageId> pageIds) {
+    Integer[] order = new Integer[pageIds.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingInt((Integer i) -> pageIds.get(i).getFileIdx())
+        .thenComparingInt(i -> pageIds.get(i).getPageIdx()));
+
+    List<int[]> runs = new ArrayList<>();
+    int runStart = 0;
+    for (int i = 1; i <= order.length; i++) {
+      if (i < order.length) {
+        PageId previous = pageIds.get(order[i - 1]);
+        PageId current = pageIds.get(order[i]);
+        if (current.getFileIdx() == previous.getFileIdx() && current.getPageIdx() == previous.getPageIdx() + 1) {
+          continue;
+        }
+      }
+      int[] run = new int[i - runStart];
+      for (int j = 0; j < run.length; j++) {
+        run[j] = order[runStart + j];
+      }
+      runs.add(run);
+      runStart = i;
+    }
+    return runs;
+  }
+
+  /**
+   * Returns the offset of a page in its data file.
+   *
+   * @param pageId The PageId of the page.
+   * @return The offset of the page, in bytes.
+   */
+  private static long pageOffset(PageId pageId) {
+    return (long) pageId.getPageIdx() * DBParams.pageSize;
+  }
+
+  /**
+   * Returns the counters of the page reads and writes, also exposed through
+   * JMX once the DiskManager is initialized.
+   *
+   * @return The metrics of the page reads and writes.
+   */
+  public DiskIOMXBean getIOStatistics() {
+    return ioStatistics;
+  }
+
   /**
    * Returns the singleton instance of the DiskManager.
    *
@@ -0,0 +1,148 @@
+package up.mi.bdda.app.disk;
+
+import up.mi.bdda.app.page.PageId;
+
+/**
+ * The Extent class represents a run of contiguous pages of a data file reserved
+ * for a single owner (a table, identified by the PageId of its header page).
+ * The pages of the extent are handed out in order, so the pages of a table are
+ * stored next to each other on disk.
+ */
+public final class Extent {
+  /**
+   * The PageId identifying the owner of the extent.
+   */
+  private final PageId ownerId;
+
+  /**
+   * The index of the file holding the extent.
+   */
+  private final int fileIdx;
+
+  /**
+   * The index of the first page of the extent.
+   */
+  private final int firstPageIdx;
+
+  /**
+   * The number of pages of the extent.
+   */
+  private final int length;
+
+  /**
+   * The number of pages of the extent already handed out.
+   */
+  private int usedPageCount;
+
+  /**
+   * Constructs a new Extent.
+   *
+   * @param ownerId      The PageId identifying the owner of the extent.
+   * @param fileIdx      The index of the file holding the extent.
+   * @param firstPageIdx The index of the first page of the extent.
+   * @param length       The number of pages of the extent.
+   */
+  Extent(PageId ownerId, int fileIdx, int firstPageIdx, int length) {
+    this.ownerId = ownerId.clone();
+    this.fileIdx = fileIdx;
+    this.firstPageIdx = firstPageIdx;
+    this.length = length;
+    usedPageCount = 0;
+  }
+
+  /**
+   * Hands out the next page of the extent.
+   *
+   * @return The PageId of the page.
+   * @throws IllegalStateException If every page of the extent is used.
+   */
+  PageId nextPage() {
+    if (isFull()) {
+      throw new IllegalStateException("Extent is full");
+    }
+    return new PageId(fileIdx, firstPageIdx + usedPageCount++);
+  }
+
+  /**
+   * Returns the PageId identifying the owner of the extent.
+   *
+   * @return The PageId of the owner.
+   */
+  public PageId getOwnerId() {
+    return ownerId.clone();
+  }
+
+  /**
+   * Returns the index of the file holding the extent.
+   *
+   * @return The file index.
+   */
+  public int getFileIdx() {
+    return fileIdx;
+  }
+
+  /**
+   * Returns the index of the first page of the extent.
+   *
+   * @return The page index.
+   */
+  public int getFirstPageIdx() {
+    return firstPageIdx;
+  }
+
+  /**
+   * Returns the index of the page following the extent.
+   *
+   * @return The page index.
+   */
+  public int getEndPageIdx() {
+    return firstPageIdx + length;
+  }
+
+  /**
+   * Returns the number of pages of the extent.
+   *
+   * @return The length of the extent.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Returns the number of pages of the extent already handed out.
+   *
+   * @return The number of used pages.
+   */
+  public int getUsedPageCount() {
+    return usedPageCount;
+  }
+
+  /**
+   * Checks if every page of the extent is used.
+   *
+   * @return true if the extent is full, false otherwise.
+   */
+  public boolean isFull() {
+    return usedPageCount == length;
+  }
+
+  /**
+   * Returns the share of the pages of the extent already handed out.
+   *
+   * @return The fill ratio, between 0 and 1.
+   */
+  public double getFillRatio() {
+    return (double) usedPageCount / length;
+  }
+
+  /**
+   * Returns a string representation of the extent.
+   *
+   * @return A string in the format "owner -> file.[first, end) used/length".
+   */
+  @Override
+  public String toString() {
+    return String.format("%s -> %d.[%d, %d) %d/%d", ownerId, fileIdx, firstPageIdx, getEndPageIdx(), usedPageCount,
+        length);
+  }
+}
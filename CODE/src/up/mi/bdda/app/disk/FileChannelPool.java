@@ -0,0 +1,85 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.IOMode;
+import up.mi.bdda.app.utils.FileHandler;
+
+/**
+ * FileChannelPool keeps the data files opened by the DiskManager.
+ * Each F<n>.data file is opened once and its FileChannel is reused for every
+ * page read and write, instead of opening and closing a RandomAccessFile on
+ * each page access.
+ * The pool is bounded: when it is full, the least recently used channel is
+ * closed before a new one is opened.
+ * In the DIRECT I/O mode, the files are opened for direct I/O.
+ */
+final class FileChannelPool {
+  /**
+   * The open channels, mapped by file index and kept in access order.
+   */
+  private final LinkedHashMap<Integer, FileChannel> openChannels;
+
+  /**
+   * The maximum number of channels that can be opened at the same time.
+   */
+  private final int capacity;
+
+  /**
+   * Constructs a new FileChannelPool.
+   *
+   * @param capacity The maximum number of channels kept open at the same time.
+   */
+  FileChannelPool(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    openChannels = new LinkedHashMap<>(this.capacity, 0.75f, true);
+  }
+
+  /**
+   * Returns the channel of the given file, opening it if it is not already open.
+   *
+   * @param fileIdx The index of the file.
+   * @return The open channel of the file.
+   * @throws IOException If the file cannot be opened.
+   */
+  synchronized FileChannel acquire(int fileIdx) throws IOException {
+    FileChannel channel = openChannels.get(fileIdx);
+    if (channel != null && channel.isOpen()) {
+      return channel;
+    }
+
+    if (openChannels.size() >= capacity) {
+      Map.Entry<Integer, FileChannel> eldest = openChannels.entrySet().iterator().next();
+      openChannels.remove(eldest.getKey());
+      eldest.getValue().close();
+    }
+
+    channel = FileHandler.openChannel(fileIdx, DBParams.ioMode == IOMode.DIRECT);
+    openChannels.put(fileIdx, channel);
+    return channel;
+  }
+
+  /**
+   * Closes every open channel and empties the pool.
+   *
+   * @throws IOException If a channel cannot be closed.
+   */
+  synchronized void closeAll() throws IOException {
+    IOException failure = null;
+    for (FileChannel channel : openChannels.values()) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    openChannels.clear();
+    if (failure != null) {
+      throw new IOException("Failed to close data files", failure);
+    }
+  }
+}
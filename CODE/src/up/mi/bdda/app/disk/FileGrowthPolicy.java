@@ -0,0 +1,137 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+import up.mi.bdda.app.settings.IOMode;
+import up.mi.bdda.app.utils.FileHandler;
+
+/**
+ * FileGrowthPolicy preallocates the space of the data files.
+ * Instead of growing a file by one page each time a page past its end is
+ * written, the file is extended by chunks of DBParams.fileGrowthChunkSize bytes
+ * filled with zeros when a page is allocated past its high-water mark, the end
+ * of the space already preallocated. The pages handed out afterwards are then
+ * written inside the file.
+ */
+final class FileGrowthPolicy {
+  /**
+   * The number of pages written at once when a file is extended.
+   */
+  private static final int ZERO_PAGE_COUNT = 16;
+
+  /**
+   * The pool used to open the data files.
+   */
+  private final FileChannelPool channelPool;
+
+  /**
+   * The high-water mark of each file, in bytes, or -1 if it is not known yet.
+   */
+  private final long[] highWaterMarks;
+
+  /**
+   * The zeros written to extend the files.
+   */
+  private ByteBuffer zeroBuffer;
+
+  /**
+   * Constructs a new FileGrowthPolicy.
+   *
+   * @param channelPool The pool used to open the data files.
+   * @param fileCount   The number of data files.
+   */
+  FileGrowthPolicy(FileChannelPool channelPool, int fileCount) {
+    this.channelPool = channelPool;
+    highWaterMarks = new long[fileCount];
+    clear();
+  }
+
+  /**
+   * Makes sure the space of a page is preallocated, extending its file by as
+   * many chunks as needed.
+   *
+   * @param pageId The PageId of the page.
+   * @return true if the file was extended, false otherwise.
+   * @throws IOException If the file cannot be extended.
+   */
+  synchronized boolean ensureCapacity(PageId pageId) throws IOException {
+    long chunkSize = chunkSize();
+    if (chunkSize == 0) {
+      return false;
+    }
+
+    int fileIdx = pageId.getFileIdx();
+    FileChannel channel = channelPool.acquire(fileIdx);
+    if (highWaterMarks[fileIdx] < 0) {
+      long size = channel.size();
+      highWaterMarks[fileIdx] = size - size % DBParams.pageSize;
+    }
+
+    long pageEnd = ((long) pageId.getPageIdx() + 1) * DBParams.pageSize;
+    if (pageEnd <= highWaterMarks[fileIdx]) {
+      return false;
+    }
+
+    long newHighWaterMark = (pageEnd + chunkSize - 1) / chunkSize * chunkSize;
+    ByteBuffer zeros = zeroBuffer();
+    for (long position = highWaterMarks[fileIdx]; position < newHighWaterMark;) {
+      zeros.clear().limit((int) Math.min(zeros.capacity(), newHighWaterMark - position));
+      while (zeros.hasRemaining()) {
+        position += channel.write(zeros, position);
+      }
+    }
+    highWaterMarks[fileIdx] = newHighWaterMark;
+    return true;
+  }
+
+  /**
+   * Returns the high-water mark of a file, i.e. the number of pages whose space
+   * is preallocated.
+   *
+   * @param fileIdx The index of the file.
+   * @return The number of preallocated pages, or -1 if it is not known yet.
+   */
+  synchronized int getPreallocatedPageCount(int fileIdx) {
+    return highWaterMarks[fileIdx] < 0 ? -1 : (int) (highWaterMarks[fileIdx] / DBParams.pageSize);
+  }
+
+  /**
+   * Forgets the high-water marks, so that they are read again from the files.
+   */
+  synchronized void clear() {
+    Arrays.fill(highWaterMarks, -1);
+  }
+
+  /**
+   * Returns the size of a growth chunk, rounded up to a whole number of pages.
+   *
+   * @return The chunk size in bytes, or 0 if the files are not preallocated.
+   */
+  private static long chunkSize() {
+    if (DBParams.fileGrowthChunkSize <= 0 || DBParams.pageCompression) {
+      return 0;
+    }
+    long pageCount = (DBParams.fileGrowthChunkSize + DBParams.pageSize - 1) / DBParams.pageSize;
+    return pageCount * DBParams.pageSize;
+  }
+
+  /**
+   * Returns the buffer of zeros written to extend the files, aligned for direct
+   * I/O in the DIRECT I/O mode.
+   *
+   * @return The buffer of zeros.
+   */
+  private ByteBuffer zeroBuffer() {
+    int size = ZERO_PAGE_COUNT * DBParams.pageSize;
+    boolean aligned = DBParams.ioMode == IOMode.DIRECT;
+    if (zeroBuffer == null || zeroBuffer.capacity() != size || FileHandler.isAlignedBuffer(zeroBuffer) != aligned) {
+      zeroBuffer = aligned ? FileHandler.allocateAlignedBuffer(size) : ByteBuffer.allocate(size);
+    }
+    return zeroBuffer;
+  }
+}
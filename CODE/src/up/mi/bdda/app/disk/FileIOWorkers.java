@@ -0,0 +1,73 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * FileIOWorkers runs page operations on one worker thread per data file.
+ * Each worker has its own queue and runs the operations of its file in
+ * submission order, so the operations of different files run concurrently
+ * while those of a same file never compete for its channel.
+ * The workers are daemon threads, started on first use.
+ */
+final class FileIOWorkers {
+  /**
+   * The workers of the data files, by file index.
+   */
+  private final Map<Integer, ExecutorService> workers;
+
+  /**
+   * Constructs a new FileIOWorkers.
+   */
+  FileIOWorkers() {
+    workers = new HashMap<>();
+  }
+
+  /**
+   * Queues an operation on the worker of a file.
+   *
+   * @param fileIdx   The index of the file.
+   * @param operation The operation to run.
+   * @return A future completed once the operation has run.
+   */
+  synchronized CompletableFuture<Void> submit(int fileIdx, PageOperation operation) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    workerOf(fileIdx).execute(() -> {
+      try {
+        operation.run();
+        future.complete(null);
+      } catch (IOException | RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Stops every worker once its queued operations have run.
+   */
+  synchronized void shutdown() {
+    for (ExecutorService worker : workers.values()) {
+      worker.shutdown();
+    }
+    workers.clear();
+  }
+
+  /**
+   * Returns the worker of a file, starting it if needed.
+   *
+   * @param fileIdx The index of the file.
+   * @return The worker of the file.
+   */
+  private ExecutorService workerOf(int fileIdx) {
+    return workers.computeIfAbsent(fileIdx, idx -> Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, String.format("page-io-F%d", idx));
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+}
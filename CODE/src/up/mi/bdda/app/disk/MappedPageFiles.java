@@ -0,0 +1,193 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * MappedPageFiles maps the data files in memory for the MEMORY_MAPPED I/O mode.
+ * Each file is mapped in segments of SEGMENT_PAGE_COUNT pages. A segment only
+ * covers the part of the file that already exists and is mapped again when the
+ * file grows, so pages past the end of a file are never served from a mapping:
+ * the Disk Manager writes them through the channel instead.
+ */
+final class MappedPageFiles {
+  /**
+   * The number of pages covered by a mapped segment.
+   */
+  private static final int SEGMENT_PAGE_COUNT = 1024;
+
+  /**
+   * The mapped files, by file index.
+   */
+  private final Map<Integer, MappedFile> mappedFiles;
+
+  /**
+   * The pool used to open the data files to map.
+   */
+  private final FileChannelPool channelPool;
+
+  /**
+   * Constructs a new MappedPageFiles.
+   *
+   * @param channelPool The pool used to open the data files.
+   */
+  MappedPageFiles(FileChannelPool channelPool) {
+    this.channelPool = channelPool;
+    mappedFiles = new HashMap<>();
+  }
+
+  /**
+   * Copies a page from its mapping into a buffer.
+   *
+   * @param pageId The PageId of the page to read.
+   * @param buffer The buffer to copy the page into.
+   * @return true if the page was read, false if it lies past the end of its
+   *         file.
+   * @throws IOException If the file cannot be mapped.
+   */
+  synchronized boolean read(PageId pageId, ByteBuffer buffer) throws IOException {
+    MappedByteBuffer segment = segmentOf(pageId);
+    if (segment == null) {
+      return false;
+    }
+    buffer.put(0, segment, offsetInSegment(pageId), DBParams.pageSize);
+    return true;
+  }
+
+  /**
+   * Copies a buffer into the mapping of a page.
+   *
+   * @param pageId The PageId of the page to write.
+   * @param buffer The buffer containing the page.
+   * @return true if the page was written, false if it lies past the end of its
+   *         file.
+   * @throws IOException If the file cannot be mapped.
+   */
+  synchronized boolean write(PageId pageId, ByteBuffer buffer) throws IOException {
+    MappedByteBuffer segment = segmentOf(pageId);
+    if (segment == null) {
+      return false;
+    }
+    segment.put(offsetInSegment(pageId), buffer, 0, DBParams.pageSize);
+    return true;
+  }
+
+  /**
+   * Records that a page was written through the channel, so that the file size
+   * known by the mapping follows the growth of the file.
+   *
+   * @param pageId The PageId of the page that was written.
+   */
+  synchronized void pageWritten(PageId pageId) {
+    MappedFile mappedFile = mappedFiles.get(pageId.getFileIdx());
+    if (mappedFile != null) {
+      mappedFile.size = Math.max(mappedFile.size, pageEnd(pageId));
+    }
+  }
+
+  /**
+   * Forces the content of every mapping to the storage device.
+   */
+  synchronized void force() {
+    for (MappedFile mappedFile : mappedFiles.values()) {
+      for (MappedByteBuffer segment : mappedFile.segments) {
+        if (segment != null) {
+          segment.force();
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops every mapping.
+   */
+  synchronized void clear() {
+    mappedFiles.clear();
+  }
+
+  /**
+   * Returns the mapped segment containing a page, mapping it if needed.
+   *
+   * @param pageId The PageId of the page.
+   * @return The segment, or null if the page lies past the end of its file.
+   * @throws IOException If the file cannot be mapped.
+   */
+  private MappedByteBuffer segmentOf(PageId pageId) throws IOException {
+    MappedFile mappedFile = mappedFiles.get(pageId.getFileIdx());
+    if (mappedFile == null) {
+      mappedFile = new MappedFile(channelPool.acquire(pageId.getFileIdx()).size());
+      mappedFiles.put(pageId.getFileIdx(), mappedFile);
+    }
+    if (pageEnd(pageId) > mappedFile.size) {
+      return null;
+    }
+
+    int segmentIdx = pageId.getPageIdx() / SEGMENT_PAGE_COUNT;
+    if (segmentIdx >= mappedFile.segments.length) {
+      mappedFile.segments = Arrays.copyOf(mappedFile.segments, segmentIdx + 1);
+    }
+    MappedByteBuffer segment = mappedFile.segments[segmentIdx];
+    if (segment == null || offsetInSegment(pageId) + DBParams.pageSize > segment.capacity()) {
+      long segmentStart = (long) segmentIdx * SEGMENT_PAGE_COUNT * DBParams.pageSize;
+      long segmentSize = Math.min((long) SEGMENT_PAGE_COUNT * DBParams.pageSize, mappedFile.size - segmentStart);
+      segmentSize -= segmentSize % DBParams.pageSize;
+      FileChannel channel = channelPool.acquire(pageId.getFileIdx());
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+      mappedFile.segments[segmentIdx] = segment;
+    }
+    return segment;
+  }
+
+  /**
+   * Returns the offset of a page in its segment.
+   *
+   * @param pageId The PageId of the page.
+   * @return The offset of the page in its segment, in bytes.
+   */
+  private static int offsetInSegment(PageId pageId) {
+    return (pageId.getPageIdx() % SEGMENT_PAGE_COUNT) * DBParams.pageSize;
+  }
+
+  /**
+   * Returns the offset of the end of a page in its file.
+   *
+   * @param pageId The PageId of the page.
+   * @return The offset of the byte following the page, in bytes.
+   */
+  private static long pageEnd(PageId pageId) {
+    return ((long) pageId.getPageIdx() + 1) * DBParams.pageSize;
+  }
+
+  /**
+   * MappedFile holds the mapped segments of a data file and its known size.
+   */
+  private static final class MappedFile {
+    /**
+     * The size of the file, in bytes.
+     */
+    private long size;
+
+    /**
+     * The mapped segments of the file, by segment index.
+     */
+    private MappedByteBuffer[] segments;
+
+    /**
+     * Constructs a new MappedFile.
+     *
+     * @param size The size of the file, in bytes.
+     */
+    private MappedFile(long size) {
+      this.size = size;
+      segments = new MappedByteBuffer[0];
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package up.mi.bdda.app.disk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PageCodec interface provides a contract for compressing pages before they
+ * are written to disk and decompressing them when they are read back.
+ */
+public interface PageCodec {
+
+  /**
+   * Returns the maximum size of a compressed page.
+   *
+   * @param pageSize The size of a page, in bytes.
+   * @return The maximum number of bytes written by compress for a page.
+   */
+  int maxCompressedSize(int pageSize);
+
+  /**
+   * Compresses a page.
+   * The remaining bytes of the source are compressed into the target, starting
+   * at its position, whose position is moved past the compressed bytes.
+   *
+   * @param source The page to compress.
+   * @param target The buffer receiving the compressed page.
+   * @return The size of the compressed page, in bytes.
+   */
+  int compress(ByteBuffer source, ByteBuffer target);
+
+  /**
+   * Decompresses a page.
+   * The remaining bytes of the source are decompressed into the target, starting
+   * at its position, whose position is moved past the decompressed bytes.
+   *
+   * @param source The compressed page.
+   * @param target The buffer receiving the page.
+   * @throws IllegalArgumentException If the source is not a valid compressed
+   *                                  page or does not fit in the target.
+   */
+  void decompress(ByteBuffer source, ByteBuffer target);
+}
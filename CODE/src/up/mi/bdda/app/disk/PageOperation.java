@@ -0,0 +1,16 @@
+package up.mi.bdda.app.disk;
+
+import java.io.IOException;
+
+/**
+ * PageOperation is a page read or write that may fail with an IOException.
+ */
+@FunctionalInterface
+interface PageOperation {
+  /**
+   * Runs the operation.
+   *
+   * @throws IOException If the page cannot be read or written.
+   */
+  void run() throws IOException;
+}
@@ -0,0 +1,105 @@
+package up.mi.bdda.app.disk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The RunLengthCodec class compresses pages with a run-length encoding.
+ * The compressed page is a sequence of blocks starting with a control byte:
+ * a control byte n below 128 is followed by n + 1 literal bytes, and a control
+ * byte n from 128 is followed by a single byte repeated n - 125 times.
+ * Pages holding small records padded with zeros compress well, since their
+ * free space and zero padding turn into a few runs.
+ */
+public class RunLengthCodec implements PageCodec {
+
+  /**
+   * The maximum number of literal bytes of a block.
+   */
+  private static final int MAX_LITERAL_LENGTH = 128;
+
+  /**
+   * The minimum number of repeated bytes encoded as a run.
+   */
+  private static final int MIN_RUN_LENGTH = 3;
+
+  /**
+   * The maximum number of repeated bytes of a block.
+   */
+  private static final int MAX_RUN_LENGTH = 130;
+
+  @Override
+  public int maxCompressedSize(int pageSize) {
+    return pageSize + (pageSize + MAX_LITERAL_LENGTH - 1) / MAX_LITERAL_LENGTH;
+  }
+
+  @Override
+  public int compress(ByteBuffer source, ByteBuffer target) {
+    int start = target.position();
+    int position = source.position();
+    int limit = source.limit();
+    int literalStart = position;
+
+    while (position < limit) {
+      byte value = source.get(position);
+      int runLength = 1;
+      while (position + runLength < limit && runLength < MAX_RUN_LENGTH && source.get(position + runLength) == value) {
+        runLength++;
+      }
+
+      if (runLength >= MIN_RUN_LENGTH) {
+        writeLiterals(source, literalStart, position, target);
+        target.put((byte) (runLength + 125));
+        target.put(value);
+        position += runLength;
+        literalStart = position;
+      } else {
+        position += runLength;
+      }
+    }
+    writeLiterals(source, literalStart, limit, target);
+
+    source.position(limit);
+    return target.position() - start;
+  }
+
+  /**
+   * Writes literal bytes as blocks of at most MAX_LITERAL_LENGTH bytes.
+   *
+   * @param source The page being compressed.
+   * @param from   The index of the first literal byte.
+   * @param to     The index following the last literal byte.
+   * @param target The buffer receiving the compressed page.
+   */
+  private void writeLiterals(ByteBuffer source, int from, int to, ByteBuffer target) {
+    while (from < to) {
+      int length = Math.min(to - from, MAX_LITERAL_LENGTH);
+      target.put((byte) (length - 1));
+      target.put(source.slice(from, length));
+      from += length;
+    }
+  }
+
+  @Override
+  public void decompress(ByteBuffer source, ByteBuffer target) {
+    while (source.hasRemaining()) {
+      int control = source.get() & 0xFF;
+      if (control < MAX_LITERAL_LENGTH) {
+        int length = control + 1;
+        if (length > source.remaining() || length > target.remaining()) {
+          throw new IllegalArgumentException("Invalid compressed page");
+        }
+        target.put(source.slice(source.position(), length));
+        source.position(source.position() + length);
+      } else {
+        int length = control - 125;
+        if (!source.hasRemaining() || length > target.remaining()) {
+          throw new IllegalArgumentException("Invalid compressed page");
+        }
+        byte value = source.get();
+        for (int i = 0; i < length; i++) {
+          target.put(value);
+        }
+      }
+    }
+  }
+}
@@ -5,8 +5,13 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import up.mi.bdda.app.buffer.BufferManager;
+import up.mi.bdda.app.buffer.BufferRing;
+import up.mi.bdda.app.buffer.ReadAhead;
 import up.mi.bdda.app.database.api.DatabaseAPI;
 import up.mi.bdda.app.database.resource.Record;
 import up.mi.bdda.app.database.resource.RecordId;
@@ -26,6 +31,13 @@ import up.mi.bdda.app.settings.DBParams;
  */
 public final class DBFileManager implements DatabaseAPI {
 
+  /**
+   * The page directory of each table, by the ID of its header page, kept so
+   * that the data pages it has indexed are found again without reading the
+   * pages of the directory.
+   */
+  private final Map<PageId, PageDirectory> pageDirectories = new ConcurrentHashMap<>();
+
   /**
    * Private constructor to prevent instantiation.
    */
@@ -33,247 +45,254 @@ public final class DBFileManager implements DatabaseAPI {
   }
 
   /**
-   * Fetches the buffer for a given page.
+   * Returns the page directory of a table, created on the first use of the
+   * table. A directory kept for another TableInfo with the same header page,
+   * such as a table of a database since reset, is replaced.
    * 
-   * @param pageId The ID of the page to fetch the buffer for.
-   * @return The buffer for the given page.
-   * @throws IOException If an I/O error occurs.
+   * @param resource The table information resource.
+   * @return The page directory of the table.
    */
-  private ByteBuffer fetchBufferForPage(PageId pageId) throws IOException {
-    return BufferManager.getInstance().getPageBuffer(pageId);
+  private PageDirectory pageDirectoryOf(TableInfo resource) {
+    PageDirectory pageDirectory = pageDirectories.get(resource.getHeaderPageId());
+    if (pageDirectory == null || pageDirectory.getResource() != resource) {
+      pageDirectory = new PageDirectory(resource);
+      pageDirectories.put(resource.getHeaderPageId().clone(), pageDirectory);
+    }
+    return pageDirectory;
   }
 
   /**
-   * Generates a new page in the database.
+   * Fetches the buffer for a given page in order to modify it. The page is
+   * latched in exclusive mode until it is released with releaseUpdatedPage, so
+   * that the threads reading it meanwhile read it again.
    * 
-   * @return The ID of the newly generated page.
+   * @param pageId The ID of the page to fetch the buffer for.
+   * @return The buffer for the given page.
    * @throws IOException If an I/O error occurs.
    */
-  private PageId generateNewPage() throws IOException {
-    return DiskManager.getInstance().allocatePage();
+  private ByteBuffer fetchBufferForUpdate(PageId pageId) throws IOException {
+    return BufferManager.getInstance().getPageBuffer(pageId, true);
   }
 
   /**
-   * Releases a page in the database.
+   * Fetches the buffer for a metadata page in order to modify it, as
+   * fetchBufferForUpdate. The page must be released with releaseUpdatedPage.
    * 
-   * @param pageId     The ID of the page to release.
-   * @param isModified Whether the page has been modified.
+   * @param pageId The ID of the page to fetch the buffer for.
+   * @return The buffer for the given page.
    * @throws IOException If an I/O error occurs.
    */
-  private void releasePage(PageId pageId, boolean isModified) throws IOException {
-    BufferManager.getInstance().releasePage(pageId, isModified);
+  private ByteBuffer fetchMetadataBufferForUpdate(PageId pageId) throws IOException {
+    return BufferManager.getInstance().getMetadataPageBuffer(pageId, true);
   }
 
   /**
-   * Fetches the details of a header page.
+   * Generates a new page in the database.
    * 
-   * @param pageId The ID of the page to fetch the details for.
-   * @return An array of PageId objects containing the free page ID and the full
-   *         page ID.
+   * @return The ID of the newly generated page.
    * @throws IOException If an I/O error occurs.
    */
-  private PageId[] fetchHeaderPageDetails(PageId pageId) throws IOException {
-    HeaderPage headerPage = new HeaderPage(fetchBufferForPage(pageId));
-    PageId fullPageId = headerPage.getFullPageId();
-    PageId freePageId = headerPage.getFreePageId();
-    releasePage(pageId, false);
-    return new PageId[] { freePageId, fullPageId };
+  private PageId generateNewPage() throws IOException {
+    return DiskManager.getInstance().allocatePage();
   }
 
   /**
-   * Checks if a page is a header page.
+   * Generates a new page in the database for a table, next to the other pages
+   * of the table when possible.
    * 
-   * @param pageId The ID of the page to check.
-   * @return true if the page is a header page, false otherwise.
+   * @param resource The table information resource.
+   * @return The ID of the newly generated page.
    * @throws IOException If an I/O error occurs.
    */
-  private boolean checkIfHeaderPage(PageId pageId) throws IOException {
-    PageId[] headerPageDetails = fetchHeaderPageDetails(pageId);
-    PageId pageIdZero = new PageId(0, 0);
-    boolean isFreePageIdNotZero = !headerPageDetails[0].equals(pageIdZero);
-    boolean isFullPageInFileIdValid = headerPageDetails[1].getFileIdx() < DBParams.maxFileCount;
-    return isFreePageIdNotZero && isFullPageInFileIdValid;
+  private PageId generateNewPage(TableInfo resource) throws IOException {
+    return DiskManager.getInstance().allocatePage(resource.getHeaderPageId());
   }
 
   /**
-   * Checks if a page is a free page.
+   * Releases a page in the database.
    * 
-   * @param pageId The ID of the page to check.
-   * @return true if the page is a free page, false otherwise.
+   * @param pageId     The ID of the page to release.
+   * @param isModified Whether the page has been modified.
    * @throws IOException If an I/O error occurs.
    */
-  private boolean checkIfFreePage(PageId pageId) throws IOException {
-    PageId[] headerPageDetails = fetchHeaderPageDetails(pageId);
-    PageId pageIdZero = new PageId(0, 0);
-    return headerPageDetails[0].equals(pageIdZero) && headerPageDetails[1].equals(pageIdZero);
+  private void releasePage(PageId pageId, boolean isModified) throws IOException {
+    BufferManager.getInstance().releasePage(pageId, isModified);
   }
 
   /**
-   * Fetches the ID of a header page.
+   * Releases a page fetched with fetchBufferForUpdate.
    * 
-   * @param headerPageId The ID of the header page to fetch.
-   * @return The ID of the header page.
+   * @param pageId     The ID of the page to release.
+   * @param isModified Whether the page has been modified.
    * @throws IOException If an I/O error occurs.
    */
-  private PageId fetchHeaderPageId(PageId headerPageId) throws IOException {
-    if (checkIfFreePage(headerPageId)) {
-      HeaderPage headerPage = new HeaderPage(fetchBufferForPage(headerPageId));
-      headerPage.setFreePageId(new PageId(-1, -1));
-      headerPage.setFullPageId(new PageId(-1, -1));
-      releasePage(headerPageId, true);
-      return headerPageId;
-    }
-    if (checkIfHeaderPage(headerPageId)) {
-      return headerPageId;
-    }
-    return fetchHeaderPageId(generateNewPage());
+  private void releaseUpdatedPage(PageId pageId, boolean isModified) throws IOException {
+    BufferManager.getInstance().releasePage(pageId, isModified, true);
   }
 
   /**
-   * Fetches the ID of a free data page.
+   * Fetches the buffer for a newly allocated page, filled with zeros so that
+   * nothing is left from a previous use of the page. The page must be released
+   * with releaseUpdatedPage.
    * 
-   * @param resource   The table information resource.
-   * @param sizeRecord The size of the record.
-   * @return The ID of the free data page.
+   * @param pageId The ID of the page to fetch the buffer for.
+   * @return The zeroed buffer for the given page.
    * @throws IOException If an I/O error occurs.
    */
-  private PageId fetchFreeDataPageId(TableInfo resource, int sizeRecord) throws IOException {
-    HeaderPage headerPage = new HeaderPage(fetchBufferForPage(resource.getHeaderPageId()));
-    PageId freePageId = null;
-    Iterator<PageId> freePageIdIterator = headerPage.iterator();
-    while (freePageIdIterator.hasNext()) {
-      PageId freePageIdCandidate = freePageIdIterator.next();
-      DataPage releasePage = new DataPage(fetchBufferForPage(freePageIdCandidate), resource);
-      releasePage.load();
-
-      if (releasePage.checkSpaceAvailability(sizeRecord)) {
-        freePageId = freePageIdCandidate;
-        releasePage(freePageIdCandidate, false);
-        break;
-      } else if (freePageIdIterator.hasNext()) {
-        releasePage(freePageIdCandidate, false);
-      } else {
-        int leftOverSpace = releasePage.optimize();
-        if (leftOverSpace >= sizeRecord) {
-          freePageId = freePageIdCandidate;
-        }
-        releasePage(freePageIdCandidate, true);
-      }
-    }
-    releasePage(resource.getHeaderPageId(), false);
-    return freePageId;
+  private ByteBuffer fetchBlankBufferForPage(PageId pageId) throws IOException {
+    return clearBuffer(fetchBufferForUpdate(pageId));
   }
 
   /**
-   * Fetches the ID of a free page.
+   * Fills a page buffer with zeros.
    * 
-   * @param dataPageId The ID of the data page to fetch.
-   * @return The ID of the free page.
-   * @throws IOException If an I/O error occurs.
+   * @param buffer The buffer to fill.
+   * @return The buffer.
    */
-  private PageId fetchFreePageId(PageId dataPageId) throws IOException {
-    if (checkIfFreePage(dataPageId)) {
-      return dataPageId;
+  private ByteBuffer clearBuffer(ByteBuffer buffer) {
+    for (int i = 0; i < buffer.capacity(); i++) {
+      buffer.put(i, (byte) 0);
     }
-    return fetchFreePageId(generateNewPage());
+    return buffer;
   }
 
   /**
-   * Fetches the data pages of a table.
+   * Fetches the data pages of a table from its page directory, without reading
+   * the data pages.
    * 
    * @param resource The table information resource.
-   * @return A collection of PageId objects representing the data pages of the
-   *         table.
+   * @return A list of PageId objects representing the data pages of the table,
+   *         in the order of their chain.
    * @throws IOException If an I/O error occurs.
    */
-  private Collection<PageId> fetchDataPage(TableInfo resource) throws IOException {
-    Collection<PageId> dataPageIds = new ArrayList<>();
-    Iterator<PageId> freePageIdIterator = new HeaderPage(fetchBufferForPage(resource.getHeaderPageId())).iterator();
-    while (freePageIdIterator.hasNext()) {
-      dataPageIds.add(freePageIdIterator.next());
-    }
-    releasePage(resource.getHeaderPageId(), false);
-    return dataPageIds;
+  private List<PageId> fetchDataPage(TableInfo resource) throws IOException {
+    return pageDirectoryOf(resource).listPages();
   }
 
   /**
-   * Links a data page to a table.
+   * Links a data page to a table, after the last data page of the table.
    * 
    * @param dataPageId The ID of the data page to link.
+   * @param lastPageId The ID of the last data page of the table, or null if the
+   *                   table has no data page.
    * @param resource   The table information resource.
    * @throws IOException If an I/O error occurs.
    */
-  private void linkPage(PageId dataPageId, TableInfo resource) throws IOException {
-    Collection<PageId> dataPageIds = fetchDataPage(resource);
-    PageId freePageId = dataPageIds.stream().reduce((first, second) -> second).orElse(resource.getHeaderPageId());
-    HeaderPage releasePage = new HeaderPage(fetchBufferForPage(freePageId));
+  private void linkPage(PageId dataPageId, PageId lastPageId, TableInfo resource) throws IOException {
+    PageId freePageId = lastPageId;
+    HeaderPage releasePage;
+    if (freePageId == null) {
+      freePageId = resource.getHeaderPageId();
+      releasePage = new HeaderPage(fetchMetadataBufferForUpdate(freePageId));
+    } else {
+      releasePage = new HeaderPage(fetchBufferForUpdate(freePageId));
+    }
     releasePage.setFreePageId(dataPageId);
-    releasePage(freePageId, true);
+    releaseUpdatedPage(freePageId, true);
   }
 
   /**
-   * Generates a new data page for a table.
+   * Generates a new data page for a table, adds it to the page directory of the
+   * table and links it to the last data page, found in the directory.
    * 
-   * @param resource The table information resource.
+   * @param resource      The table information resource.
+   * @param pageDirectory The page directory of the table.
    * @return The ID of the newly generated data page.
    * @throws IOException If an I/O error occurs.
    */
-  private PageId generateDataPage(TableInfo resource) throws IOException {
-    PageId dataPageId = fetchFreePageId(generateNewPage());
-    linkPage(dataPageId, resource);
-    DataPage dataPage = new DataPage(fetchBufferForPage(dataPageId), resource);
-    dataPage.save();
-    releasePage(dataPageId, true);
+  private PageId generateDataPage(TableInfo resource, PageDirectory pageDirectory) throws IOException {
+    PageId lastPageId = pageDirectory.getLastPage();
+    PageId dataPageId = generateNewPage(resource);
+    DataPage dataPage = new DataPage(fetchBlankBufferForPage(dataPageId), resource);
+    dataPage.initialize();
+    int freeSpace = dataPage.calculateReclaimableSpace();
+    releaseUpdatedPage(dataPageId, true);
+    pageDirectory.addPage(dataPageId, freeSpace);
+    linkPage(dataPageId, lastPageId, resource);
     return dataPageId;
   }
 
   /**
-   * Stores a record to a data page.
+   * Stores a record to a data page, optimizing the page first if the record
+   * only fits in the space of the removed records, and updates the free space
+   * and the record count of the page in the page directory of the table.
    * 
-   * @param record     The record to store.
-   * @param dataPageId The ID of the data page to store the record to.
-   * @return The ID of the record.
+   * @param record        The record to store.
+   * @param dataPageId    The ID of the data page to store the record to.
+   * @param pageDirectory The page directory of the table.
+   * @param isNewPage     Whether the data page was just generated for the
+   *                      record.
+   * @return The ID of the record, or null if the page has no room for it.
    * @throws IOException If an I/O error occurs.
    */
-  private RecordId storeRecordToDataPage(Record record, PageId dataPageId) throws IOException {
-    DataPage dataPage = new DataPage(fetchBufferForPage(dataPageId), record.resource());
-    dataPage.load();
-    RecordId recordId = dataPage.storeRecord(record, dataPageId);
-    releasePage(dataPageId, true);
+  private RecordId storeRecordToDataPage(Record record, PageId dataPageId, PageDirectory pageDirectory,
+      boolean isNewPage) throws IOException {
+    DataPage dataPage = new DataPage(fetchBufferForUpdate(dataPageId), record.resource());
+    RecordId recordId = null;
+    boolean isModified = false;
+    int freeSpace;
+    int recordCount;
+    try {
+      if (!dataPage.checkSpaceAvailability(record.size())
+          && dataPage.calculateReclaimableSpace() >= record.size()) {
+        dataPage.optimize();
+        isModified = true;
+      }
+      // a new page too small for the record is reported by storeRecord
+      if (isNewPage || dataPage.checkSpaceAvailability(record.size())) {
+        recordId = dataPage.storeRecord(record, dataPageId);
+        isModified = true;
+      }
+      freeSpace = dataPage.calculateReclaimableSpace();
+      recordCount = dataPage.countRecords();
+    } finally {
+      releaseUpdatedPage(dataPageId, isModified);
+    }
+    pageDirectory.updatePage(dataPageId, freeSpace, recordCount);
     return recordId;
   }
 
   /**
    * Fetches the records from a data page of a table.
+   * The page is read without being pinned nor latched when it is in memory, and
+   * read again if it is modified meanwhile.
    * 
    * @param resource   The table information resource.
    * @param dataPageId The ID of the data page to fetch the records from.
+   * @param ring       The buffer ring of the scan.
    * @return A collection of Record objects representing the records in the data
    *         page.
    * @throws IOException If an I/O error occurs.
    */
-  private Collection<Record> fetchRecordsFromDataPage(TableInfo resource, PageId dataPageId) throws IOException {
-    DataPage dataPage = new DataPage(fetchBufferForPage(dataPageId), resource);
-    dataPage.load();
-    Collection<Record> records = new ArrayList<>();
-    Iterator<Record> recordIterator = dataPage.iterator();
-    while (recordIterator.hasNext()) {
-      Record record = recordIterator.next();
-      record.getRecordId().setPageId(dataPageId);
-      records.add(record);
-    }
-    releasePage(dataPageId, false);
-    return records;
+  private Collection<Record> fetchRecordsFromDataPage(TableInfo resource, PageId dataPageId, BufferRing ring)
+      throws IOException {
+    return BufferManager.getInstance().readPage(dataPageId, ring, buffer -> {
+      DataPage dataPage = new DataPage(buffer, resource);
+      Collection<Record> records = new ArrayList<>();
+      Iterator<Record> recordIterator = dataPage.iterator();
+      while (recordIterator.hasNext()) {
+        Record record = recordIterator.next();
+        record.getRecordId().setPageId(dataPageId);
+        records.add(record);
+      }
+      return records;
+    });
   }
 
   @Override
   public RecordId addRecordToTable(Record record) throws IOException {
     TableInfo resource = record.resource();
-    PageId dataPageId = fetchFreeDataPageId(resource, record.size());
-    if (dataPageId == null) {
-      dataPageId = generateDataPage(resource);
+    PageDirectory pageDirectory = pageDirectoryOf(resource);
+    RecordId recordId = null;
+    while (recordId == null) {
+      PageId dataPageId = pageDirectory.findPage(record.size());
+      boolean isNewPage = dataPageId == null;
+      if (isNewPage) {
+        dataPageId = generateDataPage(resource, pageDirectory);
+      }
+      // the free space of a page found may be out of date, it is then updated
+      recordId = storeRecordToDataPage(record, dataPageId, pageDirectory, isNewPage);
     }
-    RecordId recordId = storeRecordToDataPage(record, dataPageId);
     return recordId;
   }
 
@@ -282,23 +301,129 @@ public final class DBFileManager implements DatabaseAPI {
     TableInfo resource = record.resource();
     RecordId recordId = record.getRecordId();
     PageId dataPageId = recordId.getPageId();
-    DataPage dataPage = new DataPage(fetchBufferForPage(dataPageId), resource);
-    dataPage.load();
-    dataPage.removeRecord(recordId);
-    releasePage(dataPageId, true);
+    DataPage dataPage = new DataPage(fetchBufferForUpdate(dataPageId), resource);
+    int freeSpace;
+    int recordCount;
+    try {
+      dataPage.removeRecord(recordId);
+      freeSpace = dataPage.calculateReclaimableSpace();
+      recordCount = dataPage.countRecords();
+    } finally {
+      releaseUpdatedPage(dataPageId, true);
+    }
+    pageDirectoryOf(resource).updatePage(dataPageId, freeSpace, recordCount);
   }
 
   @Override
   public Collection<Record> retrieveAllRecords(TableInfo resource) throws IOException {
+    return scanDataPages(resource, fetchDataPage(resource));
+  }
+
+  /**
+   * Retrieves the records of a range of data pages of a table, so that a scan
+   * can be split into ranges scanned separately. The data pages are numbered
+   * from 0 in the order they were added to the table.
+   * 
+   * @param resource     The table information resource.
+   * @param firstPageIdx The index of the first data page of the range.
+   * @param pageCount    The number of data pages of the range.
+   * @return A collection of the records of the data pages of the range.
+   * @throws IOException If an I/O error occurs.
+   */
+  public Collection<Record> retrieveRecords(TableInfo resource, int firstPageIdx, int pageCount)
+      throws IOException {
+    return scanDataPages(resource, pageDirectoryOf(resource).listPages(firstPageIdx, pageCount));
+  }
+
+  /**
+   * Returns the number of data pages of a table, from its page directory.
+   * 
+   * @param resource The table information resource.
+   * @return The number of data pages of the table.
+   * @throws IOException If an I/O error occurs.
+   */
+  public int getDataPageCount(TableInfo resource) throws IOException {
+    return pageDirectoryOf(resource).getPageCount();
+  }
+
+  /**
+   * Returns the ID of a data page of a table, located through its page
+   * directory without reading the other data pages.
+   * 
+   * @param resource The table information resource.
+   * @param pageIdx  The index of the data page, from 0 in the order the data
+   *                 pages were added to the table.
+   * @return The ID of the data page, or null if the table has fewer data pages.
+   * @throws IOException If an I/O error occurs.
+   */
+  public PageId getDataPageId(TableInfo resource, int pageIdx) throws IOException {
+    return pageDirectoryOf(resource).getPage(pageIdx);
+  }
+
+  /**
+   * Counts the records of a table from its page directory, without reading the
+   * data pages.
+   * 
+   * @param resource The table information resource.
+   * @return The number of records of the table.
+   * @throws IOException If an I/O error occurs.
+   */
+  public long countRecords(TableInfo resource) throws IOException {
+    return pageDirectoryOf(resource).countRecords();
+  }
+
+  /**
+   * Reads the records of data pages of a table through a buffer ring, so that
+   * the scan does not evict the other pages. The data pages are known up front,
+   * so the read-ahead loads the following pages into the ring while the scan
+   * reads a page, without reading it first; no page of the scan is loaded into
+   * the buffer pool.
+   * 
+   * @param resource    The table information resource.
+   * @param dataPageIds The IDs of the data pages, in the order they are read.
+   * @return A collection of the records of the data pages.
+   * @throws IOException If an I/O error occurs.
+   */
+  private Collection<Record> scanDataPages(TableInfo resource, List<PageId> dataPageIds) throws IOException {
     Collection<Record> records = new ArrayList<>();
-    Collection<PageId> dataPageIds = fetchDataPage(resource);
-    for (PageId dataPageId : dataPageIds) {
-      Collection<Record> dataPageRecords = fetchRecordsFromDataPage(resource, dataPageId);
-      records.addAll(dataPageRecords);
+    try (BufferRing ring = new BufferRing()) {
+      try (ReadAhead readAhead = new ReadAhead(ring, dataPageIds)) {
+        for (PageId dataPageId : dataPageIds) {
+          // the following pages are listed, so they are read ahead while this one is read
+          readAhead.pageTouched(dataPageId);
+          records.addAll(fetchRecordsFromDataPage(resource, dataPageId, ring));
+        }
+      }
     }
     return records;
   }
 
+  /**
+   * Computes the compression ratio of a table, i.e. the size of its pages
+   * divided by the size they take on disk.
+   * Only the pages already written to disk are taken into account.
+   * 
+   * @param resource The table information resource.
+   * @return The compression ratio of the table, 1 without page compression or
+   *         when none of its pages is on disk yet.
+   * @throws IOException If an I/O error occurs.
+   */
+  public double getCompressionRatio(TableInfo resource) throws IOException {
+    Collection<PageId> pageIds = fetchDataPage(resource);
+    pageIds.add(resource.getHeaderPageId());
+    pageIds.addAll(pageDirectoryOf(resource).getDirectoryPageIds());
+    long pageBytes = 0;
+    long storedBytes = 0;
+    for (PageId pageId : pageIds) {
+      int storedPageSize = DiskManager.getInstance().getStoredPageSize(pageId);
+      if (storedPageSize > 0) {
+        pageBytes += DBParams.pageSize;
+        storedBytes += storedPageSize;
+      }
+    }
+    return storedBytes == 0 ? 1 : (double) pageBytes / storedBytes;
+  }
+
   /**
    * Generates a new header page in the database.
    * 
@@ -306,7 +431,11 @@ public final class DBFileManager implements DatabaseAPI {
    * @throws IOException If an I/O error occurs.
    */
   public PageId generateHeaderPage() throws IOException {
-    PageId headerPageId = fetchHeaderPageId(generateNewPage());
+    PageId headerPageId = generateNewPage();
+    HeaderPage headerPage = new HeaderPage(clearBuffer(fetchMetadataBufferForUpdate(headerPageId)));
+    headerPage.setFreePageId(new PageId(-1, -1));
+    headerPage.setFullPageId(new PageId(-1, -1));
+    releaseUpdatedPage(headerPageId, true);
     return headerPageId;
   }
 
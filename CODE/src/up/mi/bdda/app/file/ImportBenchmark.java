@@ -0,0 +1,101 @@
+package up.mi.bdda.app.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import up.mi.bdda.app.database.DBManager;
+import up.mi.bdda.app.database.resource.TableInfo;
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * ImportBenchmark times the IMPORT of a CSV file of random rows, written by
+ * ImportDataGenerator, into a new table of a temporary database, through the
+ * queries of DBManager as QueryManager runs them. Each row is inserted by
+ * DBFileManager.addRecordToTable, so the time mostly measures how the insert
+ * finds a data page with room for the record.
+ * The number of records in the table is checked after the import.
+ * <p>
+ * Run it with ./run.sh --class up.mi.bdda.app.file.ImportBenchmark [rows]
+ * [frames]; it imports 1000000 rows with a buffer pool of 256 frames by
+ * default. It only uses the queries and DBFileManager.retrieveAllRecords, so
+ * that, to compare with an older version, both classes can be copied into the
+ * CODE/src/up/mi/bdda/app/file folder of a checkout of that version and run
+ * there the same way.
+ */
+public final class ImportBenchmark {
+  /**
+   * The seed of the rows, so that every run imports the same data.
+   */
+  private static final long SEED = 42;
+
+  /**
+   * Private constructor: the benchmark is run from main.
+   */
+  private ImportBenchmark() {
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the number of rows (1000000) and the number of frames of the
+   *             buffer pool (256).
+   * @throws Exception if a query fails.
+   */
+  public static void main(String[] args) throws Exception {
+    int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int frameCount = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+    Path folder = Files.createTempDirectory("import-benchmark");
+    Path dataFile = folder.resolve("rows.csv");
+    Path databaseFolder = Files.createDirectory(folder.resolve("DB"));
+    DBParams.databaseFolderPath = databaseFolder.toString();
+    DBParams.pageSize = 4096;
+    DBParams.maxFileCount = 4;
+    DBParams.maxFrameCount = frameCount;
+    DBParams.displayRecordsValues = false;
+
+    boolean isPassed;
+    try {
+      ImportDataGenerator.generate(dataFile, rowCount, SEED);
+      DBManager dbManager = DBManager.getInstance();
+      dbManager.startInitialization();
+      dbManager.executeQuery("RESETDB");
+      dbManager.executeQuery("CREATE TABLE S " + ImportDataGenerator.COLUMNS);
+
+      long start = System.nanoTime();
+      dbManager.executeQuery("IMPORT INTO S " + dataFile);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      TableInfo resource = dbManager.getDBInfo().getTableDetails("S");
+      int recordCount = DBFileManager.getInstance().retrieveAllRecords(resource).size();
+      isPassed = recordCount == rowCount;
+      System.out.println(String.format(":: (Info) %d rows imported in %.1f s (%.0f rows/s) with %d frames",
+          rowCount, seconds, rowCount / seconds, frameCount));
+      if (!isPassed) {
+        System.out.println(String.format(":: (Error) The table holds %d records instead of %d", recordCount,
+            rowCount));
+      }
+      dbManager.endProcess();
+    } finally {
+      deleteFolder(folder);
+    }
+    System.exit(isPassed ? 0 : 1);
+  }
+
+  /**
+   * Deletes the temporary folder.
+   *
+   * @param folder the folder.
+   * @throws IOException if a file cannot be deleted.
+   */
+  private static void deleteFolder(Path folder) throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package up.mi.bdda.app.file;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * ImportDataGenerator writes a CSV file of random rows to import into a table
+ * of columns INT, FLOAT, INT, INT, INT, like the S table of the examples, such
+ * as 97,180.5,25,23,0.
+ * The rows only depend on the seed, so that two runs import the same data.
+ * <p>
+ * Run it with ./run.sh --class up.mi.bdda.app.file.ImportDataGenerator
+ * &lt;file&gt; [rows] [seed]; it writes 1000000 rows with the seed 42 by
+ * default.
+ */
+public final class ImportDataGenerator {
+  /**
+   * The columns of the table the rows are imported into.
+   */
+  public static final String COLUMNS = "(LL:INT,C4:FLOAT,LAPIN:INT,OH:INT,R:INT)";
+
+  /**
+   * Private constructor: the class only has static methods.
+   */
+  private ImportDataGenerator() {
+  }
+
+  /**
+   * Writes the CSV file.
+   *
+   * @param args the path of the file, the number of rows (1000000) and the seed
+   *             (42).
+   * @throws IOException if the file cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println(":: (Error) Usage: ImportDataGenerator <file> [rows] [seed]");
+      System.exit(1);
+    }
+    int rowCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    generate(Paths.get(args[0]), rowCount, seed);
+    System.out.println(String.format(":: (Info) %d rows written to %s", rowCount, args[0]));
+  }
+
+  /**
+   * Writes rows of random values to a CSV file.
+   *
+   * @param path     the path of the file, replaced if it exists.
+   * @param rowCount the number of rows.
+   * @param seed     the seed of the random values.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void generate(Path path, int rowCount, long seed) throws IOException {
+    Random random = new Random(seed);
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      for (int i = 0; i < rowCount; i++) {
+        writer.write(String.format(Locale.ROOT, "%d,%.1f,%d,%d,%d", random.nextInt(1000),
+            random.nextInt(10000) / 10f, random.nextInt(100), random.nextInt(100), random.nextInt(10)));
+        writer.newLine();
+      }
+    }
+  }
+}
@@ -0,0 +1,507 @@
+package up.mi.bdda.app.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import up.mi.bdda.app.buffer.BufferManager;
+import up.mi.bdda.app.database.resource.TableInfo;
+import up.mi.bdda.app.disk.DiskManager;
+import up.mi.bdda.app.page.DataPage;
+import up.mi.bdda.app.page.DirectoryPage;
+import up.mi.bdda.app.page.HeaderPage;
+import up.mi.bdda.app.page.PageId;
+import up.mi.bdda.app.settings.DBParams;
+
+/**
+ * PageDirectory lists the data pages of a table in the pages of its page
+ * directory, with the number of records and the free space of each, so that
+ * the data pages are known without walking their chain and a data page with
+ * room for a record is found without reading the data pages.
+ * The data pages are listed in the order they were added, which is the order
+ * of their chain, and every page of the directory but the last is full, so
+ * data page N is the entry N % capacity of the page N / capacity of the
+ * directory, and the last data page, to which a new one is linked, is the last
+ * entry of the directory.
+ * The free space of each data page, including the space of its removed
+ * records, is kept as a bucket of DBParams.pageSize / 256 bytes, rounded down.
+ * The header page of the table lists the pages of the directory with the
+ * largest bucket of each, so that finding a data page reads the header page
+ * and a single page of the directory. The pages of the directory are metadata
+ * pages, kept in the metadata pool of the buffer pool.
+ * A table created before page directories existed gets its directory built
+ * from its chain of data pages when the directory is first used.
+ * A PageDirectory remembers the last entry it found or added, so that updating
+ * that data page afterwards reads no other page of the directory. To update
+ * another data page, it keeps the index of every data page in the directory,
+ * built from the directory the first time a data page is looked for, so that
+ * a data page is found without searching the pages of the directory. It is
+ * therefore meant to be kept for the lifetime of its table, as DBFileManager
+ * does, and the directory of the table must only be modified through it; the
+ * methods using the last entry or the index are synchronized.
+ */
+final class PageDirectory {
+  /**
+   * The number of buckets of free space.
+   */
+  private static final int BUCKET_COUNT = 256;
+
+  /**
+   * The table whose data pages are listed.
+   */
+  private final TableInfo resource;
+
+  /**
+   * Whether the table is known to have a directory.
+   */
+  private boolean hasDirectory;
+
+  /**
+   * The data page of the last entry found or added, or null.
+   */
+  private PageId lastPageId;
+
+  /**
+   * The index in the directory of the page of the directory holding the last
+   * entry.
+   */
+  private int lastDirectoryIdx;
+
+  /**
+   * The index of the last entry in its page of the directory.
+   */
+  private int lastEntryIdx;
+
+  /**
+   * The index of each data page in the directory, or null until a data page is
+   * looked for.
+   */
+  private Map<PageId, Integer> pageIndexes;
+
+  /**
+   * Constructs a PageDirectory over the directory of a table.
+   *
+   * @param resource The table information resource.
+   */
+  PageDirectory(TableInfo resource) {
+    this.resource = resource;
+  }
+
+  /**
+   * Returns the table whose data pages are listed.
+   *
+   * @return The table information resource.
+   */
+  TableInfo getResource() {
+    return resource;
+  }
+
+  /**
+   * Returns the number of bytes of a bucket of free space.
+   *
+   * @return The size of a bucket.
+   */
+  private static int bucketSize() {
+    return Math.max(1, DBParams.pageSize / BUCKET_COUNT);
+  }
+
+  /**
+   * Returns the bucket of an amount of free space, rounded down.
+   *
+   * @param freeSpace The free space, in bytes.
+   * @return The bucket, between 0 and 255.
+   */
+  private static int bucketOf(int freeSpace) {
+    return Math.min(BUCKET_COUNT - 1, Math.max(0, freeSpace) / bucketSize());
+  }
+
+  /**
+   * Finds a data page whose free space, including the space of its removed
+   * records, is large enough for a record.
+   *
+   * @param recordSize The size of the record.
+   * @return The ID of the data page, or null if no data page has room.
+   * @throws IOException If an I/O error occurs.
+   */
+  synchronized PageId findPage(int recordSize) throws IOException {
+    // the buckets are rounded down, so the bucket needed is rounded up
+    int minBucket = (recordSize + bucketSize() - 1) / bucketSize();
+    if (minBucket >= BUCKET_COUNT) {
+      return null;
+    }
+    buildIfMissing();
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId));
+    try {
+      int directoryPageCount = headerPage.getDirectoryPageCount();
+      for (int directoryIdx = 0; directoryIdx < directoryPageCount; directoryIdx++) {
+        if (headerPage.getDirectoryPageMaxBucket(directoryIdx) < minBucket) {
+          continue;
+        }
+        PageId directoryPageId = headerPage.getDirectoryPageId(directoryIdx);
+        DirectoryPage directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId));
+        try {
+          int entryIdx = directoryPage.findEntry(minBucket);
+          if (entryIdx != -1) {
+            remember(directoryPage.getPageId(entryIdx), directoryIdx, entryIdx);
+            return lastPageId;
+          }
+        } finally {
+          bufferManager.releasePage(directoryPageId, false);
+        }
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, false);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of data pages of the table.
+   *
+   * @return The number of data pages.
+   * @throws IOException If an I/O error occurs.
+   */
+  int getPageCount() throws IOException {
+    buildIfMissing();
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId));
+    try {
+      int directoryIdx = headerPage.getDirectoryPageCount() - 1;
+      if (directoryIdx < 0) {
+        return 0;
+      }
+      // every page of the directory but the last is full
+      PageId directoryPageId = headerPage.getDirectoryPageId(directoryIdx);
+      DirectoryPage directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId));
+      try {
+        return directoryIdx * directoryPage.getCapacity() + directoryPage.getEntryCount();
+      } finally {
+        bufferManager.releasePage(directoryPageId, false);
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, false);
+    }
+  }
+
+  /**
+   * Returns the ID of a data page of the table, reading the header page and a
+   * single page of the directory.
+   *
+   * @param pageIdx The index of the data page, in the order the data pages
+   *                were added.
+   * @return The ID of the data page, or null if the table has fewer data pages.
+   * @throws IOException If an I/O error occurs.
+   */
+  PageId getPage(int pageIdx) throws IOException {
+    List<PageId> dataPageIds = listPages(pageIdx, 1);
+    return dataPageIds.isEmpty() ? null : dataPageIds.get(0);
+  }
+
+  /**
+   * Returns the ID of the last data page of the table, to which a new data page
+   * is linked.
+   *
+   * @return The ID of the last data page, or null if the table has no data
+   *         page.
+   * @throws IOException If an I/O error occurs.
+   */
+  PageId getLastPage() throws IOException {
+    int pageCount = getPageCount();
+    return pageCount == 0 ? null : getPage(pageCount - 1);
+  }
+
+  /**
+   * Returns the IDs of all the data pages of the table, in the order of their
+   * chain, reading the pages of the directory only.
+   *
+   * @return The IDs of the data pages.
+   * @throws IOException If an I/O error occurs.
+   */
+  List<PageId> listPages() throws IOException {
+    return listPages(0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the IDs of a range of data pages of the table, in the order of
+   * their chain, so that a scan can be split into ranges of pages. Only the
+   * pages of the directory holding the range are read.
+   *
+   * @param firstPageIdx The index of the first data page of the range.
+   * @param pageCount    The number of data pages of the range.
+   * @return The IDs of the data pages of the range that exist.
+   * @throws IOException If an I/O error occurs.
+   */
+  List<PageId> listPages(int firstPageIdx, int pageCount) throws IOException {
+    buildIfMissing();
+    List<PageId> dataPageIds = new ArrayList<>();
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId));
+    try {
+      int capacity = DirectoryPage.getCapacity(DBParams.pageSize);
+      long endPageIdx = Math.min((long) firstPageIdx + pageCount, Integer.MAX_VALUE);
+      int directoryPageCount = headerPage.getDirectoryPageCount();
+      for (int directoryIdx = firstPageIdx / capacity; directoryIdx < directoryPageCount
+          && (long) directoryIdx * capacity < endPageIdx; directoryIdx++) {
+        PageId directoryPageId = headerPage.getDirectoryPageId(directoryIdx);
+        DirectoryPage directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId));
+        try {
+          int firstEntryIdx = Math.max(0, firstPageIdx - directoryIdx * capacity);
+          int endEntryIdx = (int) Math.min(directoryPage.getEntryCount(), endPageIdx - (long) directoryIdx * capacity);
+          for (int entryIdx = firstEntryIdx; entryIdx < endEntryIdx; entryIdx++) {
+            dataPageIds.add(directoryPage.getPageId(entryIdx));
+          }
+        } finally {
+          bufferManager.releasePage(directoryPageId, false);
+        }
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, false);
+    }
+    return dataPageIds;
+  }
+
+  /**
+   * Returns the number of records of the table, reading the pages of the
+   * directory only.
+   *
+   * @return The number of records.
+   * @throws IOException If an I/O error occurs.
+   */
+  long countRecords() throws IOException {
+    buildIfMissing();
+    BufferManager bufferManager = BufferManager.getInstance();
+    long recordCount = 0;
+    for (PageId directoryPageId : getDirectoryPageIds()) {
+      DirectoryPage directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId));
+      try {
+        recordCount += directoryPage.countRecords();
+      } finally {
+        bufferManager.releasePage(directoryPageId, false);
+      }
+    }
+    return recordCount;
+  }
+
+  /**
+   * Adds a new data page of the table at the end of the directory, allocating a
+   * new page of the directory when the last one is full.
+   * The data page is linked to the last data page of the table afterwards.
+   *
+   * @param dataPageId The ID of the data page.
+   * @param freeSpace  The free space of the data page.
+   * @throws IOException If an I/O error occurs, or if the header page of the
+   *                     table cannot list another page of the directory.
+   */
+  synchronized void addPage(PageId dataPageId, int freeSpace) throws IOException {
+    buildIfMissing();
+    appendPage(dataPageId, freeSpace, 0);
+    hasDirectory = true;
+  }
+
+  /**
+   * Updates the free space and the number of records of a data page of the
+   * table.
+   * The data page is located through the index of the data pages, unless it is
+   * the data page of the last entry found or added.
+   *
+   * @param dataPageId  The ID of the data page.
+   * @param freeSpace   The free space of the data page, including the space of
+   *                    its removed records.
+   * @param recordCount The number of records of the data page.
+   * @throws IOException If an I/O error occurs, or if the data page is not in
+   *                     the directory of the table.
+   */
+  synchronized void updatePage(PageId dataPageId, int freeSpace, int recordCount) throws IOException {
+    buildIfMissing();
+    if (!dataPageId.equals(lastPageId) && !locate(dataPageId)) {
+      throw new IOException(String.format("Data page %s is not in the page directory of table %s", dataPageId,
+          resource.name()));
+    }
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId, true));
+    boolean isHeaderModified = false;
+    try {
+      PageId directoryPageId = headerPage.getDirectoryPageId(lastDirectoryIdx);
+      DirectoryPage directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId, true));
+      int bucket = bucketOf(freeSpace);
+      int oldBucket = directoryPage.getBucket(lastEntryIdx);
+      boolean isModified = bucket != oldBucket || recordCount != directoryPage.getRecordCount(lastEntryIdx);
+      try {
+        if (!isModified) {
+          return;
+        }
+        directoryPage.setRecordCount(lastEntryIdx, recordCount);
+        directoryPage.setBucket(lastEntryIdx, bucket);
+        int maxBucket = headerPage.getDirectoryPageMaxBucket(lastDirectoryIdx);
+        // the largest bucket is only looked for again when it may have shrunk
+        int newMaxBucket = bucket > maxBucket ? bucket
+            : oldBucket == maxBucket ? directoryPage.getMaxBucket() : maxBucket;
+        if (newMaxBucket != maxBucket) {
+          headerPage.setDirectoryPageMaxBucket(lastDirectoryIdx, newMaxBucket);
+          isHeaderModified = true;
+        }
+      } finally {
+        bufferManager.releasePage(directoryPageId, isModified, true);
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, isHeaderModified, true);
+    }
+  }
+
+  /**
+   * Returns the IDs of the pages of the directory.
+   *
+   * @return The IDs of the pages of the directory.
+   * @throws IOException If an I/O error occurs.
+   */
+  Collection<PageId> getDirectoryPageIds() throws IOException {
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId));
+    try {
+      Collection<PageId> directoryPageIds = new ArrayList<>();
+      for (int directoryIdx = 0; directoryIdx < headerPage.getDirectoryPageCount(); directoryIdx++) {
+        directoryPageIds.add(headerPage.getDirectoryPageId(directoryIdx));
+      }
+      return directoryPageIds;
+    } finally {
+      bufferManager.releasePage(headerPageId, false);
+    }
+  }
+
+  /**
+   * Remembers the last entry found or added.
+   *
+   * @param dataPageId   The ID of the data page of the entry.
+   * @param directoryIdx The index in the directory of the page of the directory
+   *                     holding the entry.
+   * @param entryIdx     The index of the entry in its page of the directory.
+   */
+  private void remember(PageId dataPageId, int directoryIdx, int entryIdx) {
+    lastPageId = dataPageId;
+    lastDirectoryIdx = directoryIdx;
+    lastEntryIdx = entryIdx;
+  }
+
+  /**
+   * Looks for the entry of a data page in the index of the data pages, built
+   * from the directory if needed, and remembers it.
+   *
+   * @param dataPageId The ID of the data page.
+   * @return true if the entry was found, false otherwise.
+   * @throws IOException If an I/O error occurs.
+   */
+  private boolean locate(PageId dataPageId) throws IOException {
+    if (pageIndexes == null) {
+      List<PageId> dataPageIds = listPages();
+      pageIndexes = new HashMap<>(dataPageIds.size() * 2);
+      for (int pageIdx = 0; pageIdx < dataPageIds.size(); pageIdx++) {
+        pageIndexes.put(dataPageIds.get(pageIdx), pageIdx);
+      }
+    }
+    Integer pageIdx = pageIndexes.get(dataPageId);
+    if (pageIdx == null) {
+      return false;
+    }
+    // every page of the directory but the last is full
+    int capacity = DirectoryPage.getCapacity(DBParams.pageSize);
+    remember(dataPageId.clone(), pageIdx / capacity, pageIdx % capacity);
+    return true;
+  }
+
+  /**
+   * Adds a data page at the end of the directory.
+   *
+   * @param dataPageId  The ID of the data page.
+   * @param freeSpace   The free space of the data page.
+   * @param recordCount The number of records of the data page.
+   * @throws IOException If an I/O error occurs, or if the header page of the
+   *                     table cannot list another page of the directory.
+   */
+  private void appendPage(PageId dataPageId, int freeSpace, int recordCount) throws IOException {
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId, true));
+    try {
+      int directoryIdx = headerPage.getDirectoryPageCount() - 1;
+      PageId directoryPageId = null;
+      DirectoryPage directoryPage = null;
+      if (directoryIdx >= 0) {
+        directoryPageId = headerPage.getDirectoryPageId(directoryIdx);
+        directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId, true));
+        if (directoryPage.getEntryCount() == directoryPage.getCapacity()) {
+          bufferManager.releasePage(directoryPageId, false, true);
+          directoryPage = null;
+        }
+      }
+      if (directoryPage == null) {
+        if (headerPage.getDirectoryPageCount() == headerPage.getDirectoryPageCapacity()) {
+          throw new IOException(String.format("The page directory of table %s is full", resource.name()));
+        }
+        directoryPageId = DiskManager.getInstance().allocatePage(headerPageId);
+        directoryPage = new DirectoryPage(bufferManager.getMetadataPageBuffer(directoryPageId, true));
+        directoryPage.initialize();
+        directoryIdx = headerPage.addDirectoryPage(directoryPageId, 0);
+      }
+      try {
+        int bucket = bucketOf(freeSpace);
+        int entryIdx = directoryPage.addEntry(dataPageId, recordCount, bucket);
+        headerPage.setDirectoryPageMaxBucket(directoryIdx,
+            Math.max(headerPage.getDirectoryPageMaxBucket(directoryIdx), bucket));
+        remember(dataPageId.clone(), directoryIdx, entryIdx);
+        if (pageIndexes != null) {
+          pageIndexes.put(dataPageId.clone(), directoryIdx * directoryPage.getCapacity() + entryIdx);
+        }
+      } finally {
+        bufferManager.releasePage(directoryPageId, true, true);
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, true, true);
+    }
+  }
+
+  /**
+   * Builds the directory of a table created before page directories existed,
+   * from its chain of data pages.
+   *
+   * @throws IOException If an I/O error occurs.
+   */
+  private synchronized void buildIfMissing() throws IOException {
+    if (hasDirectory) {
+      return;
+    }
+    BufferManager bufferManager = BufferManager.getInstance();
+    PageId headerPageId = resource.getHeaderPageId();
+    List<PageId> dataPageIds = new ArrayList<>();
+    HeaderPage headerPage = new HeaderPage(bufferManager.getMetadataPageBuffer(headerPageId));
+    try {
+      if (headerPage.getDirectoryPageCount() != 0) {
+        hasDirectory = true;
+        return;
+      }
+      Iterator<PageId> dataPageIdIterator = headerPage.iterator();
+      while (dataPageIdIterator.hasNext()) {
+        dataPageIds.add(dataPageIdIterator.next());
+      }
+    } finally {
+      bufferManager.releasePage(headerPageId, false);
+    }
+    for (PageId dataPageId : dataPageIds) {
+      int[] freeSpaceAndRecordCount = bufferManager.readPage(dataPageId, buffer -> {
+        DataPage dataPage = new DataPage(buffer, resource);
+        return new int[] { dataPage.calculateReclaimableSpace(), dataPage.countRecords() };
+      });
+      appendPage(dataPageId, freeSpaceAndRecordCount[0], freeSpaceAndRecordCount[1]);
+    }
+    hasDirectory = !dataPageIds.isEmpty();
+  }
+}
@@ -1,9 +1,6 @@
 package up.mi.bdda.app.page;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -15,6 +12,8 @@ import up.mi.bdda.app.database.resource.TableInfo;
  * The DataPage class represents a page of data in a database.
  * It contains a directory of slots (records), and methods to manipulate these
  * records.
+ * A DataPage is a view over the buffer of the page: constructing it reads
+ * nothing, and its methods read and write the buffer directly.
  */
 public class DataPage implements Iterable<Record> {
 
@@ -23,11 +22,6 @@ public class DataPage implements Iterable<Record> {
    */
   private static final int PAGE_ID_LENGTH = 8;
 
-  /**
-   * The ID of the next page in the database.
-   */
-  private PageId followingPageId;
-
   /**
    * The directory of slots in the page.
    */
@@ -45,39 +39,45 @@ public class DataPage implements Iterable<Record> {
 
   /**
    * Constructor for DataPage.
-   * Initializes the following page ID to (-1, -1), the slot directory to a new
-   * SlotDirectory, and the resource and byteBuffer to the given parameters.
+   * Initializes the slot directory to a view over the given byteBuffer, and the
+   * resource and byteBuffer to the given parameters.
    */
   public DataPage(ByteBuffer byteBuffer, TableInfo resource) {
-    followingPageId = new PageId(-1, -1);
-    slotDir = new SlotDirectory();
+    slotDir = new SlotDirectory(byteBuffer);
     this.resource = resource;
     this.byteBuffer = byteBuffer;
   }
 
   /**
-   * Loads the page from disk into the byte buffer.
+   * Initializes a new page: the following page ID is set to (-1, -1) and the
+   * slot directory is emptied.
    */
-  public void load() throws IOException {
-    followingPageId = new PageId(byteBuffer.getInt(0), byteBuffer.getInt(4));
-    slotDir.loadFromDisk(byteBuffer);
+  public void initialize() {
+    byteBuffer.putInt(0, -1);
+    byteBuffer.putInt(4, -1);
+    slotDir.initialize();
   }
 
   /**
-   * Saves the page from the byte buffer to disk.
+   * Calculates the amount of free space in the page.
    */
-  public void save() throws IOException {
-    byteBuffer.putInt(0, followingPageId.getFileIdx());
-    byteBuffer.putInt(4, followingPageId.getPageIdx());
-    slotDir.saveToDisk(byteBuffer);
+  private int calculateFreeSpace(ByteBuffer byteBuffer) {
+    int newRecordPositionSize = 8;
+    int size = slotDir.getFreeSpaceIndex() + slotDir.getDirectorySize() + newRecordPositionSize;
+    return byteBuffer.capacity() - size;
   }
 
   /**
-   * Calculates the amount of free space in the page.
+   * Calculates the amount of free space the page would have once optimized,
+   * including the space of the removed records.
    */
-  private int calculateFreeSpace(ByteBuffer byteBuffer) {
+  public int calculateReclaimableSpace() {
     int newRecordPositionSize = 8;
-    int size = slotDir.getFreeSpaceIndex() + slotDir.getDirectorySize() + newRecordPositionSize;
+    int size = PAGE_ID_LENGTH + slotDir.getDirectorySize() + newRecordPositionSize;
+    int slotCount = slotDir.getSlotCount();
+    for (int slotIdx = 0; slotIdx < slotCount; slotIdx++) {
+      size += slotDir.getRecordSize(slotIdx);
+    }
     return byteBuffer.capacity() - size;
   }
 
@@ -93,17 +93,14 @@ public class DataPage implements Iterable<Record> {
    * Stores a record in the page and returns its ID.
    */
   public RecordId storeRecord(Record record, PageId recordPageId) throws IllegalArgumentException {
-    int cellCount = slotDir.getEntryCount();
     int freeSpacePointer = slotDir.getFreeSpaceIndex();
     if (!checkSpaceAvailability(record.size())) {
       throw new IllegalArgumentException("Error while writing the record: not enough free space");
     }
     int offset = record.writeDataToBuffer(byteBuffer, freeSpacePointer);
     slotDir.setFreeSpaceIndex(offset);
-    slotDir.setEntryCount(cellCount + 2);
-    slotDir.addRecordStartPosition(freeSpacePointer, record.size());
-    slotDir.saveToDisk(byteBuffer);
-    return new RecordId(recordPageId, cellCount / 2);
+    int slotIdx = slotDir.addRecordStartPosition(freeSpacePointer, record.size());
+    return new RecordId(recordPageId, slotIdx);
   }
 
   /**
@@ -114,45 +111,43 @@ public class DataPage implements Iterable<Record> {
     int[] recordPosition = slotDir.removeRecordStartPosition(slotIdx);
     int recordOffset = recordPosition[0];
     int recordSize = recordPosition[1];
-    byteBuffer.position(recordOffset);
     for (int i = 0; i < recordSize; i++) {
-      byteBuffer.put((byte) 0);
+      byteBuffer.put(recordOffset + i, (byte) 0);
     }
-    slotDir.saveToDisk(byteBuffer);
-  }
-
-  /**
-   * Retrieves all records from the page.
-   */
-  private Collection<Record> retrieveAllRecords() {
-    Collection<Record> records = new ArrayList<>();
-    Iterator<Record> recordIterator = iterator();
-    while (recordIterator.hasNext()) {
-      Record record = recordIterator.next();
-      records.add(record);
-    }
-    return records;
   }
 
   /**
    * Optimizes the page by compacting the records and returns the amount of free
    * space.
-   */
-  public int optimize() throws IOException {
-    Collection<Record> records = retrieveAllRecords();
+   * The records keep their slots, so their IDs do not change; the empty slots
+   * at the end of the directory are dropped.
+   */
+  public int optimize() {
+    int slotCount = slotDir.getSlotCount();
+    int oldFreeSpacePointer = slotDir.getFreeSpaceIndex();
+    // the records hold the positions of their fields, so they are written again
+    // rather than moved
     ByteBuffer newBuffer = ByteBuffer.allocate(byteBuffer.capacity());
-    Collection<int[]> recordPositions = new ArrayList<>();
     int freeSpacePointer = PAGE_ID_LENGTH;
-    for (Record record : records) {
-      int offset = record.writeDataToBuffer(newBuffer, freeSpacePointer);
-      recordPositions.add(new int[] { freeSpacePointer, offset - freeSpacePointer });
+    int usedSlotCount = 0;
+    for (int slotIdx = 0; slotIdx < slotCount; slotIdx++) {
+      if (isEmptySlot(slotIdx)) {
+        continue;
+      }
+      int offset = getRecordAtSlot(slotIdx).writeDataToBuffer(newBuffer, freeSpacePointer);
+      slotDir.setRecordStartPosition(slotIdx, freeSpacePointer, offset - freeSpacePointer);
       freeSpacePointer = offset;
+      usedSlotCount = slotIdx + 1;
+    }
+    byteBuffer.put(PAGE_ID_LENGTH, newBuffer, PAGE_ID_LENGTH, freeSpacePointer - PAGE_ID_LENGTH);
+    for (int i = freeSpacePointer; i < oldFreeSpacePointer; i++) {
+      byteBuffer.put(i, (byte) 0);
+    }
+    for (int slotIdx = usedSlotCount; slotIdx < slotCount; slotIdx++) {
+      slotDir.setRecordStartPosition(slotIdx, 0, 0);
     }
+    slotDir.setEntryCount(2 * usedSlotCount);
     slotDir.setFreeSpaceIndex(freeSpacePointer);
-    slotDir.setRecordStartPosition(recordPositions);
-    byteBuffer.position(0);
-    byteBuffer.put(newBuffer.array());
-    save();
     return calculateFreeSpace(byteBuffer);
   }
 
@@ -160,23 +155,21 @@ public class DataPage implements Iterable<Record> {
    * Returns the ID of the next page.
    */
   public PageId getFollowingPageId() {
-    return followingPageId;
+    return new PageId(byteBuffer.getInt(0), byteBuffer.getInt(4));
   }
 
   /**
    * Checks if a slot is empty.
    */
   private boolean isEmptySlot(int slotIdx) {
-    int[] recordStartPosition = slotDir.getRecordStartPosition(slotIdx);
-    return recordStartPosition[0] == 0;
+    return slotDir.getRecordStart(slotIdx) == 0;
   }
 
   /**
    * Returns the record at a given slot.
    */
   private Record getRecordAtSlot(int slotIdx) {
-    int[] recordStartPosition = slotDir.getRecordStartPosition(slotIdx);
-    int startPosition = recordStartPosition[0];
+    int startPosition = slotDir.getRecordStart(slotIdx);
     Record record = new Record(resource);
     record.readDataFromBuffer(byteBuffer, startPosition);
     record.setRecordId(new RecordId());
@@ -191,7 +184,7 @@ public class DataPage implements Iterable<Record> {
   public Iterator<Record> iterator() {
     return new Iterator<Record>() {
       private int currentSlot = 0;
-      private int totalSlots = slotDir.getEntryCount() / 2;
+      private int totalSlots = slotDir.getSlotCount();
 
       @Override
       public boolean hasNext() {
@@ -213,10 +206,17 @@ public class DataPage implements Iterable<Record> {
   }
 
   /**
-   * Returns the number of records in the page.
+   * Returns the number of records in the page, not counting the removed ones.
    */
   public int countRecords() {
-    return slotDir.getEntryCount() / 2;
+    int recordCount = 0;
+    int slotCount = slotDir.getSlotCount();
+    for (int slotIdx = 0; slotIdx < slotCount; slotIdx++) {
+      if (!isEmptySlot(slotIdx)) {
+        recordCount++;
+      }
+    }
+    return recordCount;
   }
 
 }
\ No newline at end of file
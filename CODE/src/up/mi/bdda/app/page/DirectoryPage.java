@@ -0,0 +1,197 @@
+package up.mi.bdda.app.page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The DirectoryPage class represents a page of the page directory of a table.
+ * It lists data pages of the table in the order they were added, each with the
+ * number of its records and the bucket of its free space, so that the data
+ * pages are known and a page with room for a record is found without reading
+ * the data pages.
+ * The first 4 bytes of the page hold the number of entries; each entry then
+ * holds the ID of a data page, its record count and its bucket, in 13 bytes.
+ */
+public class DirectoryPage {
+  /**
+   * The size of the entry count in bytes.
+   */
+  private static final int HEADER_SIZE = 4;
+
+  /**
+   * The size of an entry in bytes.
+   */
+  private static final int ENTRY_SIZE = 13;
+
+  /**
+   * The buffer that holds the data of the page.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Constructs a DirectoryPage object with the given buffer.
+   *
+   * @param buffer the buffer that holds the data of the page.
+   */
+  public DirectoryPage(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Initializes an empty page of the page directory.
+   */
+  public void initialize() {
+    buffer.putInt(0, 0);
+  }
+
+  /**
+   * Returns the position in the page of an entry.
+   *
+   * @param entryIdx the index of the entry.
+   * @return the position of the entry.
+   */
+  private static int entryPosition(int entryIdx) {
+    return HEADER_SIZE + ENTRY_SIZE * entryIdx;
+  }
+
+  /**
+   * Returns the number of entries a page of the given size can hold.
+   *
+   * @param pageSize the size of the page in bytes.
+   * @return the capacity of the page.
+   */
+  public static int getCapacity(int pageSize) {
+    return (pageSize - HEADER_SIZE) / ENTRY_SIZE;
+  }
+
+  /**
+   * Returns the number of entries the page can hold.
+   *
+   * @return the capacity of the page.
+   */
+  public int getCapacity() {
+    return getCapacity(buffer.capacity());
+  }
+
+  /**
+   * Returns the number of entries in the page.
+   *
+   * @return the number of entries.
+   */
+  public int getEntryCount() {
+    return buffer.getInt(0);
+  }
+
+  /**
+   * Returns the identifier of the data page of an entry.
+   *
+   * @param entryIdx the index of the entry.
+   * @return the identifier of the data page.
+   */
+  public PageId getPageId(int entryIdx) {
+    int position = entryPosition(entryIdx);
+    return new PageId(buffer.getInt(position), buffer.getInt(position + 4));
+  }
+
+  /**
+   * Returns the number of records of the data page of an entry.
+   *
+   * @param entryIdx the index of the entry.
+   * @return the number of records.
+   */
+  public int getRecordCount(int entryIdx) {
+    return buffer.getInt(entryPosition(entryIdx) + 8);
+  }
+
+  /**
+   * Sets the number of records of the data page of an entry.
+   *
+   * @param entryIdx    the index of the entry.
+   * @param recordCount the number of records.
+   */
+  public void setRecordCount(int entryIdx, int recordCount) {
+    buffer.putInt(entryPosition(entryIdx) + 8, recordCount);
+  }
+
+  /**
+   * Returns the bucket of the free space of the data page of an entry.
+   *
+   * @param entryIdx the index of the entry.
+   * @return the bucket, between 0 and 255.
+   */
+  public int getBucket(int entryIdx) {
+    return Byte.toUnsignedInt(buffer.get(entryPosition(entryIdx) + 12));
+  }
+
+  /**
+   * Sets the bucket of the free space of the data page of an entry.
+   *
+   * @param entryIdx the index of the entry.
+   * @param bucket   the bucket, between 0 and 255.
+   */
+  public void setBucket(int entryIdx, int bucket) {
+    buffer.put(entryPosition(entryIdx) + 12, (byte) bucket);
+  }
+
+  /**
+   * Adds an entry at the end of the page, which must not be full.
+   *
+   * @param pageId      the identifier of the data page.
+   * @param recordCount the number of records of the data page.
+   * @param bucket      the bucket of the free space of the data page.
+   * @return the index of the new entry.
+   */
+  public int addEntry(PageId pageId, int recordCount, int bucket) {
+    int entryIdx = getEntryCount();
+    int position = entryPosition(entryIdx);
+    buffer.putInt(position, pageId.getFileIdx());
+    buffer.putInt(position + 4, pageId.getPageIdx());
+    setRecordCount(entryIdx, recordCount);
+    setBucket(entryIdx, bucket);
+    buffer.putInt(0, entryIdx + 1);
+    return entryIdx;
+  }
+
+  /**
+   * Finds the first entry whose bucket is at least a given bucket.
+   *
+   * @param minBucket the smallest bucket accepted.
+   * @return the index of the entry, or -1 if there is none.
+   */
+  public int findEntry(int minBucket) {
+    int entryCount = getEntryCount();
+    for (int entryIdx = 0; entryIdx < entryCount; entryIdx++) {
+      if (getBucket(entryIdx) >= minBucket) {
+        return entryIdx;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the largest bucket of the entries of the page.
+   *
+   * @return the largest bucket, 0 if the page has no entry.
+   */
+  public int getMaxBucket() {
+    int maxBucket = 0;
+    int entryCount = getEntryCount();
+    for (int entryIdx = 0; entryIdx < entryCount; entryIdx++) {
+      maxBucket = Math.max(maxBucket, getBucket(entryIdx));
+    }
+    return maxBucket;
+  }
+
+  /**
+   * Returns the total number of records of the data pages of the page.
+   *
+   * @return the number of records.
+   */
+  public long countRecords() {
+    long recordCount = 0;
+    int entryCount = getEntryCount();
+    for (int entryIdx = 0; entryIdx < entryCount; entryIdx++) {
+      recordCount += getRecordCount(entryIdx);
+    }
+    return recordCount;
+  }
+}
@@ -6,14 +6,31 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import up.mi.bdda.app.buffer.BufferManager;
+import up.mi.bdda.app.buffer.BufferRing;
+import up.mi.bdda.app.buffer.ReadAhead;
 
 /**
  * The HeaderPage class represents the header of a page in a file.
  * It provides methods to set and get the identifiers of free and full pages.
- * It also implements Iterable to allow iteration over the free pages.
+ * It also implements Iterable to allow iteration over the free pages, which
+ * are chained from the free page, each data page holding the identifier of the
+ * next one.
+ * From byte 16, the header page of a table lists the pages of the page
+ * directory of the table: their number, then the identifier of each page with
+ * the largest bucket of its entries, in 12 bytes.
  */
 public class HeaderPage implements Iterable<PageId> {
 
+  /**
+   * The position of the number of pages of the page directory.
+   */
+  private static final int DIRECTORY_PAGE_COUNT_POSITION = 16;
+
+  /**
+   * The size of the description of a page of the page directory in bytes.
+   */
+  private static final int DIRECTORY_PAGE_ENTRY_SIZE = 12;
+
   /**
    * The buffer that holds the data of the header page.
    */
@@ -66,6 +83,82 @@ public class HeaderPage implements Iterable<PageId> {
     return new PageId(buffer.getInt(8), buffer.getInt(12));
   }
 
+  /**
+   * Returns the position of the description of a page of the page directory.
+   * 
+   * @param directoryIdx the index of the page in the page directory.
+   * @return the position of the description.
+   */
+  private static int directoryPagePosition(int directoryIdx) {
+    return DIRECTORY_PAGE_COUNT_POSITION + 4 + DIRECTORY_PAGE_ENTRY_SIZE * directoryIdx;
+  }
+
+  /**
+   * Returns the number of pages of the page directory the header page can list.
+   * 
+   * @return the capacity of the list.
+   */
+  public int getDirectoryPageCapacity() {
+    return (buffer.capacity() - DIRECTORY_PAGE_COUNT_POSITION - 4) / DIRECTORY_PAGE_ENTRY_SIZE;
+  }
+
+  /**
+   * Returns the number of pages of the page directory.
+   * 
+   * @return the number of pages, 0 if the table has no page directory.
+   */
+  public int getDirectoryPageCount() {
+    return buffer.getInt(DIRECTORY_PAGE_COUNT_POSITION);
+  }
+
+  /**
+   * Returns the identifier of a page of the page directory.
+   * 
+   * @param directoryIdx the index of the page in the page directory.
+   * @return the identifier of the page.
+   */
+  public PageId getDirectoryPageId(int directoryIdx) {
+    int position = directoryPagePosition(directoryIdx);
+    return new PageId(buffer.getInt(position), buffer.getInt(position + 4));
+  }
+
+  /**
+   * Returns the largest bucket of the entries of a page of the page directory.
+   * 
+   * @param directoryIdx the index of the page in the page directory.
+   * @return the largest bucket.
+   */
+  public int getDirectoryPageMaxBucket(int directoryIdx) {
+    return buffer.getInt(directoryPagePosition(directoryIdx) + 8);
+  }
+
+  /**
+   * Sets the largest bucket of the entries of a page of the page directory.
+   * 
+   * @param directoryIdx the index of the page in the page directory.
+   * @param maxBucket    the largest bucket.
+   */
+  public void setDirectoryPageMaxBucket(int directoryIdx, int maxBucket) {
+    buffer.putInt(directoryPagePosition(directoryIdx) + 8, maxBucket);
+  }
+
+  /**
+   * Adds a page at the end of the page directory; the list must not be full.
+   * 
+   * @param pageId    the identifier of the page.
+   * @param maxBucket the largest bucket of the entries of the page.
+   * @return the index of the page in the page directory.
+   */
+  public int addDirectoryPage(PageId pageId, int maxBucket) {
+    int directoryIdx = getDirectoryPageCount();
+    int position = directoryPagePosition(directoryIdx);
+    buffer.putInt(position, pageId.getFileIdx());
+    buffer.putInt(position + 4, pageId.getPageIdx());
+    setDirectoryPageMaxBucket(directoryIdx, maxBucket);
+    buffer.putInt(DIRECTORY_PAGE_COUNT_POSITION, directoryIdx + 1);
+    return directoryIdx;
+  }
+
   /**
    * Returns an iterator over the free pages.
    * 
@@ -74,6 +167,35 @@ public class HeaderPage implements Iterable<PageId> {
    */
   @Override
   public Iterator<PageId> iterator() throws NoSuchElementException {
+    return iterator(null);
+  }
+
+  /**
+   * Returns an iterator over the free pages that reads the pages through a
+   * buffer ring, so that walking the pages of a large table does not evict the
+   * other pages from the buffer pool.
+   * 
+   * @param ring the ring to read the pages through, or null to read them
+   *             through the buffer pool.
+   * @return an iterator over the free pages.
+   * @throws NoSuchElementException if there are no more free pages.
+   */
+  public Iterator<PageId> iterator(BufferRing ring) throws NoSuchElementException {
+    return iterator(ring, null);
+  }
+
+  /**
+   * Returns an iterator over the free pages that reads the pages through a
+   * buffer ring and tells a read-ahead about each page it reads, so that the
+   * following pages are loaded while the caller works on the current one.
+   * 
+   * @param ring      the ring to read the pages through, or null to read them
+   *                  through the buffer pool.
+   * @param readAhead the read-ahead following the pages, or null.
+   * @return an iterator over the free pages.
+   * @throws NoSuchElementException if there are no more free pages.
+   */
+  public Iterator<PageId> iterator(BufferRing ring, ReadAhead readAhead) throws NoSuchElementException {
     // iterate over the free pages only
     return new Iterator<PageId>() {
       PageId freePageId = getFreePageId();
@@ -92,9 +214,12 @@ public class HeaderPage implements Iterable<PageId> {
         // get buffer for next iteration
         if (freePageId.isValid()) {
           try {
-            ByteBuffer nextFreePageBuffer = BufferManager.getInstance().getPageBuffer(pageId);
-            freePageId = new PageId(nextFreePageBuffer.getInt(0), nextFreePageBuffer.getInt(4));
-            BufferManager.getInstance().releasePage(pageId, false);
+            // the link is read without latching the page when it is in memory
+            freePageId = BufferManager.getInstance().readPage(pageId, ring,
+                pageBuffer -> new PageId(pageBuffer.getInt(0), pageBuffer.getInt(4)));
+            if (readAhead != null) {
+              readAhead.pageTouched(pageId);
+            }
           } catch (IOException e) {
             e.printStackTrace();
           }
@@ -1,168 +1,182 @@
 package up.mi.bdda.app.page;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 
 /**
  * The SlotDirectory class represents a directory of slots in a page.
  * It keeps track of the free space in the page and the start positions of each
  * record.
+ * The directory is a view over the buffer of the page: it is stored at the end
+ * of the page, and each of its fields is read or written at its own offset
+ * when it is used, so that nothing is copied when a page is loaded and
+ * modifying a record only writes its slot.
+ * <p>
+ * The last 4 bytes of the page hold the free space index, the 4 bytes before
+ * hold the entry count, and the slots come before them, the first slot last:
+ * each slot holds the start position and the size of its record, both 0 once
+ * the record is removed. The entry count is twice the number of slots.
  */
 public class SlotDirectory {
   /**
-   * The position (in bytes) at which the free space on the page starts.
-   * This is where new records can be added.
+   * The size of a slot in bytes.
    */
-  private int freeSpaceIndex;
+  private static final int SLOT_SIZE = 8;
 
   /**
-   * The number of entries in the directory.
+   * The size of the free space index and of the entry count in bytes.
    */
-  private int entryCount;
+  private static final int HEADER_SIZE = 8;
 
   /**
-   * A list of start positions (in bytes) in the page of each record.
-   * Each entry in the list is an array where the first element is the start
-   * position and the second element is the size of the record.
+   * The buffer of the page.
    */
-  private List<int[]> recordStartPositions;
+  private final ByteBuffer buffer;
 
   /**
    * Constructor for SlotDirectory.
-   * Initializes the free space index to 8, the entry count to 0, and the record
-   * start positions list to an empty list.
+   *
+   * @param buffer The buffer of the page holding the directory.
    */
-  public SlotDirectory() {
-
-    freeSpaceIndex = 8;
-    entryCount = 0;
-    recordStartPositions = new ArrayList<>();
+  public SlotDirectory(ByteBuffer buffer) {
+    this.buffer = buffer;
   }
 
   /**
-   * Writes the slot directory to disk.
-   * 
-   * @param buffer The ByteBuffer to write to.
+   * Initializes an empty directory in a new page: the free space index is set
+   * to 8, after the ID of the next page, and the entry count to 0.
    */
-  public void saveToDisk(ByteBuffer buffer) {
-    buffer.position(buffer.capacity() - 4);
-    buffer.putInt(freeSpaceIndex);
-    buffer.position(buffer.capacity() - 8);
-    buffer.putInt(entryCount);
-    for (int i = 0; i < entryCount / 2; i++) {
-      buffer.position(buffer.capacity() - 8 - 8 * (i + 1));
-      buffer.putInt(recordStartPositions.get(i)[0]);
-      buffer.putInt(recordStartPositions.get(i)[1]);
-    }
+  public void initialize() {
+    setFreeSpaceIndex(8);
+    setEntryCount(0);
   }
 
   /**
-   * Returns the total size of the record start positions in bytes.
+   * Returns the position in the page of a slot.
+   *
+   * @param slotIdx The index of the slot.
    */
-  private int getRecordStartPositionSize() {
-    return 4 * entryCount;
+  private int slotPosition(int slotIdx) {
+    return buffer.capacity() - HEADER_SIZE - SLOT_SIZE * (slotIdx + 1);
   }
 
   /**
-   * Reads the slot directory from disk.
-   * 
-   * @param buffer The ByteBuffer to read from.
+   * Returns the total size of the record start positions in bytes.
    */
-  public void loadFromDisk(ByteBuffer buffer) {
-    buffer.position(buffer.capacity() - 4);
-    freeSpaceIndex = buffer.getInt();
-    buffer.position(buffer.capacity() - 8);
-    entryCount = buffer.getInt();
-    for (int i = 0; i < entryCount / 2; i++) {
-      buffer.position(buffer.capacity() - 8 - 8 * (i + 1));
-      int[] recordStartPosition = new int[2];
-      recordStartPosition[0] = buffer.getInt();
-      recordStartPosition[1] = buffer.getInt();
-      recordStartPositions.add(recordStartPosition);
-    }
+  private int getRecordStartPositionSize() {
+    return 4 * getEntryCount();
   }
 
   /**
    * Returns the index of the free space in the page.
    */
   public int getFreeSpaceIndex() {
-    return freeSpaceIndex;
+    return buffer.getInt(buffer.capacity() - 4);
   }
 
   /**
    * Returns the number of entries in the directory.
    */
   public int getEntryCount() {
-    return entryCount;
+    return buffer.getInt(buffer.capacity() - 8);
+  }
+
+  /**
+   * Returns the number of slots in the directory.
+   */
+  public int getSlotCount() {
+    return getEntryCount() / 2;
+  }
+
+  /**
+   * Returns the start position of the record at the given index, 0 if the
+   * record was removed.
+   *
+   * @param slotIdx The index of the record.
+   */
+  public int getRecordStart(int slotIdx) {
+    return buffer.getInt(slotPosition(slotIdx));
+  }
+
+  /**
+   * Returns the size of the record at the given index, 0 if the record was
+   * removed.
+   *
+   * @param slotIdx The index of the record.
+   */
+  public int getRecordSize(int slotIdx) {
+    return buffer.getInt(slotPosition(slotIdx) + 4);
   }
 
   /**
    * Returns the start position and size of the record at the given index.
-   * 
+   *
    * @param slotIdx The index of the record.
    */
   public int[] getRecordStartPosition(int slotIdx) {
-    return recordStartPositions.get(slotIdx);
+    return new int[] { getRecordStart(slotIdx), getRecordSize(slotIdx) };
   }
 
   /**
    * Removes the start position and size of the record at the given index.
-   * 
+   *
    * @param slotIdx The index of the record.
    */
   public int[] removeRecordStartPosition(int slotIdx) {
-    int[] recordStartPosition = recordStartPositions.get(slotIdx);
-    int start = recordStartPosition[0];
-    int size = recordStartPosition[1];
-    recordStartPosition[0] = 0;
-    recordStartPosition[1] = 0;
-    return new int[] { start, size };
+    int[] recordStartPosition = getRecordStartPosition(slotIdx);
+    setRecordStartPosition(slotIdx, 0, 0);
+    return recordStartPosition;
   }
 
   /**
    * Returns the total size of the directory in bytes.
    */
   public int getDirectorySize() {
-    return 8 + getRecordStartPositionSize();
+    return HEADER_SIZE + getRecordStartPositionSize();
   }
 
   /**
    * Sets the index of the free space in the page.
-   * 
+   *
    * @param offset The new free space index.
    */
   public void setFreeSpaceIndex(int offset) {
-    freeSpaceIndex = offset;
+    buffer.putInt(buffer.capacity() - 4, offset);
   }
 
   /**
    * Sets the number of entries in the directory.
-   * 
+   *
    * @param i The new number of entries.
    */
   public void setEntryCount(int i) {
-    entryCount = i;
+    buffer.putInt(buffer.capacity() - 8, i);
   }
 
   /**
-   * Sets the start positions of the records.
-   * 
-   * @param recordStartPositions The new list of record start positions.
+   * Sets the start position and size of the record at the given index.
+   *
+   * @param slotIdx The index of the record, in the directory.
+   * @param start   The start position of the record.
+   * @param size    The size of the record.
    */
-  public void setRecordStartPosition(Collection<int[]> recordStartPositions) {
-    this.recordStartPositions = new ArrayList<>(recordStartPositions);
+  public void setRecordStartPosition(int slotIdx, int start, int size) {
+    int position = slotPosition(slotIdx);
+    buffer.putInt(position, start);
+    buffer.putInt(position + 4, size);
   }
 
   /**
-   * Adds a new record start position and size.
-   * 
+   * Adds a new record start position and size in a new slot.
+   *
    * @param start The start position of the new record.
    * @param size  The size of the new record.
+   * @return The index of the new slot.
    */
-  public void addRecordStartPosition(int start, int size) {
-    recordStartPositions.add(new int[] { start, size });
+  public int addRecordStartPosition(int start, int size) {
+    int slotIdx = getSlotCount();
+    setRecordStartPosition(slotIdx, start, size);
+    setEntryCount(2 * (slotIdx + 1));
+    return slotIdx;
   }
 
-}
\ No newline at end of file
+}
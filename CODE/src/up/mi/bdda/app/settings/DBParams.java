@@ -18,14 +18,21 @@ public class DBParams {
 
   /**
    * The size of each page in the database, in bytes.
-   * This determines how much data can be stored in a single page.
+   * This determines how much data can be stored in a single page, and how many
+   * pages a file can hold: the allocation bitmap of a file fits in its first
+   * page, after an 8-byte header, so a file holds at most 8 * (pageSize - 8)
+   * pages, that is nearly 8 * pageSize * pageSize bytes (128 MiB with pages of
+   * 4 KiB).
    */
   public static int pageSize;
 
   /**
    * The maximum number of files that the Disk Manager can manage.
    * This limits the number of separate files that can be used to store data in
-   * the database.
+   * the database, and with pageSize the size of the database: at most
+   * maxFileCount * 8 * (pageSize - 8) pages (nearly 512 MiB with 4 files of
+   * pages of 4 KiB). Allocating a page beyond that fails with an IOException naming
+   * the limit.
    */
   public static int maxFileCount;
 
@@ -35,9 +42,123 @@ public class DBParams {
    */
   public static int maxFrameCount;
 
+  /**
+   * The memory budget of the buffer pool, which replaces maxFrameCount when
+   * set: the pool then holds as many frames as pages fit in the budget.
+   * The budget is a number of bytes, optionally followed by a unit (KB, MB or
+   * GB, in powers of 1024), or a percentage of the maximum direct memory of the
+   * JVM, where the frames live, such as "64MB" or "25%".
+   */
+  public static String bufferPoolSize = null;
+
+  /**
+   * The number of frames kept apart for the metadata pages, such as the header
+   * pages of the tables and the pages of their page directories, in addition
+   * to the frames of the buffer pool.
+   * The data pages never evict a metadata page, so the metadata pages stay in
+   * memory whatever the scans read. 0 disables the metadata pool.
+   */
+  public static int metadataFrameCount = 8;
+
+  /**
+   * Tells whether the buffer pool is warmed up on startup: the pages in memory
+   * at shutdown are listed, the hottest first, and loaded again in the
+   * background on the next startup, into the free frames only, while the first
+   * queries run.
+   */
+  public static boolean bufferPoolWarmUp = true;
+
   /**
    * Tells whether the records should be displayed or not.
    */
   public static boolean displayRecordsValues;
 
+  /**
+   * The way the Disk Manager reads and writes the data files.
+   * Pages are accessed through FileChannels unless another mode is selected.
+   */
+  public static IOMode ioMode = IOMode.CHANNEL;
+
+  /**
+   * The maximum number of asynchronous page requests in flight per data file.
+   * A new request waits for a previous one to complete beyond that number.
+   */
+  public static int maxInFlightPageRequests = 16;
+
+  /**
+   * The number of contiguous pages of the first extent reserved for a table.
+   * The following extents of the table are twice as long as the previous one.
+   */
+  public static int minExtentPageCount = 8;
+
+  /**
+   * The maximum number of contiguous pages of an extent reserved for a table.
+   */
+  public static int maxExtentPageCount = 64;
+
+  /**
+   * Tells whether the pages are compressed on disk.
+   * It must not change once a database holds data, since compressed data files
+   * are laid out differently.
+   */
+  public static boolean pageCompression = false;
+
+  /**
+   * Tells whether the batched page reads and writes spanning several data files
+   * run in parallel, with one I/O worker thread per file.
+   */
+  public static boolean parallelFileIO = true;
+
+  /**
+   * The number of bytes by which a data file grows when a page is allocated past
+   * its end, rounded up to a whole number of pages.
+   * The new space is filled with zeros, so the following pages are written
+   * inside the file. A value of 0 disables the preallocation.
+   */
+  public static int fileGrowthChunkSize = 1024 * 1024;
+
+  /**
+   * The policy the Buffer Manager uses to choose the page to evict.
+   */
+  public static PageReplacement pageReplacement = PageReplacement.LRU;
+
+  /**
+   * The number of uses kept per page by the LRU_K replacement policy.
+   */
+  public static int lruK = 2;
+
+  /**
+   * The number of frames of the buffer ring of a sequential scan.
+   * A ring never takes more than a quarter of the buffer pool.
+   */
+  public static int scanRingFrameCount = 16;
+
+  /**
+   * The number of shards of the page table of the buffer pool, rounded up to a
+   * power of two. Each shard has its own lock, so threads requesting pages of
+   * different shards do not wait for each other.
+   */
+  public static int bufferPoolShardCount = 16;
+
+  /**
+   * The delay, in milliseconds, between two rounds of the background page
+   * writer, which writes back the modified pages of the buffer pool that are
+   * not pinned. A value of 0 disables the writer: the modified pages are then
+   * only written when they are evicted or flushed.
+   */
+  public static int pageWriterInterval = 1000;
+
+  /**
+   * The share of the frames of the buffer pool that may hold modified pages
+   * before the background page writer is woken up ahead of its next round.
+   */
+  public static double dirtyPageHighWaterMark = 0.25;
+
+  /**
+   * The maximum number of pages of a chain of data pages loaded ahead of a scan
+   * walking it. The actual number adapts to the speed of the scan. A value of 0
+   * disables the read-ahead.
+   */
+  public static int maxReadAheadDepth = 8;
+
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package up.mi.bdda.app.settings;
+
+/**
+ * The IOMode enum lists the ways the Disk Manager can access the data files.
+ * The mode in use is selected with DBParams.ioMode.
+ */
+public enum IOMode {
+  /**
+   * Pages are read and written with positional FileChannel calls.
+   */
+  CHANNEL,
+
+  /**
+   * Data files are mapped in memory and pages are copied from and to the
+   * mapping, so the OS page cache serves hot pages without a system call.
+   * Pages that lie past the end of a file are written through the channel,
+   * which grows the file.
+   */
+  MEMORY_MAPPED,
+
+  /**
+   * Pages are read and written with AsynchronousFileChannels. Synchronous calls
+   * wait for their request to complete, while batched calls issue all their
+   * requests before waiting, so the requests overlap.
+   */
+  ASYNCHRONOUS,
+
+  /**
+   * Data files are opened with O_DIRECT so that the buffer pool is the only
+   * cache of the pages. Pages are transferred through block-aligned direct
+   * buffers. When the file system rejects direct I/O, the files are opened
+   * normally.
+   */
+  DIRECT
+}
@@ -0,0 +1,86 @@
+package up.mi.bdda.app.settings;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * The MemoryBudget class converts the memory budgets of the settings, such as
+ * DBParams.bufferPoolSize, into numbers of bytes.
+ * A budget is a number of bytes, optionally followed by a unit (B, KB, MB or
+ * GB, in powers of 1024, the B being optional), or a percentage of the maximum
+ * direct memory of the JVM.
+ */
+public final class MemoryBudget {
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private MemoryBudget() {
+  }
+
+  /**
+   * Converts a memory budget into a number of bytes.
+   *
+   * @param budget the budget, such as "512KB", "64MB" or "25%".
+   * @return the number of bytes of the budget.
+   * @throws IllegalArgumentException if the budget is not valid.
+   */
+  public static long toBytes(String budget) {
+    if (budget == null || budget.isBlank()) {
+      throw new IllegalArgumentException("The memory budget cannot be empty");
+    }
+    String value = budget.trim().toUpperCase(Locale.ROOT);
+    try {
+      if (value.endsWith("%")) {
+        double percentage = Double.parseDouble(value.substring(0, value.length() - 1).trim());
+        if (percentage <= 0 || percentage > 100) {
+          throw new IllegalArgumentException("Invalid memory budget: " + budget);
+        }
+        return (long) (maxDirectMemory() * percentage / 100);
+      }
+
+      if (value.endsWith("B")) {
+        value = value.substring(0, value.length() - 1);
+      }
+      long unit = 1;
+      if (value.endsWith("K")) {
+        unit = 1L << 10;
+      } else if (value.endsWith("M")) {
+        unit = 1L << 20;
+      } else if (value.endsWith("G")) {
+        unit = 1L << 30;
+      }
+      if (unit != 1) {
+        value = value.substring(0, value.length() - 1);
+      }
+      long amount = Long.parseLong(value.trim());
+      if (amount <= 0 || amount > Long.MAX_VALUE / unit) {
+        throw new IllegalArgumentException("Invalid memory budget: " + budget);
+      }
+      return amount * unit;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid memory budget: " + budget, e);
+    }
+  }
+
+  /**
+   * Returns the maximum amount of direct memory the JVM may allocate, set with
+   * -XX:MaxDirectMemorySize and equal to the maximum heap size by default.
+   *
+   * @return the maximum direct memory, in bytes.
+   */
+  public static long maxDirectMemory() {
+    try {
+      HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      long maxDirectMemory = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+      if (maxDirectMemory > 0) {
+        return maxDirectMemory;
+      }
+    } catch (RuntimeException e) {
+      // the option is not available on this JVM, the default applies
+    }
+    return Runtime.getRuntime().maxMemory();
+  }
+}
@@ -0,0 +1,32 @@
+package up.mi.bdda.app.settings;
+
+/**
+ * The PageReplacement enum lists the policies the Buffer Manager can use to
+ * choose the page to evict when every frame is used.
+ * The policy in use is selected with DBParams.pageReplacement.
+ */
+public enum PageReplacement {
+  /**
+   * The least recently used page is evicted.
+   */
+  LRU,
+
+  /**
+   * The frames are swept by a clock hand that gives a second chance to the
+   * pages used since its last pass. It approximates LRU without reordering
+   * anything on a hit.
+   */
+  CLOCK,
+
+  /**
+   * Pages used once wait in a FIFO queue and only move to an LRU queue when
+   * they are used again, so a large scan does not flush the pages used often.
+   */
+  TWO_QUEUE,
+
+  /**
+   * The page whose K-th most recent use is the oldest is evicted, K being
+   * DBParams.lruK. Pages used less than K times are evicted first.
+   */
+  LRU_K
+}
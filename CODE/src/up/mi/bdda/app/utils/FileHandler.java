@@ -2,10 +2,16 @@ package up.mi.bdda.app.utils;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
+import com.sun.nio.file.ExtendedOpenOption;
+
 import up.mi.bdda.app.settings.DBParams;
 
 /**
@@ -19,6 +25,18 @@ public class FileHandler {
    */
   private static String databaseFolderPath = DBParams.databaseFolderPath;
 
+  /**
+   * The alignment, in bytes, of the buffers used for direct I/O.
+   * It is a multiple of the block size of the usual file systems.
+   */
+  public static final int DIRECT_IO_ALIGNMENT = 4096;
+
+  /**
+   * Whether a warning has already been printed because direct I/O is not
+   * available.
+   */
+  private static boolean directIOWarningPrinted = false;
+
   /**
    * Retrieves the path of a file given its index.
    * 
@@ -35,6 +53,28 @@ public class FileHandler {
     return Optional.of(path);
   }
 
+  /**
+   * Returns the path of the page map of a file, used when page compression is
+   * enabled.
+   * 
+   * @param fileIndex The index of the file.
+   * @return The path of the page map, whether it exists or not.
+   */
+  public static Path retrievePageMapPath(int fileIndex) {
+    String fileName = String.format("F%d.map", fileIndex);
+    return Path.of(databaseFolderPath).resolve(fileName);
+  }
+
+  /**
+   * Returns the path of the file listing the pages of the buffer pool at the
+   * last shutdown, used to warm the buffer pool up on startup.
+   * 
+   * @return The path of the file, whether it exists or not.
+   */
+  public static Path retrieveWarmUpListPath() {
+    return Path.of(databaseFolderPath).resolve("BufferPool.warm");
+  }
+
   /**
    * Retrieves a RandomAccessFile for a given file and page index.
    * 
@@ -82,4 +122,110 @@ public class FileHandler {
       }
     }
   }
+
+  /**
+   * Opens a read/write FileChannel on the file with the given index, creating
+   * the file (and the database folder) if it does not exist yet.
+   * With direct I/O, the file is opened with O_DIRECT so that reads and writes
+   * bypass the OS page cache. When the page size is not a multiple of the block
+   * size of the file system, or when the file system rejects O_DIRECT (e.g.
+   * tmpfs), a warning is printed and the file is opened normally.
+   * 
+   * @param fileIndex The index of the file.
+   * @param directIO  Whether the file should be opened for direct I/O.
+   * @return The open FileChannel.
+   * @throws IOException If an I/O error occurs.
+   */
+  public static FileChannel openChannel(int fileIndex, boolean directIO) throws IOException {
+    String fileName = String.format("F%d.data", fileIndex);
+    Path path = Path.of(databaseFolderPath).resolve(fileName);
+    try {
+      if (!Files.exists(path.getParent())) {
+        Files.createDirectories(path.getParent());
+      }
+      if (directIO) {
+        Optional<FileChannel> channel = openDirectChannel(path);
+        if (channel.isPresent()) {
+          return channel.get();
+        }
+      }
+      return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new IOException("Error opening file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opens a read/write FileChannel with O_DIRECT on a file, creating it if it
+   * does not exist yet.
+   * 
+   * @param path The path of the file.
+   * @return An Optional containing the FileChannel, or an empty Optional if
+   *         direct I/O is not available for the file.
+   */
+  private static Optional<FileChannel> openDirectChannel(Path path) {
+    String reason;
+    try {
+      long blockSize = Files.getFileStore(path.getParent()).getBlockSize();
+      if (blockSize > DIRECT_IO_ALIGNMENT || DBParams.pageSize % blockSize != 0) {
+        reason = String.format("the page size (%d) is not a multiple of the block size (%d)", DBParams.pageSize,
+            blockSize);
+      } else {
+        return Optional.of(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT));
+      }
+    } catch (IOException | UnsupportedOperationException e) {
+      reason = e.getMessage();
+    }
+
+    if (!directIOWarningPrinted) {
+      directIOWarningPrinted = true;
+      System.out.println(String.format(":: (Warning) Direct I/O is not available, using buffered I/O: %s", reason));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Allocates a direct ByteBuffer whose address is aligned for direct I/O.
+   * 
+   * @param size The size of the buffer, in bytes.
+   * @return The aligned buffer.
+   */
+  public static ByteBuffer allocateAlignedBuffer(int size) {
+    int alignedSize = (size + DIRECT_IO_ALIGNMENT - 1) / DIRECT_IO_ALIGNMENT * DIRECT_IO_ALIGNMENT;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(alignedSize + DIRECT_IO_ALIGNMENT);
+    return buffer.alignedSlice(DIRECT_IO_ALIGNMENT).limit(size).slice();
+  }
+
+  /**
+   * Checks if a ByteBuffer can be used for direct I/O.
+   * 
+   * @param buffer The buffer to check.
+   * @return true if the buffer is direct and its address is aligned.
+   */
+  public static boolean isAlignedBuffer(ByteBuffer buffer) {
+    return buffer.isDirect() && buffer.alignmentOffset(0, DIRECT_IO_ALIGNMENT) == 0;
+  }
+
+  /**
+   * Opens a read/write AsynchronousFileChannel on the file with the given index,
+   * creating the file (and the database folder) if it does not exist yet.
+   * 
+   * @param fileIndex The index of the file.
+   * @return The open AsynchronousFileChannel.
+   * @throws IOException If an I/O error occurs.
+   */
+  public static AsynchronousFileChannel openAsynchronousChannel(int fileIndex) throws IOException {
+    String fileName = String.format("F%d.data", fileIndex);
+    Path path = Path.of(databaseFolderPath).resolve(fileName);
+    try {
+      if (!Files.exists(path.getParent())) {
+        Files.createDirectories(path.getParent());
+      }
+      return AsynchronousFileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new IOException("Error opening file: " + e.getMessage());
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package up.mi.bdda.app.utils;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The ManagementHandler class provides utility methods to expose the metrics
+ * of the application through JMX.
+ */
+public class ManagementHandler {
+
+  /**
+   * The domain of the names of the MBeans of the application.
+   */
+  public static final String DOMAIN = "up.mi.bdda.app";
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private ManagementHandler() {
+  }
+
+  /**
+   * Registers an MBean in the platform MBean server, under the name
+   * up.mi.bdda.app:type=<type>, unless an MBean is already registered under
+   * that name.
+   * A failure is reported as a warning, since the application works without
+   * its metrics.
+   *
+   * @param mbean the MBean to register.
+   * @param type  the type of the MBean, as in its name.
+   */
+  public static void registerMBean(Object mbean, String type) {
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(name)) {
+        server.registerMBean(mbean, name);
+      }
+    } catch (JMException | SecurityException e) {
+      System.out.println(String.format(":: (Warning) The %s metrics cannot be exposed through JMX: %s", type,
+          e.getMessage()));
+    }
+  }
+}
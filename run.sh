@@ -9,5 +9,13 @@ find . -name "*.java" -print | xargs javac -d ../bin
 # Navigate back to the project root directory
 cd ../..
 
+# Run another main class, such as a stress test or a benchmark, with its arguments
+if [ "$1" = "--class" ]; then
+  CLASS=$2
+  shift 2
+  java -cp ./CODE/bin "$CLASS" "$@"
+  exit $?
+fi
+
 # Run the main class with the first command-line argument
 java -cp ./CODE/bin up.mi.bdda.app.QueryManager $1 $2
\ No newline at end of file